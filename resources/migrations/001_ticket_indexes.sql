@@ -0,0 +1,10 @@
+/* Ticket lookup indexes for databases created before they were added to Data.sql.
+   Run once against each database (prod and test). */
+
+/* open ticket of a vehicle: GET_OPEN_TICKET */
+alter table ticket add index IDX_TICKET_VEHICLE_OPEN (VEHICLE_REG_NUMBER, OUT_TIME, IN_TIME);
+
+/* latest ticket and visit count of a vehicle: GET_TICKET, GET_NB_TICKET */
+alter table ticket add index IDX_TICKET_VEHICLE_IN_TIME (VEHICLE_REG_NUMBER, IN_TIME);
+
+commit;
@@ -0,0 +1,7 @@
+/* Ticket history export index for databases created before it was added to Data.sql.
+   Run once against each database (prod and test). */
+
+/* tickets of a time range: EXPORT_TICKETS, revenue rebuild */
+alter table ticket add index IDX_TICKET_IN_TIME (IN_TIME);
+
+commit;
@@ -0,0 +1,13 @@
+/* Hourly revenue and occupancy buckets for databases created before they were added to Data.sql.
+   Run once against each database (prod and test), then rebuild the buckets of the past hours
+   from the ticket history with RevenueAggregateDAO.rebuild. */
+
+create table revenue_hourly(
+ HOUR_START DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ REVENUE double NOT NULL,
+ CLOSED_TICKETS int NOT NULL,
+ OCCUPIED_MILLIS bigint NOT NULL,
+ PRIMARY KEY (HOUR_START, TYPE));
+
+commit;
@@ -0,0 +1,8 @@
+/* Gate journal projection watermark for databases created before it was added to Data.sql.
+   Run once against each database (prod and test). */
+
+create table gate_projection(
+ ID int PRIMARY KEY,
+ SEQUENCE bigint NOT NULL);
+
+commit;
@@ -0,0 +1,18 @@
+/* Ticket archive and archived visit counts for databases created before they were added to Data.sql.
+   Run once against each database (prod and test). */
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL,
+ INDEX IDX_TICKET_ARCHIVE_VEHICLE_IN_TIME (VEHICLE_REG_NUMBER, IN_TIME),
+ INDEX IDX_TICKET_ARCHIVE_IN_TIME (IN_TIME));
+
+create table vehicle_visit_summary(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ ARCHIVED_TICKETS int NOT NULL);
+
+commit;
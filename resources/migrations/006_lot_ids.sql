@@ -0,0 +1,46 @@
+/* Parking lot ids for databases created before they were added to Data.sql. Every existing row
+   belongs to lot 1. Run once against each database (prod and test), after 001 to 005. */
+
+/* the spot reference of ticket is rebuilt on (LOT_ID, PARKING_NUMBER); ticket_ibfk_1 is the name
+   MySQL gave it in Data.sql, check SHOW CREATE TABLE ticket if it was created otherwise */
+alter table ticket drop foreign key ticket_ibfk_1;
+
+alter table parking
+ add column LOT_ID int NOT NULL DEFAULT 1 first,
+ drop primary key,
+ add primary key (LOT_ID, PARKING_NUMBER);
+
+alter table ticket
+ add column LOT_ID int NOT NULL DEFAULT 1 after ID,
+ drop index IDX_TICKET_VEHICLE_OPEN,
+ drop index IDX_TICKET_VEHICLE_IN_TIME,
+ drop index IDX_TICKET_IN_TIME,
+ add index IDX_TICKET_VEHICLE_OPEN (LOT_ID, VEHICLE_REG_NUMBER, OUT_TIME, IN_TIME),
+ add index IDX_TICKET_VEHICLE_IN_TIME (LOT_ID, VEHICLE_REG_NUMBER, IN_TIME),
+ add index IDX_TICKET_IN_TIME (LOT_ID, IN_TIME),
+ add foreign key (LOT_ID, PARKING_NUMBER) references parking(LOT_ID, PARKING_NUMBER);
+
+alter table ticket_archive
+ add column LOT_ID int NOT NULL DEFAULT 1 after ID,
+ drop index IDX_TICKET_ARCHIVE_VEHICLE_IN_TIME,
+ drop index IDX_TICKET_ARCHIVE_IN_TIME,
+ add index IDX_TICKET_ARCHIVE_VEHICLE_IN_TIME (LOT_ID, VEHICLE_REG_NUMBER, IN_TIME),
+ add index IDX_TICKET_ARCHIVE_IN_TIME (LOT_ID, IN_TIME);
+alter table ticket_archive alter column LOT_ID drop default;
+
+alter table vehicle_visit_summary
+ add column LOT_ID int NOT NULL DEFAULT 1 first,
+ drop primary key,
+ add primary key (LOT_ID, VEHICLE_REG_NUMBER);
+alter table vehicle_visit_summary alter column LOT_ID drop default;
+
+alter table revenue_hourly
+ add column LOT_ID int NOT NULL DEFAULT 1 first,
+ drop primary key,
+ add primary key (LOT_ID, HOUR_START, TYPE);
+alter table revenue_hourly alter column LOT_ID drop default;
+
+/* the single watermark row, ID 1, becomes the one of lot 1 */
+alter table gate_projection change column ID LOT_ID int NOT NULL;
+
+commit;
@@ -1,13 +1,60 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.GateEventReplay;
+import com.parkit.parkingsystem.service.GateServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.RevenueReport;
+import com.parkit.parkingsystem.service.TicketExport;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
     public static void main(String args[]){
         logger.info("Initializing Parking System");
+        // --replay <event file> [workers] processes recorded gate events without the menu
+        if (args.length >= 2 && "--replay".equals(args[0])) {
+            int nbWorkers = args.length >= 3 ? Integer.parseInt(args[2]) : 1;
+            GateEventReplay.runReplay(Paths.get(args[1]), nbWorkers);
+            return;
+        }
+        // --server <port> [pool size] serves the gate terminals over HTTP
+        if (args.length >= 2 && "--server".equals(args[0])) {
+            int poolSize = args.length >= 3 ? Integer.parseInt(args[2]) : DataBaseConfig.DEFAULT_POOL_SIZE;
+            GateServer.runServer(Integer.parseInt(args[1]), poolSize);
+            return;
+        }
+        // the offline commands below take the lot last, the default one when omitted; with
+        // -Dparkit.shardMap, they connect to the database of the lot's shard
+        // --export <csv file> [from yyyy-MM-dd|-] [to yyyy-MM-dd|-] [CAR|BIKE|-] [lot] dumps the ticket history
+        if (args.length >= 2 && "--export".equals(args[0])) {
+            LocalDate from = args.length >= 3 && !"-".equals(args[2]) ? LocalDate.parse(args[2]) : null;
+            LocalDate to = args.length >= 4 && !"-".equals(args[3]) ? LocalDate.parse(args[3]) : null;
+            ParkingType parkingType = args.length >= 5 && !"-".equals(args[4]) ? ParkingType.valueOf(args[4]) : null;
+            TicketExport.runExport(Paths.get(args[1]), from, to, parkingType, lotArg(args, 5));
+            return;
+        }
+        // --revenue-backfill <from yyyy-MM-dd> <to yyyy-MM-dd> [lot] recomputes the hourly revenue from the tickets
+        if (args.length >= 3 && "--revenue-backfill".equals(args[0])) {
+            RevenueReport.runBackfill(LocalDate.parse(args[1]), LocalDate.parse(args[2]), lotArg(args, 3));
+            return;
+        }
+        // --revenue-report <from yyyy-MM-dd> <to yyyy-MM-dd> [CAR|BIKE|-] [lot] prints the hourly revenue and occupancy
+        if (args.length >= 3 && "--revenue-report".equals(args[0])) {
+            ParkingType parkingType = args.length >= 4 && !"-".equals(args[3]) ? ParkingType.valueOf(args[3]) : null;
+            RevenueReport.runReport(LocalDate.parse(args[1]), LocalDate.parse(args[2]), parkingType, lotArg(args, 4));
+            return;
+        }
         InteractiveShell.loadInterface();
     }
+
+    private static int lotArg(String[] args, int index) {
+        return args.length > index ? Integer.parseInt(args[index]) : DBConstants.DEFAULT_LOT_ID;
+    }
 }
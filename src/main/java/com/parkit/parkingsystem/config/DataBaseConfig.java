@@ -1,28 +1,177 @@
 package com.parkit.parkingsystem.config;
 
 import com.parkit.parkingsystem.constants.PersonalConstants;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    public static final int DEFAULT_POOL_SIZE = 10;
+    public static final long DEFAULT_CONNECTION_TIMEOUT_MS = 3000;
+    public static final long DEFAULT_VALIDATION_TIMEOUT_MS = 1000;
+    public static final long DEFAULT_MAX_LIFETIME_MS = 30 * 60 * 1000;
+    public static final long DEFAULT_KEEPALIVE_MS = 5 * 60 * 1000;
+    public static final int PREPARED_STATEMENT_CACHE_SIZE = 250;
+    public static final long DEFAULT_RECONNECT_INTERVAL_MS = 5000;
+
+    private static final Timer GET_CONNECTION_TIMER = Metrics.timer("DataBaseConfig.getConnection");
+    private static final Counter POOL_WAIT_COUNTER = Metrics.counter("DataBaseConfig.poolWaits");
+    private static final Counter UNREACHABLE_COUNTER = Metrics.counter("DataBaseConfig.unreachable");
+
+    private volatile HikariDataSource dataSource;
+    // 0 while the DB is reachable, otherwise when the next caller may try to reach it again
+    private final AtomicLong reconnectAt = new AtomicLong();
+
+    /**
+     * Timed as {@code DataBaseConfig.getConnection}; a borrow that finds no idle connection in
+     * the pool is also counted in {@code DataBaseConfig.poolWaits}.
+     * <p>
+     * Once the pool fails to reach the DB, callers fail at once, counted in
+     * {@code DataBaseConfig.unreachable}, instead of each waiting for the connection timeout:
+     * a single caller tries again every {@link #DEFAULT_RECONNECT_INTERVAL_MS} ms until the DB is
+     * back. Gates working from the gate journal then keep their pace during an outage.
+     */
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
+        long start = GET_CONNECTION_TIMER.start();
+        try {
+            HikariDataSource pool = dataSource;
+            if (pool != null) {
+                long retryAt = reconnectAt.get();
+                if (retryAt != 0 && (System.currentTimeMillis() < retryAt
+                        || !reconnectAt.compareAndSet(retryAt, System.currentTimeMillis() + DEFAULT_RECONNECT_INTERVAL_MS))) {
+                    UNREACHABLE_COUNTER.increment();
+                    throw new SQLTransientConnectionException("DB unreachable, next attempt in "
+                            + Math.max(0, retryAt - System.currentTimeMillis()) + " ms");
+                }
+                if (start != 0L && pool.getHikariPoolMXBean() != null
+                        && pool.getHikariPoolMXBean().getIdleConnections() == 0) {
+                    POOL_WAIT_COUNTER.increment();
+                }
+                Connection connection = getPooledConnection(pool);
+                if (retryAt != 0) {
+                    reconnectAt.set(0);
+                    logger.info("DB reachable again");
+                }
+                return connection;
+            }
+            logger.trace("Create DB connection");
+            Class.forName("com.mysql.cj.jdbc.Driver");
+
+            return DriverManager.getConnection(getUrl(), getUsername(), getPassword());
+        } catch (ClassNotFoundException | SQLException | RuntimeException e) {
+            GET_CONNECTION_TIMER.failed();
+            throw e;
+        } finally {
+            GET_CONNECTION_TIMER.stop(start);
+        }
+    }
+
+    private Connection getPooledConnection(HikariDataSource pool) throws SQLException {
+        try {
+            return pool.getConnection();
+        } catch (SQLTransientConnectionException e) {
+            // without a cause the pool was only exhausted, with one it could not connect
+            if (e.getCause() != null && reconnectAt.getAndSet(System.currentTimeMillis() + DEFAULT_RECONNECT_INTERVAL_MS) == 0) {
+                logger.error("DB unreachable, retrying every {} ms", DEFAULT_RECONNECT_INTERVAL_MS);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Switches this config to a bounded connection pool. Connections handed out by
+     * {@link #getConnection()} are then borrowed from the pool, and {@link #closeConnection(Connection)}
+     * returns them instead of tearing them down. Connections are validated on borrow when they
+     * have been idle, and idle connections are pinged every {@link #DEFAULT_KEEPALIVE_MS} ms.
+     * <p>
+     * Each pooled connection keeps up to {@link #PREPARED_STATEMENT_CACHE_SIZE} server-side
+     * prepared statements: closing a DAO's statement hands it back to its connection's cache, and
+     * preparing the same SQL again on that connection reuses it instead of having the server
+     * parse it again.
+     * <p>
+     * The pool starts even if the DB cannot be reached, connections are opened once it can.
+     *
+     * @param maxPoolSize maximum number of open connections
+     * @param connectionTimeoutMs how long a caller waits for a free connection before getting an SQLException
+     * @param maxLifetimeMs age after which an idle connection is retired and replaced
+     */
+    public synchronized void enablePool(int maxPoolSize, long connectionTimeoutMs, long maxLifetimeMs) {
+        if (dataSource != null) {
+            return;
+        }
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(getPoolName());
+        config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        config.setJdbcUrl(getUrl());
+        config.setUsername(getUsername());
+        config.setPassword(getPassword());
+        config.setMaximumPoolSize(maxPoolSize);
+        config.setMinimumIdle(1);
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setValidationTimeout(DEFAULT_VALIDATION_TIMEOUT_MS);
+        config.setMaxLifetime(maxLifetimeMs);
+        config.setKeepaliveTime(DEFAULT_KEEPALIVE_MS);
+        config.setInitializationFailTimeout(-1);
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(PREPARED_STATEMENT_CACHE_SIZE));
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        dataSource = new HikariDataSource(config);
+        logger.info("DB connection pool started with {} connections max", maxPoolSize);
+    }
+
+    public void enablePool() {
+        enablePool(DEFAULT_POOL_SIZE, DEFAULT_CONNECTION_TIMEOUT_MS, DEFAULT_MAX_LIFETIME_MS);
+    }
+
+    public boolean isPooled() {
+        return dataSource != null;
+    }
+
+    public int getMaxPoolSize() {
+        HikariDataSource pool = dataSource;
+        return pool != null ? pool.getMaximumPoolSize() : 0;
+    }
+
+    public synchronized void shutdownPool() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+            logger.info("DB connection pool closed");
+        }
+    }
+
+    protected String getPoolName() {
+        return "parking-system";
+    }
+
+    protected String getUrl() {
+        return PersonalConstants.URL + "/" + PersonalConstants.BD_NAME + "?" + PersonalConstants.SERVER_TIMEZONE;
+    }
+
+    protected String getUsername() {
+        return PersonalConstants.USERNAME;
+    }
 
-        String url = PersonalConstants.URL + "/" + PersonalConstants.BD_NAME + "?" + PersonalConstants.SERVER_TIMEZONE;
-        return DriverManager.getConnection(url, PersonalConstants.USERNAME, PersonalConstants.PASSWORD);
+    protected String getPassword() {
+        return PersonalConstants.PASSWORD;
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                logger.trace("Closing DB connection");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -33,7 +182,7 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.trace("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -44,7 +193,7 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.trace("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
@@ -0,0 +1,129 @@
+package com.parkit.parkingsystem.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Which database each parking lot lives in. The map is read from properties:
+ * <pre>
+ * shard.north.url=jdbc:mysql://db-north:3306/open_c_prod?serverTimezone=UTC
+ * shard.north.username=parkit
+ * shard.north.password=secret
+ * shard.south.url=jdbc:mysql://db-south:3306/open_c_prod?serverTimezone=UTC
+ * lot.1=north
+ * lot.2=north
+ * lot.3=south
+ * </pre>
+ * The lots of a shard share its database, told apart by the LOT_ID of their rows, and its
+ * connection pool. A site is added by mapping its lot to a shard, and sites scale out by adding
+ * shards on other database instances.
+ */
+public final class LotShardMap {
+
+    private static final String SHARD_PREFIX = "shard.";
+    private static final String LOT_PREFIX = "lot.";
+
+    private final Map<Integer, String> shardOfLot;
+    private final Properties shards;
+
+    private LotShardMap(Map<Integer, String> shardOfLot, Properties shards) {
+        this.shardOfLot = Collections.unmodifiableMap(shardOfLot);
+        this.shards = shards;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the map is malformed
+     */
+    public static LotShardMap load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            return parse(properties);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if a lot id is not a positive number, or a lot is mapped
+     *                                  to a shard without a url
+     */
+    public static LotShardMap parse(Properties properties) {
+        Map<Integer, String> shardOfLot = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(LOT_PREFIX)) {
+                continue;
+            }
+            int lotId;
+            try {
+                lotId = Integer.parseInt(key.substring(LOT_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Lot id is not a number: " + key);
+            }
+            if (lotId <= 0) {
+                throw new IllegalArgumentException("Lot id must be positive: " + key);
+            }
+            String shard = properties.getProperty(key).trim();
+            if (properties.getProperty(SHARD_PREFIX + shard + ".url") == null) {
+                throw new IllegalArgumentException("Lot " + lotId + " is mapped to shard " + shard + " which has no url");
+            }
+            shardOfLot.put(lotId, shard);
+        }
+        return new LotShardMap(shardOfLot, properties);
+    }
+
+    public Set<Integer> getLotIds() {
+        return shardOfLot.keySet();
+    }
+
+    /**
+     * @return the shards some lot is mapped to, in lot order
+     */
+    public Set<String> getShards() {
+        return new LinkedHashSet<>(shardOfLot.values());
+    }
+
+    /**
+     * @return the shard of the lot, or null if the lot is not mapped
+     */
+    public String getShard(int lotId) {
+        return shardOfLot.get(lotId);
+    }
+
+    /**
+     * @param shardMap the shard map file, null when every lot lives in the personal constants' database
+     * @return a new, unpooled config connecting to the lot's database
+     * @throws IllegalArgumentException if the map is malformed or does not map the lot
+     */
+    public static DataBaseConfig newDataBaseConfig(String shardMap, int lotId) throws IOException {
+        if (shardMap == null) {
+            return new DataBaseConfig();
+        }
+        LotShardMap lotShardMap = load(Paths.get(shardMap));
+        String shard = lotShardMap.getShard(lotId);
+        if (shard == null) {
+            throw new IllegalArgumentException("Lot " + lotId + " is not mapped in " + shardMap);
+        }
+        return lotShardMap.newDataBaseConfig(shard);
+    }
+
+    /**
+     * @return a new, unpooled config connecting to the shard's database
+     */
+    public ShardDataBaseConfig newDataBaseConfig(String shard) {
+        String url = shards.getProperty(SHARD_PREFIX + shard + ".url");
+        if (url == null) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        return new ShardDataBaseConfig(shard, url, shards.getProperty(SHARD_PREFIX + shard + ".username"),
+                shards.getProperty(SHARD_PREFIX + shard + ".password"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * Connects to one database of a {@link LotShardMap} instead of the one of the personal constants.
+ */
+public class ShardDataBaseConfig extends DataBaseConfig {
+
+    private final String shard;
+    private final String url;
+    private final String username;
+    private final String password;
+
+    public ShardDataBaseConfig(String shard, String url, String username, String password) {
+        this.shard = shard;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    public String getShard() {
+        return shard;
+    }
+
+    @Override
+    protected String getPoolName() {
+        return "parking-system-" + shard;
+    }
+
+    @Override
+    protected String getUrl() {
+        return url;
+    }
+
+    @Override
+    protected String getUsername() {
+        return username;
+    }
+
+    @Override
+    protected String getPassword() {
+        return password;
+    }
+}
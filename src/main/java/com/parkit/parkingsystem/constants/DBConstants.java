@@ -2,12 +2,44 @@ package com.parkit.parkingsystem.constants;
 
 public class DBConstants {
 
-    public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
-    public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    /**
+     * The lot of the rows written without one, and of a process that serves a single lot.
+     */
+    public static final int DEFAULT_LOT_ID = 1;
 
-    public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
+    public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ? and LOT_ID = ?";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true and LOT_ID = ?";
+    public static final String COUNT_AVAILABLE_SPOTS = "select count(*) from parking where AVAILABLE = true and TYPE = ? and LOT_ID = ?";
+    public static final String COUNT_AVAILABLE_SPOTS_BY_TYPE = "select TYPE, count(*) from parking where AVAILABLE = true and LOT_ID = ? group by TYPE";
+
+    public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, LOT_ID) values(?,?,?,?,?,?)";
+    public static final String GET_SAVED_TICKET_ID = "select ID from ticket where VEHICLE_REG_NUMBER = ? and LOT_ID = ? and IN_TIME >= ? and IN_TIME <= ? and PARKING_NUMBER = ? order by ID limit 1";
     public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME  limit 1";
-    public static final String GET_NB_TICKET =  "SELECT COUNT(*) AS count FROM ticket WHERE VEHICLE_REG_NUMBER = ?";
-    public static final String GET_PARKING_SPOT = "SELECT * FROM parking WHERE PARKING_NUMBER = ?" ;
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.LOT_ID = t.LOT_ID and p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? and t.LOT_ID=? order by t.IN_TIME desc limit 1";
+    public static final String GET_OPEN_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, (select count(*) from ticket c where c.LOT_ID = t.LOT_ID and c.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER) + coalesce((select s.ARCHIVED_TICKETS from vehicle_visit_summary s where s.LOT_ID = t.LOT_ID and s.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER), 0) from ticket t,parking p where p.LOT_ID = t.LOT_ID and p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? and t.LOT_ID=? and t.OUT_TIME is null order by t.IN_TIME desc limit 1";
+    public static final String COUNT_OPEN_TICKETS = "select count(*) from ticket where VEHICLE_REG_NUMBER = ? and LOT_ID = ? and OUT_TIME is null";
+    public static final String CLOSE_TICKET = "update ticket t, parking p set t.PRICE=?, t.OUT_TIME=?, p.AVAILABLE = true where t.ID=? and t.OUT_TIME is null and p.LOT_ID = t.LOT_ID and p.PARKING_NUMBER = t.PARKING_NUMBER";
+    public static final String GET_OPEN_TICKETS = "select t.VEHICLE_REG_NUMBER, t.ID, t.PARKING_NUMBER, p.TYPE, t.IN_TIME, (select count(*) from ticket c where c.LOT_ID = t.LOT_ID and c.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER) + coalesce((select s.ARCHIVED_TICKETS from vehicle_visit_summary s where s.LOT_ID = t.LOT_ID and s.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER), 0) from ticket t, parking p where p.LOT_ID = t.LOT_ID and p.PARKING_NUMBER = t.PARKING_NUMBER and t.LOT_ID = ? and t.OUT_TIME is null order by t.IN_TIME";
+    public static final String EXPORT_ARCHIVED_TICKETS = "select a.ID, a.PARKING_NUMBER, p.TYPE, a.VEHICLE_REG_NUMBER, a.PRICE, a.IN_TIME, a.OUT_TIME from ticket_archive a, parking p where p.LOT_ID = a.LOT_ID and p.PARKING_NUMBER = a.PARKING_NUMBER and a.IN_TIME >= ? and a.IN_TIME < ? and (? is null or p.TYPE = ?) and a.LOT_ID = ? order by a.IN_TIME";
+    public static final String EXPORT_TICKETS = "select t.ID, t.PARKING_NUMBER, p.TYPE, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME from ticket t, parking p where p.LOT_ID = t.LOT_ID and p.PARKING_NUMBER = t.PARKING_NUMBER and t.IN_TIME >= ? and t.IN_TIME < ? and (? is null or p.TYPE = ?) and t.LOT_ID = ? order by t.IN_TIME";
+    public static final String GET_NB_TICKET =  "SELECT (SELECT COUNT(*) FROM ticket WHERE VEHICLE_REG_NUMBER = ? AND LOT_ID = ?) + COALESCE((SELECT ARCHIVED_TICKETS FROM vehicle_visit_summary WHERE VEHICLE_REG_NUMBER = ? AND LOT_ID = ?), 0) AS count";
+    public static final String GET_NB_TICKET_BEFORE =  "SELECT (SELECT COUNT(*) FROM ticket WHERE VEHICLE_REG_NUMBER = ? AND LOT_ID = ? AND IN_TIME < ?) + COALESCE((SELECT ARCHIVED_TICKETS FROM vehicle_visit_summary WHERE VEHICLE_REG_NUMBER = ? AND LOT_ID = ?), 0) AS count";
+    public static final String GET_RECENT_VISIT_COUNTS = "select t.VEHICLE_REG_NUMBER, count(*) + coalesce(max(s.ARCHIVED_TICKETS), 0) from ticket t left join vehicle_visit_summary s on s.LOT_ID = t.LOT_ID and s.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER where t.LOT_ID = ? group by t.VEHICLE_REG_NUMBER order by max(t.IN_TIME) desc limit ?";
+    public static final String GET_PARKING_SPOT = "SELECT * FROM parking WHERE PARKING_NUMBER = ? AND LOT_ID = ?" ;
+    public static final String GET_ALL_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking where LOT_ID = ?";
+    public static final String FLIP_PARKING_SPOT = "update parking set AVAILABLE = ? where PARKING_NUMBER = ? and AVAILABLE <> ? and LOT_ID = ?";
+
+    public static final String CLOSE_TICKET_OF_STAY = "update ticket set PRICE=?, OUT_TIME=? where VEHICLE_REG_NUMBER=? and OUT_TIME is null and IN_TIME > ? and IN_TIME < ? and LOT_ID = ?";
+    public static final String GET_PROJECTED_SEQUENCE = "select SEQUENCE from gate_projection where LOT_ID = ?";
+    public static final String SET_PROJECTED_SEQUENCE = "insert into gate_projection(LOT_ID, SEQUENCE) values(?, ?) on duplicate key update SEQUENCE = values(SEQUENCE)";
+
+    public static final String ADD_REVENUE_HOURLY = "insert into revenue_hourly(HOUR_START, TYPE, REVENUE, CLOSED_TICKETS, OCCUPIED_MILLIS, LOT_ID) values(?,?,?,?,?,?) on duplicate key update REVENUE = REVENUE + values(REVENUE), CLOSED_TICKETS = CLOSED_TICKETS + values(CLOSED_TICKETS), OCCUPIED_MILLIS = OCCUPIED_MILLIS + values(OCCUPIED_MILLIS)";
+    public static final String DELETE_REVENUE_HOURLY = "delete from revenue_hourly where HOUR_START >= ? and HOUR_START < ? and LOT_ID = ?";
+    public static final String GET_REVENUE_HOURLY = "select HOUR_START, TYPE, REVENUE, CLOSED_TICKETS, OCCUPIED_MILLIS from revenue_hourly where HOUR_START >= ? and HOUR_START < ? and (? is null or TYPE = ?) and LOT_ID = ? order by HOUR_START, TYPE";
+    public static final String GET_CLOSED_TICKETS_OVERLAPPING = "select p.TYPE, t.IN_TIME, t.OUT_TIME, t.PRICE from ticket t, parking p where p.LOT_ID = t.LOT_ID and p.PARKING_NUMBER = t.PARKING_NUMBER and t.OUT_TIME is not null and t.OUT_TIME >= ? and t.IN_TIME < ? and t.LOT_ID = ? union all select p.TYPE, a.IN_TIME, a.OUT_TIME, a.PRICE from ticket_archive a, parking p where p.LOT_ID = a.LOT_ID and p.PARKING_NUMBER = a.PARKING_NUMBER and a.OUT_TIME >= ? and a.IN_TIME < ? and a.LOT_ID = ?";
+
+    public static final String GET_ARCHIVE_BATCH_END = "select max(ID) from (select ID from ticket where OUT_TIME < ? order by ID limit ?) b";
+    public static final String ARCHIVE_TICKETS = "insert into ticket_archive(ID, LOT_ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) select ID, LOT_ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID <= ? and OUT_TIME < ?";
+    public static final String ADD_ARCHIVED_VISITS = "insert into vehicle_visit_summary(LOT_ID, VEHICLE_REG_NUMBER, ARCHIVED_TICKETS) select * from (select LOT_ID, VEHICLE_REG_NUMBER, count(*) as ARCHIVED from ticket where ID <= ? and OUT_TIME < ? group by LOT_ID, VEHICLE_REG_NUMBER) a on duplicate key update ARCHIVED_TICKETS = vehicle_visit_summary.ARCHIVED_TICKETS + a.ARCHIVED";
+    public static final String DELETE_ARCHIVED_TICKETS = "delete from ticket where ID <= ? and OUT_TIME < ?";
 }
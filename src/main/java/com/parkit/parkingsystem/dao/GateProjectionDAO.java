@@ -0,0 +1,193 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes batches of gate journal events to the ticket and parking tables. Each batch is written
+ * in one transaction together with the sequence of its last event in the gate_projection table,
+ * so a batch is projected exactly once whatever crashes in between, and a backlog left by a DB
+ * outage is replayed with four statements per batch instead of a round trip per event.
+ */
+public class GateProjectionDAO {
+
+    private static final Logger logger = LogManager.getLogger("GateProjectionDAO");
+
+    // DATETIME columns keep whole seconds
+    private static final long IN_TIME_PRECISION_MS = 1000;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * The lot of the gate journal, whose projected sequence is kept apart from other lots'.
+     */
+    public int lotId = DBConstants.DEFAULT_LOT_ID;
+
+    /**
+     * When set, the stays closed by {@link #project} are added to the hourly revenue buckets
+     * once the batch is committed.
+     */
+    public RevenueAggregator revenueAggregator;
+
+    /**
+     * @return the sequence of the last projected gate event, 0 if none was, or -1 if the DB failed
+     */
+    public long getProjectedSequence() {
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_PROJECTED_SEQUENCE)) {
+            ps.setInt(1, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (Exception ex) {
+            logger.error("Error fetching projected gate journal sequence", ex);
+            return -1;
+        }
+    }
+
+    /**
+     * In one transaction: inserts the new tickets, still open or already closed, closes the open
+     * ticket of each closed stay, flips the spots to their new state and records {@code sequence}
+     * as projected. The gate journal wins every conflict: a stay without an open ticket and a spot
+     * already in its new state are logged and skipped.
+     *
+     * @param closedStays tickets holding the plate, spot, in time, out time and price of a stay
+     *                    whose ticket is already open in the DB
+     * @param changedSpots the spots whose availability changed over the batch, with their new state
+     * @return false if nothing was written
+     */
+    public boolean project(List<Ticket> newTickets, List<Ticket> closedStays, Collection<ParkingSpot> changedSpots,
+                           long sequence) {
+        List<Ticket> closed = new ArrayList<>();
+        try (Connection con = dataBaseConfig.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                insertTickets(con, newTickets);
+                closeStays(con, closedStays, closed);
+                flipParkingSpots(con, changedSpots);
+                try (PreparedStatement ps = con.prepareStatement(DBConstants.SET_PROJECTED_SEQUENCE)) {
+                    ps.setInt(1, lotId);
+                    ps.setLong(2, sequence);
+                    ps.executeUpdate();
+                }
+                con.commit();
+            } catch (Exception ex) {
+                rollback(con);
+                throw ex;
+            } finally {
+                restoreAutoCommit(con);
+            }
+        } catch (Exception ex) {
+            logger.error("Error projecting gate events up to " + sequence, ex);
+            return false;
+        }
+        if (revenueAggregator != null) {
+            for (Ticket ticket : newTickets) {
+                if (ticket.getOutTime() != null) {
+                    revenueAggregator.record(ticket);
+                }
+            }
+            for (Ticket ticket : closed) {
+                revenueAggregator.record(ticket);
+            }
+        }
+        return true;
+    }
+
+    private void insertTickets(Connection con, List<Ticket> tickets) throws Exception {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET)) {
+            for (Ticket ticket : tickets) {
+                ps.setInt(1, ticket.getParkingSpot().getId());
+                ps.setString(2, ticket.getVehicleRegNumber());
+                ps.setDouble(3, ticket.getPrice());
+                ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
+                ps.setInt(6, lotId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void closeStays(Connection con, List<Ticket> stays, List<Ticket> closed) throws Exception {
+        if (stays.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = con.prepareStatement(DBConstants.CLOSE_TICKET_OF_STAY)) {
+            for (Ticket stay : stays) {
+                long inTime = stay.getInTime().getTime();
+                ps.setDouble(1, stay.getPrice());
+                ps.setTimestamp(2, new Timestamp(stay.getOutTime().getTime()));
+                ps.setString(3, stay.getVehicleRegNumber());
+                ps.setTimestamp(4, new Timestamp(inTime - IN_TIME_PRECISION_MS));
+                ps.setTimestamp(5, new Timestamp(inTime + IN_TIME_PRECISION_MS));
+                ps.setInt(6, lotId);
+                ps.addBatch();
+            }
+            int[] updateCounts = ps.executeBatch();
+            for (int i = 0; i < stays.size(); i++) {
+                if (updateCounts[i] == 0) {
+                    logger.warn("No open ticket of {} parked at {} to close, skipped",
+                            stays.get(i).getVehicleRegNumber(), stays.get(i).getInTime());
+                } else {
+                    closed.add(stays.get(i));
+                }
+            }
+        }
+    }
+
+    private void flipParkingSpots(Connection con, Collection<ParkingSpot> parkingSpots) throws Exception {
+        if (parkingSpots.isEmpty()) {
+            return;
+        }
+        List<ParkingSpot> flipped = new ArrayList<>(parkingSpots);
+        try (PreparedStatement ps = con.prepareStatement(DBConstants.FLIP_PARKING_SPOT)) {
+            for (ParkingSpot parkingSpot : flipped) {
+                ps.setBoolean(1, parkingSpot.isAvailable());
+                ps.setInt(2, parkingSpot.getId());
+                ps.setBoolean(3, parkingSpot.isAvailable());
+                ps.setInt(4, lotId);
+                ps.addBatch();
+            }
+            int[] updateCounts = ps.executeBatch();
+            for (int i = 0; i < flipped.size(); i++) {
+                if (updateCounts[i] == 0) {
+                    // changed behind the gates' back, by SQL or a gate writing to the DB directly
+                    logger.warn("Spot {} was already {} in the DB, kept as the gate journal says",
+                            flipped.get(i).getId(), flipped.get(i).isAvailable() ? "free" : "taken");
+                }
+            }
+        }
+    }
+
+    private void rollback(Connection con) {
+        try {
+            con.rollback();
+        } catch (Exception ex) {
+            logger.error("Error rolling back gate projection", ex);
+        }
+    }
+
+    private void restoreAutoCommit(Connection con) {
+        try {
+            con.setAutoCommit(true);
+        } catch (Exception ex) {
+            logger.error("Error restoring autocommit", ex);
+        }
+    }
+}
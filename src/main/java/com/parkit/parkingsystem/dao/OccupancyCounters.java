@@ -0,0 +1,50 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live count of free spots per {@link ParkingType}, kept up to date by the DAO writes that
+ * take or free a spot. Updates go to striped {@link LongAdder} cells so gates don't contend on
+ * one counter, and reads only sum the cells: no lock and no DB access, however often the
+ * entrance displays poll. The DAOs cannot always tell whether an update really flipped a spot,
+ * so the counts are reconciled against the parking table from time to time.
+ */
+public class OccupancyCounters {
+
+    private final LongAdder[] availableByType = new LongAdder[ParkingType.values().length];
+
+    public OccupancyCounters() {
+        for (int type = 0; type < availableByType.length; type++) {
+            availableByType[type] = new LongAdder();
+        }
+    }
+
+    public long getAvailable(ParkingType parkingType) {
+        return availableByType[parkingType.ordinal()].sum();
+    }
+
+    public void spotTaken(ParkingType parkingType) {
+        availableByType[parkingType.ordinal()].decrement();
+    }
+
+    public void spotFreed(ParkingType parkingType) {
+        availableByType[parkingType.ordinal()].increment();
+    }
+
+    /**
+     * Brings the count back to the value read from the DB. Updates racing with the DB read
+     * can leave a small error, corrected by the next reconciliation.
+     *
+     * @return the correction applied, 0 when the count was right
+     */
+    public long reconcile(ParkingType parkingType, long actualAvailable) {
+        LongAdder available = availableByType[parkingType.ordinal()];
+        long drift = actualAvailable - available.sum();
+        if (drift != 0) {
+            available.add(drift);
+        }
+        return drift;
+    }
+}
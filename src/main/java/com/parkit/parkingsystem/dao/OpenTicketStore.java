@@ -0,0 +1,248 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.util.PlateCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open tickets kept in memory, keyed by plate, so that an exit finds its ticket without a query.
+ * Plates are packed into longs by {@link PlateCodec} and the table is open-addressed with linear
+ * probing over parallel primitive arrays, about 30 bytes per slot: 50k open tickets fit in a few
+ * MB without one object per ticket, and {@link #get(String, OpenTicket)} allocates nothing.
+ * Plates that cannot be packed are simply not stored and are looked up in the DB.
+ */
+public class OpenTicketStore {
+
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+    private static final int MIN_CAPACITY = 16;
+    private static final long EMPTY = 0L;
+
+    private long[] plates;
+    private int[] ticketIds;
+    private int[] parkingNumbers;
+    private byte[] parkingTypes;
+    private long[] inTimes;
+    private int[] vehicleTicketCounts;
+    private int size;
+
+    public OpenTicketStore(int expectedTickets) {
+        allocate(tableSizeFor(Math.max(MIN_CAPACITY, expectedTickets * 2)));
+    }
+
+    /**
+     * Stores or replaces the open ticket of the vehicle.
+     *
+     * @param ticketId 0 while the ticket waits in the write-behind queue
+     * @return false if the plate cannot be packed
+     */
+    public synchronized boolean put(String vehicleRegNumber, int ticketId, int parkingNumber, ParkingType parkingType,
+                                    long inTimeMillis, int vehicleTicketCount) {
+        long plate = PlateCodec.encode(vehicleRegNumber);
+        if (plate == PlateCodec.NOT_ENCODABLE) {
+            return false;
+        }
+        if ((size + 1) * 2 > plates.length) {
+            resize(plates.length * 2);
+        }
+        int slot = slotOf(plate);
+        if (plates[slot] == EMPTY) {
+            plates[slot] = plate;
+            size++;
+        }
+        ticketIds[slot] = ticketId;
+        parkingNumbers[slot] = parkingNumber;
+        parkingTypes[slot] = (byte) parkingType.ordinal();
+        inTimes[slot] = inTimeMillis;
+        vehicleTicketCounts[slot] = vehicleTicketCount;
+        return true;
+    }
+
+    /**
+     * Copies the vehicle's open ticket into {@code into}, which callers can reuse.
+     *
+     * @return false if the vehicle has no ticket in the store
+     */
+    public synchronized boolean get(String vehicleRegNumber, OpenTicket into) {
+        long plate = PlateCodec.encode(vehicleRegNumber);
+        if (plate == PlateCodec.NOT_ENCODABLE) {
+            return false;
+        }
+        int slot = slotOf(plate);
+        if (plates[slot] == EMPTY) {
+            return false;
+        }
+        into.ticketId = ticketIds[slot];
+        into.parkingNumber = parkingNumbers[slot];
+        into.parkingType = PARKING_TYPES[parkingTypes[slot]];
+        into.inTimeMillis = inTimes[slot];
+        into.vehicleTicketCount = vehicleTicketCounts[slot];
+        return true;
+    }
+
+    /**
+     * Fills in the ID of a ticket stored before it was inserted, unless the vehicle has left
+     * or parked again since.
+     */
+    public synchronized boolean setTicketId(String vehicleRegNumber, long inTimeMillis, int ticketId) {
+        long plate = PlateCodec.encode(vehicleRegNumber);
+        if (plate == PlateCodec.NOT_ENCODABLE) {
+            return false;
+        }
+        int slot = slotOf(plate);
+        if (plates[slot] == EMPTY || inTimes[slot] != inTimeMillis) {
+            return false;
+        }
+        ticketIds[slot] = ticketId;
+        return true;
+    }
+
+    /**
+     * Removes the vehicle's open ticket if it is the given one.
+     */
+    public synchronized boolean remove(String vehicleRegNumber, int ticketId) {
+        long plate = PlateCodec.encode(vehicleRegNumber);
+        if (plate == PlateCodec.NOT_ENCODABLE) {
+            return false;
+        }
+        int slot = slotOf(plate);
+        if (plates[slot] == EMPTY || ticketIds[slot] != ticketId) {
+            return false;
+        }
+        delete(slot);
+        return true;
+    }
+
+    /**
+     * @return the plates of every stored ticket, upper case
+     */
+    public synchronized List<String> getVehicleRegNumbers() {
+        List<String> vehicleRegNumbers = new ArrayList<>(size);
+        for (long plate : plates) {
+            if (plate != EMPTY) {
+                vehicleRegNumbers.add(PlateCodec.decode(plate));
+            }
+        }
+        return vehicleRegNumbers;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(plates, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * @return the slot holding the plate, or the free slot where it would go
+     */
+    private int slotOf(long plate) {
+        int mask = plates.length - 1;
+        int slot = hash(plate) & mask;
+        while (plates[slot] != EMPTY && plates[slot] != plate) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // backward shift deletion: no tombstones, so probe lengths don't degrade with churn
+    private void delete(int slot) {
+        int mask = plates.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; plates[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(plates[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        plates[hole] = EMPTY;
+        size--;
+    }
+
+    private void move(int from, int to) {
+        plates[to] = plates[from];
+        ticketIds[to] = ticketIds[from];
+        parkingNumbers[to] = parkingNumbers[from];
+        parkingTypes[to] = parkingTypes[from];
+        inTimes[to] = inTimes[from];
+        vehicleTicketCounts[to] = vehicleTicketCounts[from];
+    }
+
+    private void resize(int capacity) {
+        long[] oldPlates = plates;
+        int[] oldTicketIds = ticketIds;
+        int[] oldParkingNumbers = parkingNumbers;
+        byte[] oldParkingTypes = parkingTypes;
+        long[] oldInTimes = inTimes;
+        int[] oldVehicleTicketCounts = vehicleTicketCounts;
+        allocate(capacity);
+        for (int old = 0; old < oldPlates.length; old++) {
+            if (oldPlates[old] != EMPTY) {
+                int slot = slotOf(oldPlates[old]);
+                plates[slot] = oldPlates[old];
+                ticketIds[slot] = oldTicketIds[old];
+                parkingNumbers[slot] = oldParkingNumbers[old];
+                parkingTypes[slot] = oldParkingTypes[old];
+                inTimes[slot] = oldInTimes[old];
+                vehicleTicketCounts[slot] = oldVehicleTicketCounts[old];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        plates = new long[capacity];
+        ticketIds = new int[capacity];
+        parkingNumbers = new int[capacity];
+        parkingTypes = new byte[capacity];
+        inTimes = new long[capacity];
+        vehicleTicketCounts = new int[capacity];
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private static int hash(long plate) {
+        long h = plate * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Reusable copy of one stored ticket.
+     */
+    public static final class OpenTicket {
+        private int ticketId;
+        private int parkingNumber;
+        private ParkingType parkingType;
+        private long inTimeMillis;
+        private int vehicleTicketCount;
+
+        /**
+         * @return the ticket ID, 0 while the ticket waits in the write-behind queue
+         */
+        public int getTicketId() {
+            return ticketId;
+        }
+
+        public int getParkingNumber() {
+            return parkingNumber;
+        }
+
+        public ParkingType getParkingType() {
+            return parkingType;
+        }
+
+        public long getInTimeMillis() {
+            return inTimeMillis;
+        }
+
+        public int getVehicleTicketCount() {
+            return vehicleTicketCount;
+        }
+    }
+}
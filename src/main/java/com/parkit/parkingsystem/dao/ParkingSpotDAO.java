@@ -3,6 +3,8 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,73 +12,320 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 public class ParkingSpotDAO {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    public static final int MAX_CLAIM_ATTEMPTS = 10;
+
+    private static final Timer GET_NEXT_AVAILABLE_SLOT_TIMER = Metrics.timer("ParkingSpotDAO.getNextAvailableSlot");
+    private static final Timer UPDATE_PARKING_TIMER = Metrics.timer("ParkingSpotDAO.updateParking");
+    private static final Timer CLAIM_PARKING_SPOT_TIMER = Metrics.timer("ParkingSpotDAO.claimParkingSpot");
+    private static final Timer GET_PARKING_SPOT_TIMER = Metrics.timer("ParkingSpotDAO.getParkingSpot");
+    private static final Timer GET_AVAILABLE_SPOT_COUNTS_TIMER = Metrics.timer("ParkingSpotDAO.getAvailableSpotCounts");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    /**
+     * The lot whose spots this DAO reads and writes. Spot numbers are only unique within a lot.
+     */
+    public int lotId = DBConstants.DEFAULT_LOT_ID;
+
+    /**
+     * When set, free spots are claimed from this in-memory index instead of querying the
+     * parking table, and {@link #updateParking(ParkingSpot)} writes the new state through to the DB.
+     */
+    public ParkingSpotIndex parkingSpotIndex;
+
+    /**
+     * When set, spots taken or freed through this DAO are counted in, and free spot counts
+     * are answered from, these counters.
+     */
+    public OccupancyCounters occupancyCounters;
+
+    /**
+     * Builds the free-spot index from the parking table. Until this succeeds, spots keep
+     * being looked up with GET_NEXT_PARKING_SPOT.
+     */
+    public boolean loadParkingSpotIndex() {
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_ALL_PARKING_SPOTS)) {
+            ps.setInt(1, lotId);
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    parkingSpots.add(new ParkingSpot(rs.getInt("PARKING_NUMBER"),
+                            ParkingType.valueOf(rs.getString("TYPE")), rs.getBoolean("AVAILABLE")));
+                }
+            }
+            parkingSpotIndex = new ParkingSpotIndex(parkingSpots);
+            logger.info("Loaded {} parking spots of lot {} in the free-spot index", parkingSpots.size(), lotId);
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error loading parking spot index", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Builds the free-spot index from spots saved earlier, when the parking table cannot be read.
+     */
+    public void restoreParkingSpotIndex(Collection<ParkingSpot> parkingSpots) {
+        parkingSpotIndex = new ParkingSpotIndex(parkingSpots);
+        logger.info("Restored {} parking spots in the free-spot index", parkingSpots.size());
+    }
+
+    /**
+     * @return every spot with its state in the free-spot index, or null if there is no index
+     */
+    public List<ParkingSpot> getIndexedParkingSpots() {
+        return parkingSpotIndex == null ? null : parkingSpotIndex.getParkingSpots();
+    }
+
     public int getNextAvailableSlot(ParkingType parkingType){
-        Connection con = null;
+        long start = GET_NEXT_AVAILABLE_SLOT_TIMER.start();
+        if (parkingSpotIndex != null) {
+            int parkingNumber = parkingSpotIndex.claim(parkingType);
+            GET_NEXT_AVAILABLE_SLOT_TIMER.stop(start);
+            return parkingNumber;
+        }
         int result=-1;
-        try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT)) {
             ps.setString(1, parkingType.toString());
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                result = rs.getInt(1);;
+            ps.setInt(2, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    result = rs.getInt(1);
+                }
             }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
         }catch (Exception ex){
+            GET_NEXT_AVAILABLE_SLOT_TIMER.failed();
             logger.error("Error fetching next available slot",ex);
         }finally {
-            dataBaseConfig.closeConnection(con);
+            GET_NEXT_AVAILABLE_SLOT_TIMER.stop(start);
         }
         return result;
     }
 
+    /**
+     * Sets the spot to the state of {@code parkingSpot}. Only a spot that actually changed state
+     * is counted in the occupancy counters.
+     *
+     * @return false if the DB could not be updated
+     */
     public boolean updateParking(ParkingSpot parkingSpot){
-
-        Connection con = null;
-        try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+        long start = UPDATE_PARKING_TIMER.start();
+        boolean updated = false;
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.FLIP_PARKING_SPOT)) {
             ps.setBoolean(1, parkingSpot.isAvailable());
             ps.setInt(2, parkingSpot.getId());
-            int updateRowCount = ps.executeUpdate();
-            dataBaseConfig.closePreparedStatement(ps);
-            return (updateRowCount == 1);
+            ps.setBoolean(3, parkingSpot.isAvailable());
+            ps.setInt(4, lotId);
+            boolean flipped = ps.executeUpdate() == 1;
+            updated = true;
+            if (flipped && occupancyCounters != null) {
+                if (parkingSpot.isAvailable()) {
+                    occupancyCounters.spotFreed(parkingSpot.getParkingType());
+                } else {
+                    occupancyCounters.spotTaken(parkingSpot.getParkingType());
+                }
+            }
+            return updated;
         }catch (Exception ex){
+            UPDATE_PARKING_TIMER.failed();
             logger.error("Error updating parking info",ex);
             return false;
         }finally {
-            dataBaseConfig.closeConnection(con);
+            if (parkingSpotIndex != null) {
+                syncParkingSpotIndex(parkingSpot, updated);
+            }
+            UPDATE_PARKING_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Occupies the spot only if it is still available in the DB, so two gates that picked
+     * the same spot can never both get it.
+     *
+     * @return true if the caller now owns the spot, false if another gate took it first or the DB failed
+     */
+    public boolean claimParkingSpot(ParkingSpot parkingSpot) {
+        long start = CLAIM_PARKING_SPOT_TIMER.start();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT)) {
+            ps.setInt(1, parkingSpot.getId());
+            ps.setInt(2, lotId);
+            int updateRowCount = ps.executeUpdate();
+            if (parkingSpotIndex != null) {
+                // either we own it now or someone else does, both ways it is no longer free
+                parkingSpotIndex.claim(parkingSpot.getId());
+            }
+            if (updateRowCount == 1 && occupancyCounters != null) {
+                occupancyCounters.spotTaken(parkingSpot.getParkingType());
+            }
+            return (updateRowCount == 1);
+        } catch (Exception ex) {
+            CLAIM_PARKING_SPOT_TIMER.failed();
+            logger.error("Error claiming parking spot", ex);
+            releaseSlot(parkingSpot);
+            return false;
+        } finally {
+            CLAIM_PARKING_SPOT_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Finds and occupies a free spot of the given type, moving on to the next candidate
+     * whenever a concurrent gate wins the race for the current one.
+     *
+     * @return the claimed parking number, or -1 if no spot could be claimed
+     */
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+            int parkingNumber = getNextAvailableSlot(parkingType);
+            if (parkingNumber <= 0) {
+                return -1;
+            }
+            if (claimParkingSpot(new ParkingSpot(parkingNumber, parkingType, true))) {
+                return parkingNumber;
+            }
+            logger.debug("Parking spot {} was taken by another gate, trying the next one", parkingNumber);
+        }
+        logger.error("Could not claim a {} spot after {} attempts", parkingType, MAX_CLAIM_ATTEMPTS);
+        return -1;
+    }
+
+    private void syncParkingSpotIndex(ParkingSpot parkingSpot, boolean updated) {
+        if (parkingSpot.isAvailable()) {
+            if (updated) {
+                parkingSpotIndex.release(parkingSpot.getId());
+            }
+        } else if (updated) {
+            // no-op when the spot was handed out by the index, keeps it in sync otherwise
+            parkingSpotIndex.claim(parkingSpot.getId());
+        } else {
+            // the DB refused the occupation, give the claimed spot back
+            parkingSpotIndex.release(parkingSpot.getId());
+        }
+    }
+
+    /**
+     * Marks a spot as free in the in-memory index only: either a spot handed out by
+     * {@link #getNextAvailableSlot(ParkingType)} that was never occupied, or one already
+     * freed in the DB by {@link com.parkit.parkingsystem.dao.TicketDAO#closeTicket}.
+     */
+    public void releaseSlot(ParkingSpot parkingSpot) {
+        if (parkingSpotIndex != null) {
+            parkingSpotIndex.release(parkingSpot.getId());
+        }
+    }
+
+    /**
+     * Takes or frees the spot in the index and the occupancy counters only, for a gate event
+     * recorded in the gate journal, whose DB update comes later from the journal projector.
+     */
+    public void updateJournaledSlot(ParkingSpot parkingSpot) {
+        if (parkingSpotIndex != null) {
+            if (parkingSpot.isAvailable()) {
+                parkingSpotIndex.release(parkingSpot.getId());
+            } else {
+                // no-op when the spot was handed out by the index
+                parkingSpotIndex.claim(parkingSpot.getId());
+            }
+        }
+        if (occupancyCounters != null) {
+            if (parkingSpot.isAvailable()) {
+                occupancyCounters.spotFreed(parkingSpot.getParkingType());
+            } else {
+                occupancyCounters.spotTaken(parkingSpot.getParkingType());
+            }
         }
     }
 
     public ParkingSpot getParkingSpot(int parkingSpotId) {
-        Connection con = null;
+        long start = GET_PARKING_SPOT_TIMER.start();
         ParkingSpot parkingSpot = null;
-        try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOT);
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOT)) {
             ps.setInt(1, parkingSpotId);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                boolean isAvailable = rs.getBoolean("AVAILABLE");
-                ParkingType parkingType = ParkingType.valueOf(rs.getString("TYPE"));
-                parkingSpot = new ParkingSpot(parkingSpotId, parkingType, isAvailable);
+            ps.setInt(2, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    boolean isAvailable = rs.getBoolean("AVAILABLE");
+                    ParkingType parkingType = ParkingType.valueOf(rs.getString("TYPE"));
+                    parkingSpot = new ParkingSpot(parkingSpotId, parkingType, isAvailable);
+                }
             }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
         } catch (Exception ex) {
+            GET_PARKING_SPOT_TIMER.failed();
             logger.error("Error fetching parking spot info", ex);
         } finally {
-            dataBaseConfig.closeConnection(con);
+            GET_PARKING_SPOT_TIMER.stop(start);
         }
         return parkingSpot;
     }
 
+    /**
+     * @return the number of free spots of the type, from the occupancy counters or the index when
+     * they are loaded, or -1 if the DB failed
+     */
+    public int getAvailableSpotCount(ParkingType parkingType) {
+        if (occupancyCounters != null) {
+            return (int) occupancyCounters.getAvailable(parkingType);
+        }
+        if (parkingSpotIndex != null) {
+            return parkingSpotIndex.getAvailableCount(parkingType);
+        }
+        int result = -1;
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_AVAILABLE_SPOTS)) {
+            ps.setString(1, parkingType.toString());
+            ps.setInt(2, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    result = rs.getInt(1);
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Error counting available parking spots", ex);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the free spots of every type with one query.
+     *
+     * @return the free spot count per type, types without a free spot included, or null if the DB failed
+     */
+    public Map<ParkingType, Integer> getAvailableSpotCounts() {
+        long start = GET_AVAILABLE_SPOT_COUNTS_TIMER.start();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_AVAILABLE_SPOTS_BY_TYPE)) {
+            ps.setInt(1, lotId);
+            Map<ParkingType, Integer> counts = new EnumMap<>(ParkingType.class);
+            for (ParkingType parkingType : ParkingType.values()) {
+                counts.put(parkingType, 0);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(ParkingType.valueOf(rs.getString(1)), rs.getInt(2));
+                }
+            }
+            return counts;
+        } catch (Exception ex) {
+            GET_AVAILABLE_SPOT_COUNTS_TIMER.failed();
+            logger.error("Error counting available parking spots", ex);
+            return null;
+        } finally {
+            GET_AVAILABLE_SPOT_COUNTS_TIMER.stop(start);
+        }
+    }
+
 }
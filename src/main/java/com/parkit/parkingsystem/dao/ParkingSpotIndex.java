@@ -0,0 +1,207 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory index of free parking spots, one concurrent bitset per {@link ParkingType}.
+ * A set bit means the spot is free. Claim and release are single CAS operations on the
+ * 64-spot word holding the spot, so gates never block each other and never hit the DB
+ * to find a spot. Spots are handed out lowest number first, like GET_NEXT_PARKING_SPOT.
+ */
+public class ParkingSpotIndex {
+
+    private final FreeSpots[] freeSpotsByType;
+    private final int[] typeBySpot;
+    private final int[] bitBySpot;
+
+    public ParkingSpotIndex(Collection<ParkingSpot> parkingSpots) {
+        int maxNumber = 0;
+        List<List<ParkingSpot>> spotsByType = new ArrayList<>();
+        for (int i = 0; i < ParkingType.values().length; i++) {
+            spotsByType.add(new ArrayList<>());
+        }
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            maxNumber = Math.max(maxNumber, parkingSpot.getId());
+            spotsByType.get(parkingSpot.getParkingType().ordinal()).add(parkingSpot);
+        }
+
+        typeBySpot = new int[maxNumber + 1];
+        bitBySpot = new int[maxNumber + 1];
+        Arrays.fill(typeBySpot, -1);
+        freeSpotsByType = new FreeSpots[spotsByType.size()];
+        for (int type = 0; type < spotsByType.size(); type++) {
+            List<ParkingSpot> spots = spotsByType.get(type);
+            spots.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            FreeSpots freeSpots = new FreeSpots(spots.size());
+            for (int bit = 0; bit < spots.size(); bit++) {
+                ParkingSpot parkingSpot = spots.get(bit);
+                freeSpots.spotNumbers[bit] = parkingSpot.getId();
+                typeBySpot[parkingSpot.getId()] = type;
+                bitBySpot[parkingSpot.getId()] = bit;
+                if (parkingSpot.isAvailable()) {
+                    freeSpots.set(bit);
+                }
+            }
+            freeSpotsByType[type] = freeSpots;
+        }
+    }
+
+    /**
+     * Atomically takes the lowest-numbered free spot of the given type.
+     *
+     * @return the claimed parking number, or -1 when every spot of that type is taken
+     */
+    public int claim(ParkingType parkingType) {
+        FreeSpots freeSpots = freeSpotsByType[parkingType.ordinal()];
+        int bit = freeSpots.claimAny();
+        return bit < 0 ? -1 : freeSpots.spotNumbers[bit];
+    }
+
+    /**
+     * Atomically takes a specific spot.
+     *
+     * @return true if the spot was free and is now claimed by the caller
+     */
+    public boolean claim(int parkingNumber) {
+        if (!isIndexed(parkingNumber)) {
+            return false;
+        }
+        return freeSpotsByType[typeBySpot[parkingNumber]].clear(bitBySpot[parkingNumber]);
+    }
+
+    /**
+     * Marks a spot as free again.
+     *
+     * @return true if the spot was taken and is now free, false if it was already free or is unknown
+     */
+    public boolean release(int parkingNumber) {
+        if (!isIndexed(parkingNumber)) {
+            return false;
+        }
+        return freeSpotsByType[typeBySpot[parkingNumber]].set(bitBySpot[parkingNumber]);
+    }
+
+    public boolean isAvailable(int parkingNumber) {
+        return isIndexed(parkingNumber) && freeSpotsByType[typeBySpot[parkingNumber]].get(bitBySpot[parkingNumber]);
+    }
+
+    /**
+     * @return every indexed spot with its current state, by type then number
+     */
+    public List<ParkingSpot> getParkingSpots() {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (ParkingType parkingType : ParkingType.values()) {
+            FreeSpots freeSpots = freeSpotsByType[parkingType.ordinal()];
+            for (int bit = 0; bit < freeSpots.spotNumbers.length; bit++) {
+                parkingSpots.add(new ParkingSpot(freeSpots.spotNumbers[bit], parkingType, freeSpots.get(bit)));
+            }
+        }
+        return parkingSpots;
+    }
+
+    public int getAvailableCount(ParkingType parkingType) {
+        return freeSpotsByType[parkingType.ordinal()].count();
+    }
+
+    private boolean isIndexed(int parkingNumber) {
+        return parkingNumber > 0 && parkingNumber < typeBySpot.length && typeBySpot[parkingNumber] >= 0;
+    }
+
+    private static final class FreeSpots {
+        private final int[] spotNumbers;
+        private final AtomicLongArray words;
+        // lowest word that may still hold a free spot
+        private final AtomicInteger firstFreeWord = new AtomicInteger();
+
+        private FreeSpots(int size) {
+            spotNumbers = new int[size];
+            words = new AtomicLongArray((size + 63) >>> 6);
+        }
+
+        private int claimAny() {
+            int start = firstFreeWord.get();
+            int bit = claimBetween(start, words.length());
+            if (bit < 0 && start > 0) {
+                // a concurrent release may have raced with the hint update, check the skipped words
+                bit = claimBetween(0, start);
+            }
+            return bit;
+        }
+
+        private int claimBetween(int from, int to) {
+            for (int index = from; index < to; index++) {
+                long word = words.get(index);
+                while (word != 0) {
+                    long lowest = Long.lowestOneBit(word);
+                    if (words.compareAndSet(index, word, word & ~lowest)) {
+                        advanceFirstFreeWord(index);
+                        return (index << 6) + Long.numberOfTrailingZeros(lowest);
+                    }
+                    word = words.get(index);
+                }
+            }
+            return -1;
+        }
+
+        private boolean clear(int bit) {
+            int index = bit >>> 6;
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(index);
+                if ((word & mask) == 0) {
+                    return false;
+                }
+            } while (!words.compareAndSet(index, word, word & ~mask));
+            return true;
+        }
+
+        private boolean set(int bit) {
+            int index = bit >>> 6;
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(index);
+                if ((word & mask) != 0) {
+                    return false;
+                }
+            } while (!words.compareAndSet(index, word, word | mask));
+            lowerFirstFreeWord(index);
+            return true;
+        }
+
+        private boolean get(int bit) {
+            return (words.get(bit >>> 6) & (1L << bit)) != 0;
+        }
+
+        private int count() {
+            int count = 0;
+            for (int index = 0; index < words.length(); index++) {
+                count += Long.bitCount(words.get(index));
+            }
+            return count;
+        }
+
+        private void advanceFirstFreeWord(int index) {
+            int current = firstFreeWord.get();
+            while (current < index && !firstFreeWord.compareAndSet(current, index)) {
+                current = firstFreeWord.get();
+            }
+        }
+
+        private void lowerFirstFreeWord(int index) {
+            int current = firstFreeWord.get();
+            while (current > index && !firstFreeWord.compareAndSet(current, index)) {
+                current = firstFreeWord.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.RevenueBucket;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits closed tickets into hourly {@link RevenueBucket}s: the fare goes to the hour of the out
+ * time and the parked time is spread over every hour the stay overlaps. Hours follow the default
+ * time zone, like the DATETIME columns. Not thread-safe.
+ */
+public class RevenueAccumulator {
+
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    private final ZoneId zoneId = ZoneId.systemDefault();
+    private final Map<LocalDateTime, RevenueBucket[]> buckets = new TreeMap<>();
+
+    public void addTicket(ParkingType parkingType, long inTimeMillis, long outTimeMillis, double price) {
+        addTicket(parkingType, inTimeMillis, outTimeMillis, price, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Adds only what falls between {@code fromMillis}, inclusive, and {@code toMillis}, exclusive.
+     */
+    public void addTicket(ParkingType parkingType, long inTimeMillis, long outTimeMillis, double price,
+                          long fromMillis, long toMillis) {
+        if (outTimeMillis >= fromMillis && outTimeMillis < toMillis) {
+            RevenueBucket bucket = bucket(hourOf(outTimeMillis), parkingType);
+            bucket.setRevenue(bucket.getRevenue() + price);
+            bucket.setClosedTickets(bucket.getClosedTickets() + 1);
+        }
+        long start = Math.max(inTimeMillis, fromMillis);
+        long end = Math.min(outTimeMillis, toMillis);
+        LocalDateTime hour = hourOf(start);
+        while (start < end) {
+            long sliceEnd = Math.min(end, toMillis(hour.plusHours(1)));
+            // an hour skipped by a DST change has no time in it
+            if (sliceEnd > start) {
+                RevenueBucket bucket = bucket(hour, parkingType);
+                bucket.setOccupiedMillis(bucket.getOccupiedMillis() + sliceEnd - start);
+                start = sliceEnd;
+            }
+            hour = hour.plusHours(1);
+        }
+    }
+
+    /**
+     * Adds buckets back, for instance after they failed to be written.
+     */
+    public void addBuckets(Collection<RevenueBucket> revenueBuckets) {
+        for (RevenueBucket revenueBucket : revenueBuckets) {
+            LocalDateTime hour = hourOf(revenueBucket.getHourStart().getTime());
+            bucket(hour, revenueBucket.getParkingType()).add(revenueBucket);
+        }
+    }
+
+    public boolean isEmpty() {
+        return buckets.isEmpty();
+    }
+
+    /**
+     * @return the buckets accumulated so far, in hour order, and starts over
+     */
+    public List<RevenueBucket> drain() {
+        List<RevenueBucket> drained = new ArrayList<>();
+        for (RevenueBucket[] hourBuckets : buckets.values()) {
+            for (RevenueBucket bucket : hourBuckets) {
+                if (bucket != null) {
+                    drained.add(bucket);
+                }
+            }
+        }
+        buckets.clear();
+        return drained;
+    }
+
+    private RevenueBucket bucket(LocalDateTime hour, ParkingType parkingType) {
+        RevenueBucket[] hourBuckets = buckets.computeIfAbsent(hour, h -> new RevenueBucket[PARKING_TYPES.length]);
+        RevenueBucket bucket = hourBuckets[parkingType.ordinal()];
+        if (bucket == null) {
+            bucket = new RevenueBucket(Timestamp.valueOf(hour), parkingType);
+            hourBuckets[parkingType.ordinal()] = bucket;
+        }
+        return bucket;
+    }
+
+    private LocalDateTime hourOf(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zoneId).truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private long toMillis(LocalDateTime hour) {
+        return hour.atZone(zoneId).toInstant().toEpochMilli();
+    }
+}
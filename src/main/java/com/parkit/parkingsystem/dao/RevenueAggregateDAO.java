@@ -0,0 +1,180 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.RevenueBucket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads and writes the hourly revenue and occupancy buckets of the revenue_hourly table, so that
+ * reports read one row per hour and parking type instead of scanning the tickets.
+ */
+public class RevenueAggregateDAO {
+
+    private static final Logger logger = LogManager.getLogger("RevenueAggregateDAO");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * The lot whose revenue this DAO reads and writes.
+     */
+    public int lotId = DBConstants.DEFAULT_LOT_ID;
+
+    /**
+     * Adds the buckets to the stored ones, creating the missing hours, in one transaction.
+     *
+     * @return false if nothing was added
+     */
+    public boolean addBuckets(Collection<RevenueBucket> buckets) {
+        if (buckets.isEmpty()) {
+            return true;
+        }
+        try (Connection con = dataBaseConfig.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                insertBuckets(con, buckets);
+                con.commit();
+                return true;
+            } catch (Exception ex) {
+                rollback(con);
+                throw ex;
+            } finally {
+                restoreAutoCommit(con);
+            }
+        } catch (Exception ex) {
+            logger.error("Error adding " + buckets.size() + " revenue buckets", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Recomputes the buckets of every hour from {@code from} to {@code to} from the closed
+     * tickets, replacing the stored ones in one transaction. Both bounds are rounded down to the
+     * hour. Tickets are streamed from the server, so memory only grows with the number of hours.
+     * Closes a running {@link RevenueAggregator} has not flushed yet are counted again when it
+     * does, so rebuild hours that are over.
+     *
+     * @return the number of buckets written, or -1 if the stored buckets were left unchanged
+     */
+    public int rebuild(Date from, Date to) {
+        Timestamp fromHour = Timestamp.valueOf(new Timestamp(from.getTime()).toLocalDateTime().truncatedTo(ChronoUnit.HOURS));
+        Timestamp toHour = Timestamp.valueOf(new Timestamp(to.getTime()).toLocalDateTime().truncatedTo(ChronoUnit.HOURS));
+        RevenueAccumulator accumulator = new RevenueAccumulator();
+        try (Connection con = dataBaseConfig.getConnection()) {
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.GET_CLOSED_TICKETS_OVERLAPPING,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // with Connector/J, this fetch size streams rows instead of buffering the whole result
+                ps.setFetchSize(Integer.MIN_VALUE);
+                ps.setTimestamp(1, fromHour);
+                ps.setTimestamp(2, toHour);
+                ps.setInt(3, lotId);
+                // the same range over ticket_archive
+                ps.setTimestamp(4, fromHour);
+                ps.setTimestamp(5, toHour);
+                ps.setInt(6, lotId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        accumulator.addTicket(ParkingType.valueOf(rs.getString(1)), rs.getTimestamp(2).getTime(),
+                                rs.getTimestamp(3).getTime(), rs.getDouble(4), fromHour.getTime(), toHour.getTime());
+                    }
+                }
+            }
+            List<RevenueBucket> buckets = accumulator.drain();
+            con.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = con.prepareStatement(DBConstants.DELETE_REVENUE_HOURLY)) {
+                    ps.setTimestamp(1, fromHour);
+                    ps.setTimestamp(2, toHour);
+                    ps.setInt(3, lotId);
+                    ps.executeUpdate();
+                }
+                insertBuckets(con, buckets);
+                con.commit();
+            } catch (Exception ex) {
+                rollback(con);
+                throw ex;
+            } finally {
+                restoreAutoCommit(con);
+            }
+            logger.info("Rebuilt {} revenue buckets from {} to {}", buckets.size(), fromHour, toHour);
+            return buckets.size();
+        } catch (Exception ex) {
+            logger.error("Error rebuilding revenue buckets from " + fromHour + " to " + toHour, ex);
+            return -1;
+        }
+    }
+
+    /**
+     * @param parkingType null for every type
+     * @return the stored buckets from {@code from}, inclusive, to {@code to}, exclusive, by hour
+     * then type, or null if they could not be read
+     */
+    public List<RevenueBucket> getBuckets(Date from, Date to, ParkingType parkingType) {
+        List<RevenueBucket> buckets = new ArrayList<>();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_REVENUE_HOURLY)) {
+            ps.setTimestamp(1, new Timestamp(from.getTime()));
+            ps.setTimestamp(2, new Timestamp(to.getTime()));
+            ps.setString(3, parkingType == null ? null : parkingType.toString());
+            ps.setString(4, parkingType == null ? null : parkingType.toString());
+            ps.setInt(5, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    RevenueBucket bucket = new RevenueBucket(rs.getTimestamp(1), ParkingType.valueOf(rs.getString(2)));
+                    bucket.setRevenue(rs.getDouble(3));
+                    bucket.setClosedTickets(rs.getInt(4));
+                    bucket.setOccupiedMillis(rs.getLong(5));
+                    buckets.add(bucket);
+                }
+            }
+            return buckets;
+        } catch (Exception ex) {
+            logger.error("Error fetching revenue buckets", ex);
+            return null;
+        }
+    }
+
+    private void insertBuckets(Connection con, Collection<RevenueBucket> buckets) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(DBConstants.ADD_REVENUE_HOURLY)) {
+            for (RevenueBucket bucket : buckets) {
+                ps.setTimestamp(1, new Timestamp(bucket.getHourStart().getTime()));
+                ps.setString(2, bucket.getParkingType().toString());
+                ps.setDouble(3, bucket.getRevenue());
+                ps.setInt(4, bucket.getClosedTickets());
+                ps.setLong(5, bucket.getOccupiedMillis());
+                ps.setInt(6, lotId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void rollback(Connection con) {
+        try {
+            con.rollback();
+        } catch (Exception ex) {
+            logger.error("Error rolling back revenue buckets", ex);
+        }
+    }
+
+    private void restoreAutoCommit(Connection con) {
+        try {
+            con.setAutoCommit(true);
+        } catch (Exception ex) {
+            logger.error("Error restoring autocommit", ex);
+        }
+    }
+}
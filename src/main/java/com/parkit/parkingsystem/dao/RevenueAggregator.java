@@ -0,0 +1,87 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.RevenueBucket;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the revenue_hourly table up to date as tickets are closed. Closed tickets are split
+ * into hourly buckets in memory and the buckets are added to the table every
+ * {@code flushIntervalMs}, so a busy hour costs one upsert per parking type and flush instead of
+ * one per exit. A stay only counts once it is closed, so the hours of vehicles still parked fill
+ * up when they leave. Buckets that fail to be written are kept for the next flush; those not
+ * flushed when the process dies are lost, {@link RevenueAggregateDAO#rebuild} restores them.
+ */
+public class RevenueAggregator implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("RevenueAggregator");
+
+    private final RevenueAggregateDAO revenueAggregateDAO;
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+    // guarded by this
+    private final RevenueAccumulator accumulator = new RevenueAccumulator();
+
+    public RevenueAggregator(RevenueAggregateDAO revenueAggregateDAO, long flushIntervalMs) {
+        this.revenueAggregateDAO = revenueAggregateDAO;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "revenue-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a ticket that was just closed to the pending buckets.
+     */
+    public synchronized void record(Ticket ticket) {
+        accumulator.addTicket(ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(),
+                ticket.getOutTime().getTime(), ticket.getPrice());
+    }
+
+    public synchronized boolean hasPending() {
+        return !accumulator.isEmpty();
+    }
+
+    /**
+     * Adds the pending buckets to the table. On failure they are merged back with the buckets
+     * recorded since, and the next flush retries them.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<RevenueBucket> buckets;
+            synchronized (this) {
+                if (accumulator.isEmpty()) {
+                    return;
+                }
+                buckets = accumulator.drain();
+            }
+            if (!revenueAggregateDAO.addBuckets(buckets)) {
+                synchronized (this) {
+                    accumulator.addBuckets(buckets);
+                }
+                return;
+            }
+            logger.debug("Flushed {} revenue buckets", buckets.size());
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,102 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Moves closed tickets from the ticket table to ticket_archive, adding them to the per-vehicle
+ * counts of vehicle_visit_summary, so that the ticket table only holds recent and open tickets
+ * while visit counts, and so the recurring user discount, still include the archived ones.
+ * History queries read both tables. Tickets of every lot of the database are archived together.
+ */
+public class TicketArchiveDAO {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiveDAO");
+
+    private static final Timer ARCHIVE_BATCH_TIMER = Metrics.timer("TicketArchiveDAO.archiveBatch");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * Moves the first {@code batchSize} tickets closed before {@code closedBefore}, in ID order,
+     * in one transaction: they are copied to ticket_archive, counted in vehicle_visit_summary and
+     * deleted from ticket, bounded by the primary key so each statement only locks the batch.
+     *
+     * @return the number of tickets moved, 0 when none is left, or -1 if the batch failed and was rolled back
+     */
+    public int archiveBatch(Date closedBefore, int batchSize) {
+        long start = ARCHIVE_BATCH_TIMER.start();
+        Timestamp cutoff = new Timestamp(closedBefore.getTime());
+        try (Connection con = dataBaseConfig.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                int lastId;
+                try (PreparedStatement ps = con.prepareStatement(DBConstants.GET_ARCHIVE_BATCH_END)) {
+                    ps.setTimestamp(1, cutoff);
+                    ps.setInt(2, batchSize);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        lastId = rs.next() ? rs.getInt(1) : 0;
+                    }
+                }
+                if (lastId == 0) {
+                    con.commit();
+                    return 0;
+                }
+                int archived = executeUpTo(con, DBConstants.ARCHIVE_TICKETS, lastId, cutoff);
+                executeUpTo(con, DBConstants.ADD_ARCHIVED_VISITS, lastId, cutoff);
+                int deleted = executeUpTo(con, DBConstants.DELETE_ARCHIVED_TICKETS, lastId, cutoff);
+                if (deleted != archived) {
+                    throw new IllegalStateException("Archived " + archived + " tickets up to ID " + lastId
+                            + " but deleted " + deleted);
+                }
+                con.commit();
+                return archived;
+            } catch (Exception ex) {
+                rollback(con);
+                throw ex;
+            } finally {
+                restoreAutoCommit(con);
+            }
+        } catch (Exception ex) {
+            ARCHIVE_BATCH_TIMER.failed();
+            logger.error("Error archiving tickets closed before " + closedBefore, ex);
+            return -1;
+        } finally {
+            ARCHIVE_BATCH_TIMER.stop(start);
+        }
+    }
+
+    private static int executeUpTo(Connection con, String sql, int lastId, Timestamp cutoff) throws Exception {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, lastId);
+            ps.setTimestamp(2, cutoff);
+            return ps.executeUpdate();
+        }
+    }
+
+    private void rollback(Connection con) {
+        try {
+            con.rollback();
+        } catch (Exception ex) {
+            logger.error("Error rolling back ticket archival", ex);
+        }
+    }
+
+    private void restoreAutoCommit(Connection con) {
+        try {
+            con.setAutoCommit(true);
+        } catch (Exception ex) {
+            logger.error("Error restoring autocommit", ex);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.parkit.parkingsystem.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archives the tickets closed more than {@code retentionDays} ago in the background, through
+ * {@link TicketArchiveDAO#archiveBatch}. A run moves batches of {@code batchSize} tickets until
+ * none is left, pausing between batches so that the gates' own statements are not held behind a
+ * long run of archival transactions. A failed batch ends the run; the next run resumes from it.
+ */
+public class TicketArchiver implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final TicketArchiveDAO ticketArchiveDAO;
+    private final int retentionDays;
+    private final int batchSize;
+    private final long pauseMs;
+    // guarded by this
+    private ScheduledExecutorService archiver;
+
+    public TicketArchiver(TicketArchiveDAO ticketArchiveDAO, int retentionDays, int batchSize, long pauseMs) {
+        this.ticketArchiveDAO = ticketArchiveDAO;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+    }
+
+    /**
+     * Archives every {@code intervalMs} from now on.
+     */
+    public synchronized void start(long intervalMs) {
+        archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        archiver.scheduleWithFixedDelay(this::archive, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Archives the tickets closed before the retention period, batch by batch.
+     *
+     * @return the number of tickets archived, or -1 if a batch failed or the run was interrupted
+     */
+    public long archive() {
+        Date closedBefore = new Date(System.currentTimeMillis() - retentionDays * DAY_MS);
+        long archived = 0;
+        while (true) {
+            int moved = ticketArchiveDAO.archiveBatch(closedBefore, batchSize);
+            if (moved < 0) {
+                logger.warn("Ticket archival stopped after {} tickets, resuming at the next run", archived);
+                return -1;
+            }
+            archived += moved;
+            if (moved < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.info("Ticket archival interrupted after {} tickets", archived);
+                return -1;
+            }
+        }
+        if (archived > 0) {
+            logger.info("Archived {} tickets closed before {}", archived, closedBefore);
+        }
+        return archived;
+    }
+
+    /**
+     * Stops the periodic archival, interrupting a run in progress between two batches.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService archiver;
+        synchronized (this) {
+            archiver = this.archiver;
+        }
+        if (archiver != null) {
+            archiver.shutdownNow();
+            try {
+                archiver.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -3,112 +3,748 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.CsvChannelWriter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.channels.WritableByteChannel;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class TicketDAO {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+    private static final Timer SAVE_TICKET_TIMER = Metrics.timer("TicketDAO.saveTicket");
+    private static final Timer SAVE_TICKETS_TIMER = Metrics.timer("TicketDAO.saveTickets");
+    private static final Timer GET_TICKET_TIMER = Metrics.timer("TicketDAO.getTicket");
+    private static final Timer GET_OPEN_TICKET_TIMER = Metrics.timer("TicketDAO.getOpenTicket");
+    private static final Timer CLOSE_TICKET_TIMER = Metrics.timer("TicketDAO.closeTicket");
+    private static final Timer UPDATE_TICKET_TIMER = Metrics.timer("TicketDAO.updateTicket");
+    private static final Timer GET_NB_TICKET_TIMER = Metrics.timer("TicketDAO.getNbTicket");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
-    public boolean saveTicket(Ticket ticket){
-        Connection con = null;
-        try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+    /**
+     * The lot whose tickets this DAO reads and writes. Visit counts, and so the recurring user
+     * discount, are per lot.
+     */
+    public int lotId = DBConstants.DEFAULT_LOT_ID;
+
+    /**
+     * When set, {@link #saveTicket(Ticket)} only queues the ticket and the queue inserts tickets
+     * in batches. Reads flush the queue first so they always see saved tickets.
+     */
+    public TicketWriteBehind ticketWriteBehind;
+
+    /**
+     * When set, {@link #getNbTicket(String)} is answered from this cache and kept up to date by
+     * {@link #saveTicket(Ticket)}.
+     */
+    public VisitCountCache visitCountCache;
+
+    /**
+     * When set, spots freed by {@link #closeTicket(Ticket)} are counted in.
+     */
+    public OccupancyCounters occupancyCounters;
+
+    /**
+     * When set, open tickets are kept in this store by {@link #saveTicket(Ticket)} and
+     * {@link #closeTicket(Ticket)}, and {@link #getOpenTicket(String)} is answered from it. Like
+     * the free-spot index, it assumes this process is the only one writing tickets.
+     */
+    public OpenTicketStore openTicketStore;
+
+    /**
+     * When set, tickets closed by {@link #closeTicket(Ticket)} are added to the hourly revenue
+     * buckets. {@link #updateTicket(Ticket)} is not counted, it can rewrite a ticket that was
+     * already closed.
+     */
+    public RevenueAggregator revenueAggregator;
+
+    private static final int EXPORT_BUFFER_SIZE = 1 << 16;
+    private static final Timestamp EXPORT_END_OF_TIME = Timestamp.valueOf("9999-12-31 23:59:59");
+    private static final long PENDING_TICKET_TIMEOUT_MS = 5_000;
+    private static final int MAX_COUNT_ATTEMPTS = 3;
+
+    private static final ThreadLocal<OpenTicketStore.OpenTicket> openTicketHolder =
+            ThreadLocal.withInitial(OpenTicketStore.OpenTicket::new);
 
+    /**
+     * @return true if the ticket was saved, or queued when write-behind is enabled
+     */
+    public boolean saveTicket(Ticket ticket){
+        long start = SAVE_TICKET_TIMER.start();
+        if (ticketWriteBehind != null) {
+            try {
+                CompletableFuture<Integer> generatedId = ticketWriteBehind.enqueue(ticket);
+                countNewTicket(ticket);
+                storeOpenTicket(ticket);
+                if (openTicketStore != null && ticket.getOutTime() == null) {
+                    OpenTicketStore store = openTicketStore;
+                    generatedId.thenAccept(id -> store.setTicketId(ticket.getVehicleRegNumber(), ticket.getInTime().getTime(), id));
+                }
+                SAVE_TICKET_TIMER.stop(start);
+                return true;
+            } catch (Exception ex) {
+                logger.error("Error journaling ticket, saving it directly", ex);
+            }
+        }
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1,ticket.getParkingSpot().getId());
             ps.setString(2, ticket.getVehicleRegNumber());
             ps.setDouble(3, ticket.getPrice());
             ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
             ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
-            return ps.execute();
+            ps.setInt(6, lotId);
+            if (ps.executeUpdate() != 1) {
+                SAVE_TICKET_TIMER.failed();
+                logger.error("Ticket of " + ticket.getVehicleRegNumber() + " was not saved");
+                return false;
+            }
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    ticket.setId(rs.getInt(1));
+                }
+            }
+            countNewTicket(ticket);
+            storeOpenTicket(ticket);
+            return true;
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            SAVE_TICKET_TIMER.failed();
+            logger.error("Error saving ticket",ex);
+            return false;
         }finally {
-            dataBaseConfig.closeConnection(con);
+            SAVE_TICKET_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Inserts tickets with a single JDBC batch in one transaction.
+     *
+     * @return the generated IDs in ticket order, or null if nothing was saved
+     */
+    public int[] saveTickets(List<Ticket> tickets) {
+        long start = SAVE_TICKETS_TIMER.start();
+        try (Connection con = dataBaseConfig.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)) {
+                for (Ticket ticket : tickets) {
+                    ps.setInt(1, ticket.getParkingSpot().getId());
+                    ps.setString(2, ticket.getVehicleRegNumber());
+                    ps.setDouble(3, ticket.getPrice());
+                    ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                    ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
+                    ps.setInt(6, lotId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                int[] ids = new int[tickets.size()];
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    for (int i = 0; i < ids.length && rs.next(); i++) {
+                        ids[i] = rs.getInt(1);
+                    }
+                }
+                con.commit();
+                return ids;
+            } catch (Exception ex) {
+                rollback(con);
+                throw ex;
+            } finally {
+                restoreAutoCommit(con);
+            }
+        } catch (Exception ex) {
+            SAVE_TICKETS_TIMER.failed();
+            logger.error("Error saving ticket batch", ex);
+            return null;
+        } finally {
+            SAVE_TICKETS_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Loads the ticket counts of the most recently seen vehicles into the visit count cache.
+     *
+     * @return the number of vehicles loaded
+     */
+    public int warmVisitCountCache(int maxVehicles) {
+        if (visitCountCache == null) {
+            return 0;
+        }
+        long flushCount = ticketWriteBehind == null ? 0 : ticketWriteBehind.getFlushCount();
+        int loaded = 0;
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_RECENT_VISIT_COUNTS)) {
+            ps.setInt(1, lotId);
+            ps.setInt(2, maxVehicles);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // vehicles with tickets not in the DB yet are counted on their next lookup
+                    if (getPendingCount(rs.getString(1), flushCount) == 0) {
+                        visitCountCache.put(rs.getString(1), rs.getInt(2));
+                        loaded++;
+                    }
+                }
+            }
+            logger.info("Warmed visit count cache with {} vehicles", loaded);
+        } catch (Exception ex) {
+            logger.error("Error warming visit count cache", ex);
+        }
+        return loaded;
+    }
+
+    /**
+     * Writes the tickets that came in between {@code from}, inclusive, and {@code to}, exclusive,
+     * to the channel as CSV with a header row: the archived tickets first, then the others, each
+     * in in-time order. Each table is read with its own query walking its (LOT_ID, IN_TIME)
+     * index, so rows are streamed one at a time from the server without a sort, and written
+     * through a fixed buffer: memory stays flat whatever the number of tickets. Both queries run
+     * in one read-only repeatable read transaction and see the same snapshot, so a ticket archived
+     * during the export is written exactly once. The connection is busy for the whole export.
+     *
+     * @param from null for no lower bound
+     * @param to null for no upper bound
+     * @param parkingType null for every type
+     * @return the number of tickets written, or -1 if the export failed
+     */
+    public long exportTickets(Date from, Date to, ParkingType parkingType, WritableByteChannel out) {
+        flushPendingTickets();
+        long exported = 0;
+        try (Connection con = dataBaseConfig.getConnection()) {
+            CsvChannelWriter csv = new CsvChannelWriter(out, EXPORT_BUFFER_SIZE);
+            csv.text("ID").text("PARKING_NUMBER").text("TYPE").text("VEHICLE_REG_NUMBER")
+                    .text("PRICE").text("IN_TIME").text("OUT_TIME").endRow();
+            int isolation = con.getTransactionIsolation();
+            con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            con.setReadOnly(true);
+            con.setAutoCommit(false);
+            try {
+                // archived tickets are the older ones
+                for (String query : new String[]{DBConstants.EXPORT_ARCHIVED_TICKETS, DBConstants.EXPORT_TICKETS}) {
+                    try (PreparedStatement ps = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                        // with Connector/J, this fetch size streams rows instead of buffering the whole result
+                        ps.setFetchSize(Integer.MIN_VALUE);
+                        ps.setTimestamp(1, from == null ? new Timestamp(0) : new Timestamp(from.getTime()));
+                        ps.setTimestamp(2, to == null ? EXPORT_END_OF_TIME : new Timestamp(to.getTime()));
+                        ps.setString(3, parkingType == null ? null : parkingType.toString());
+                        ps.setString(4, parkingType == null ? null : parkingType.toString());
+                        ps.setInt(5, lotId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                csv.number(rs.getInt(1)).number(rs.getInt(2)).text(rs.getString(3)).text(rs.getString(4));
+                                double price = rs.getDouble(5);
+                                if (rs.wasNull()) {
+                                    csv.empty();
+                                } else {
+                                    csv.amount(price);
+                                }
+                                csv.text(rs.getString(6)).text(rs.getString(7)).endRow();
+                                exported++;
+                            }
+                        }
+                    }
+                }
+                con.commit();
+            } catch (Exception ex) {
+                rollback(con);
+                throw ex;
+            } finally {
+                restoreAutoCommit(con);
+                restoreReadWrite(con, isolation);
+            }
+            csv.flush();
+            logger.info("Exported {} tickets", exported);
+            return exported;
+        } catch (Exception ex) {
+            logger.error("Error exporting tickets after " + exported + " rows", ex);
+            return -1;
+        }
+    }
+
+    /**
+     * Fills the open ticket store with every ticket that has no out time yet.
+     *
+     * @return false if the store could not be loaded, it is then left unset
+     */
+    public boolean loadOpenTicketStore(int expectedTickets) {
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS)) {
+            ps.setInt(1, lotId);
+            OpenTicketStore store = new OpenTicketStore(expectedTickets);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // ordered by in time, so a vehicle with several open tickets keeps its latest one
+                    store.put(rs.getString(1), rs.getInt(2), rs.getInt(3), ParkingType.valueOf(rs.getString(4)),
+                            rs.getTimestamp(5).getTime(), rs.getInt(6));
+                }
+            }
+            if (ticketWriteBehind != null) {
+                // queued tickets get their ID once inserted
+                for (Ticket ticket : ticketWriteBehind.getPendingTickets()) {
+                    CompletableFuture<Integer> generatedId = ticketWriteBehind.getGeneratedId(ticket);
+                    if (ticket.getOutTime() == null && generatedId != null) {
+                        store.put(ticket.getVehicleRegNumber(), 0, ticket.getParkingSpot().getId(),
+                                ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(), ticket.getVehicleTicketCount());
+                        generatedId.thenAccept(id -> store.setTicketId(ticket.getVehicleRegNumber(), ticket.getInTime().getTime(), id));
+                    }
+                }
+            }
+            openTicketStore = store;
+            logger.info("Loaded {} open tickets in the open ticket store", store.size());
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error loading open ticket store", ex);
             return false;
         }
     }
 
-    public Ticket getTicket(String vehicleRegNumber) {
-        Connection con = null;
-        Ticket ticket = null;
+    /**
+     * Fills the open ticket store with tickets saved earlier, when the ticket table cannot be read.
+     */
+    public void restoreOpenTicketStore(Collection<Ticket> tickets, int expectedTickets) {
+        OpenTicketStore store = new OpenTicketStore(Math.max(expectedTickets, tickets.size()));
+        for (Ticket ticket : tickets) {
+            store.put(ticket.getVehicleRegNumber(), ticket.getId(), ticket.getParkingSpot().getId(),
+                    ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(), ticket.getVehicleTicketCount());
+        }
+        openTicketStore = store;
+        logger.info("Restored {} open tickets in the open ticket store", store.size());
+    }
+
+    /**
+     * @return every ticket in the open ticket store, or null if there is no store
+     */
+    public List<Ticket> getStoredOpenTickets() {
+        if (openTicketStore == null) {
+            return null;
+        }
+        List<Ticket> tickets = new ArrayList<>();
+        for (String vehicleRegNumber : openTicketStore.getVehicleRegNumbers()) {
+            Ticket ticket = getJournaledOpenTicket(vehicleRegNumber);
+            if (ticket != null) {
+                tickets.add(ticket);
+            }
+        }
+        return tickets;
+    }
+
+    /**
+     * @return the vehicle's ticket from the open ticket store, whether it is in the DB yet or
+     * not, or null if the vehicle is not in the store or there is no store
+     */
+    public Ticket getJournaledOpenTicket(String vehicleRegNumber) {
+        if (openTicketStore == null) {
+            return null;
+        }
+        OpenTicketStore.OpenTicket openTicket = openTicketHolder.get();
+        if (!openTicketStore.get(vehicleRegNumber, openTicket)) {
+            return null;
+        }
+        return toTicket(vehicleRegNumber, openTicket);
+    }
+
+    /**
+     * Keeps a ticket recorded in the gate journal in the open ticket store, and counts it in the
+     * visit count cache if it is a new one. Nothing is written to the DB.
+     */
+    public void storeJournaledTicket(Ticket ticket, boolean newTicket) {
+        if (newTicket) {
+            countNewTicket(ticket);
+        }
+        storeOpenTicket(ticket);
+    }
+
+    /**
+     * Removes a ticket closed in the gate journal from the open ticket store. Nothing is written
+     * to the DB.
+     *
+     * @return false if it was not in the store, another gate already let the vehicle out
+     */
+    public boolean removeJournaledTicket(Ticket ticket) {
+        return openTicketStore != null && openTicketStore.remove(ticket.getVehicleRegNumber(), ticket.getId());
+    }
+
+    private void storeOpenTicket(Ticket ticket) {
+        if (openTicketStore != null && ticket.getOutTime() == null) {
+            openTicketStore.put(ticket.getVehicleRegNumber(), ticket.getId(), ticket.getParkingSpot().getId(),
+                    ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(), ticket.getVehicleTicketCount());
+        }
+    }
+
+    /**
+     * @return the ticket from the open ticket store, or null if it has to be read from the DB:
+     * not stored, not inserted yet, or stored without its visit count
+     */
+    private Ticket getStoredOpenTicket(String vehicleRegNumber) {
+        OpenTicketStore.OpenTicket openTicket = openTicketHolder.get();
+        if (!openTicketStore.get(vehicleRegNumber, openTicket)
+                || openTicket.getTicketId() <= 0 || openTicket.getVehicleTicketCount() <= 0) {
+            return null;
+        }
+        return toTicket(vehicleRegNumber, openTicket);
+    }
+
+    private static Ticket toTicket(String vehicleRegNumber, OpenTicketStore.OpenTicket openTicket) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(openTicket.getParkingNumber(), openTicket.getParkingType(), false));
+        ticket.setId(openTicket.getTicketId());
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(new Date(openTicket.getInTimeMillis()));
+        ticket.setVehicleTicketCount(openTicket.getVehicleTicketCount());
+        return ticket;
+    }
+
+    private void countNewTicket(Ticket ticket) {
+        if (visitCountCache != null) {
+            visitCountCache.increment(ticket.getVehicleRegNumber());
+        }
+    }
+
+    private void rollback(Connection con) {
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+            con.rollback();
+        } catch (Exception ex) {
+            logger.error("Error rolling back ticket batch", ex);
+        }
+    }
 
+    private void restoreAutoCommit(Connection con) {
+        try {
+            con.setAutoCommit(true);
+        } catch (Exception ex) {
+            logger.error("Error restoring autocommit", ex);
+        }
+    }
+
+    private void restoreReadWrite(Connection con, int isolation) {
+        try {
+            con.setReadOnly(false);
+            con.setTransactionIsolation(isolation);
+        } catch (Exception ex) {
+            logger.error("Error restoring the connection after a read-only transaction", ex);
+        }
+    }
+
+    private void flushPendingTickets() {
+        if (ticketWriteBehind != null) {
+            ticketWriteBehind.flush();
+        }
+    }
+
+    /**
+     * @return the vehicle's tickets not in the DB yet, or -1 if some were inserted since {@code flushCount}
+     */
+    private int getPendingCount(String vehicleRegNumber, long flushCount) {
+        return ticketWriteBehind == null ? 0 : ticketWriteBehind.getPendingCount(vehicleRegNumber, flushCount);
+    }
+
+    /**
+     * Waits for a queued ticket to be inserted, which its exit needs to close it by ID.
+     *
+     * @return a copy of the inserted ticket, or null if it could not be inserted in time
+     */
+    private Ticket awaitPendingTicket(String vehicleRegNumber, CompletableFuture<Ticket> pendingTicket) {
+        try {
+            Ticket saved = pendingTicket.get(PENDING_TICKET_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            Ticket ticket = new Ticket(saved.getId(), new ParkingSpot(saved.getParkingSpot().getId(),
+                    saved.getParkingSpot().getParkingType(), false), vehicleRegNumber, saved.getPrice(),
+                    saved.getInTime(), saved.getOutTime());
+            ticket.setVehicleTicketCount(saved.getVehicleTicketCount());
+            return ticket;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception ex) {
+            logger.error("Queued ticket of " + vehicleRegNumber + " could not be saved", ex);
+            return null;
+        }
+    }
+
+    public Ticket getTicket(String vehicleRegNumber) {
+        long start = GET_TICKET_TIMER.start();
+        CompletableFuture<Ticket> pendingTicket = ticketWriteBehind == null ? null : ticketWriteBehind.getPendingTicket(vehicleRegNumber);
+        if (pendingTicket != null) {
+            Ticket ticket = awaitPendingTicket(vehicleRegNumber, pendingTicket);
+            if (ticket == null) {
+                GET_TICKET_TIMER.failed();
+            }
+            GET_TICKET_TIMER.stop(start);
+            return ticket;
+        }
+        Ticket ticket = null;
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET)) {
             ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
-            }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
+            ps.setInt(2, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    ticket = new Ticket();
+                    ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
+                    ticket.setParkingSpot(parkingSpot);
+                    ticket.setId(rs.getInt(2));
+                    ticket.setVehicleRegNumber(vehicleRegNumber);
+                    ticket.setPrice(rs.getDouble(3));
+                    ticket.setInTime(rs.getTimestamp(4));
+                    ticket.setOutTime(rs.getTimestamp(5));
+                }
+            }
         }catch (Exception ex){
+            GET_TICKET_TIMER.failed();
             logger.error("Error fetching next available slot",ex);
         }finally {
-            dataBaseConfig.closeConnection(con);
+            GET_TICKET_TIMER.stop(start);
+        }
+        return ticket;
+    }
+
+    /**
+     * Counts the vehicle's tickets without an out time, queued ones included, to tell a vehicle
+     * that is not parked from a lookup or close that failed.
+     *
+     * @return the number of open tickets, or -1 if they could not be counted
+     */
+    public int countOpenTickets(String vehicleRegNumber) {
+        int count = 0;
+        if (ticketWriteBehind != null) {
+            for (Ticket ticket : ticketWriteBehind.getPendingTickets()) {
+                count += ticket.getVehicleRegNumber().equals(vehicleRegNumber) && ticket.getOutTime() == null ? 1 : 0;
+            }
+        }
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_OPEN_TICKETS)) {
+            ps.setString(1, vehicleRegNumber);
+            ps.setInt(2, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? count + rs.getInt(1) : count;
+            }
+        } catch (Exception ex) {
+            logger.error("Error counting open tickets of " + vehicleRegNumber, ex);
+            return -1;
+        }
+    }
+
+    /**
+     * Fetches the vehicle's open ticket together with its total number of tickets, in a single query.
+     *
+     * @return the open ticket, or null if the vehicle is not parked
+     */
+    public Ticket getOpenTicket(String vehicleRegNumber) {
+        long start = GET_OPEN_TICKET_TIMER.start();
+        Ticket ticket = openTicketStore != null ? getStoredOpenTicket(vehicleRegNumber) : null;
+        if (ticket != null) {
+            GET_OPEN_TICKET_TIMER.stop(start);
+            return ticket;
+        }
+        CompletableFuture<Ticket> pendingTicket = ticketWriteBehind == null ? null : ticketWriteBehind.getPendingTicket(vehicleRegNumber);
+        if (pendingTicket != null) {
+            ticket = awaitPendingTicket(vehicleRegNumber, pendingTicket);
+            if (ticket == null) {
+                GET_OPEN_TICKET_TIMER.failed();
+            } else if (ticket.getOutTime() != null) {
+                ticket = null;
+            } else if (ticket.getVehicleTicketCount() <= 0) {
+                // replayed from the journal, which does not keep the count
+                ticket.setVehicleTicketCount(getNbTicket(vehicleRegNumber));
+            }
+            GET_OPEN_TICKET_TIMER.stop(start);
             return ticket;
         }
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_OPEN_TICKET)) {
+            ps.setString(1,vehicleRegNumber);
+            ps.setInt(2, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    ticket = new Ticket();
+                    ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
+                    ticket.setParkingSpot(parkingSpot);
+                    ticket.setId(rs.getInt(2));
+                    ticket.setVehicleRegNumber(vehicleRegNumber);
+                    ticket.setPrice(rs.getDouble(3));
+                    ticket.setInTime(rs.getTimestamp(4));
+                    ticket.setOutTime(rs.getTimestamp(5));
+                    ticket.setVehicleTicketCount(rs.getInt(7));
+                    if (visitCountCache != null) {
+                        visitCountCache.put(vehicleRegNumber, ticket.getVehicleTicketCount());
+                    }
+                }
+            }
+        }catch (Exception ex){
+            GET_OPEN_TICKET_TIMER.failed();
+            logger.error("Error fetching open ticket",ex);
+        }finally {
+            GET_OPEN_TICKET_TIMER.stop(start);
+        }
+        return ticket;
+    }
+
+    /**
+     * Stores the price and out time of an open ticket and frees its parking spot in one
+     * statement, so both are committed together or not at all.
+     *
+     * @return false if the ticket was already closed or the DB update failed
+     */
+    public boolean closeTicket(Ticket ticket) {
+        long start = CLOSE_TICKET_TIMER.start();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.CLOSE_TICKET)) {
+            ps.setDouble(1, ticket.getPrice());
+            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+            ps.setInt(3, ticket.getId());
+            int updateRowCount = ps.executeUpdate();
+            if (updateRowCount > 0 && occupancyCounters != null) {
+                occupancyCounters.spotFreed(ticket.getParkingSpot().getParkingType());
+            }
+            if (updateRowCount > 0 && openTicketStore != null) {
+                openTicketStore.remove(ticket.getVehicleRegNumber(), ticket.getId());
+            }
+            if (updateRowCount > 0 && revenueAggregator != null) {
+                revenueAggregator.record(ticket);
+            }
+            return (updateRowCount > 0);
+        }catch (Exception ex){
+            CLOSE_TICKET_TIMER.failed();
+            logger.error("Error closing ticket",ex);
+            return false;
+        }finally {
+            CLOSE_TICKET_TIMER.stop(start);
+        }
     }
 
     public boolean updateTicket(Ticket ticket) {
-        Connection con = null;
-        try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+        long start = UPDATE_TICKET_TIMER.start();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET)) {
             ps.setDouble(1, ticket.getPrice());
             ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
             ps.setInt(3,ticket.getId());
             ps.execute();
             return true;
         }catch (Exception ex){
+            UPDATE_TICKET_TIMER.failed();
             logger.error("Error saving ticket info",ex);
+            return false;
         }finally {
-            dataBaseConfig.closeConnection(con);
+            UPDATE_TICKET_TIMER.stop(start);
         }
-        return false;
     }
 
+    /**
+     * @return the vehicle's number of tickets, archived and queued ones included, or -1 if they
+     * could not be counted
+     */
     public int getNbTicket(String vehicleRegNumber) {
-        Connection con = null;
+        long start = GET_NB_TICKET_TIMER.start();
+        if (visitCountCache != null) {
+            int cached = visitCountCache.get(vehicleRegNumber);
+            if (cached >= 0) {
+                GET_NB_TICKET_TIMER.stop(start);
+                return cached;
+            }
+        }
         int records = 0;
-
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NB_TICKET);
-            ps.setString(1, vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            for (int attempt = 1; ; attempt++) {
+                long flushCount = ticketWriteBehind == null ? 0 : ticketWriteBehind.getFlushCount();
+                records = queryNbTicket(vehicleRegNumber);
+                int pending = getPendingCount(vehicleRegNumber, flushCount);
+                if (pending >= 0) {
+                    records += pending;
+                    break;
+                }
+                if (attempt == MAX_COUNT_ATTEMPTS) {
+                    // batches keep going in, the count read last includes them
+                    records = queryNbTicket(vehicleRegNumber);
+                    break;
+                }
+            }
+            logger.trace("Number of tickets for a given vehicle {} : {}", vehicleRegNumber, records);
+            if (visitCountCache != null) {
+                visitCountCache.put(vehicleRegNumber, records);
+            }
+        } catch (Exception ex) {
+            GET_NB_TICKET_TIMER.failed();
+            logger.error("Error counting tickets", ex);
+            records = -1;
+        } finally {
+            GET_NB_TICKET_TIMER.stop(start);
+        }
+        return records;
+    }
 
-            while (rs.next()) {
-                records = rs.getInt("COUNT");
-                logger.debug("Number of tickets for a given vehicle " + vehicleRegNumber + " : " + records);
+    private int queryNbTicket(String vehicleRegNumber) throws Exception {
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_NB_TICKET)) {
+            ps.setString(1, vehicleRegNumber);
+            ps.setInt(2, lotId);
+            ps.setString(3, vehicleRegNumber);
+            ps.setInt(4, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("COUNT") : 0;
             }
+        }
+    }
 
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
+    /**
+     * Counts the visits of a vehicle up to the ticket's, for a ticket that came in while the count
+     * could not be read: the vehicle's tickets that came in before it, archived ones included,
+     * plus the ticket itself whether it is in the DB yet or not.
+     *
+     * @return the number of visits, or -1 if they could not be counted
+     */
+    public int getNbTicketUpTo(Ticket ticket) {
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_NB_TICKET_BEFORE)) {
+            ps.setString(1, ticket.getVehicleRegNumber());
+            ps.setInt(2, lotId);
+            // the DB rounds the ticket's own in time to the second
+            ps.setTimestamp(3, new Timestamp(ticket.getInTime().getTime() - 1000));
+            ps.setString(4, ticket.getVehicleRegNumber());
+            ps.setInt(5, lotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("COUNT") + 1 : 1;
+            }
+        } catch (Exception ex) {
+            logger.error("Error counting the visits of " + ticket.getVehicleRegNumber(), ex);
+            return -1;
+        }
+    }
 
+    /**
+     * Looks for a ticket that may have been inserted before, by its vehicle, spot and in time,
+     * the in time within a second as the DB rounds it to seconds.
+     *
+     * @return the ID of the saved ticket, 0 if it is not in the DB, or -1 if the DB failed
+     */
+    public int getSavedTicketId(Ticket ticket) {
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_SAVED_TICKET_ID)) {
+            ps.setString(1, ticket.getVehicleRegNumber());
+            ps.setInt(2, lotId);
+            ps.setTimestamp(3, new Timestamp(ticket.getInTime().getTime() - 1000));
+            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime() + 1000));
+            ps.setInt(5, ticket.getParkingSpot().getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
         } catch (Exception ex) {
-            logger.error("Error fetching next available slot", ex);
-        } finally {
-            dataBaseConfig.closeConnection(con);
-            return records;
+            logger.error("Error looking up the saved ticket of " + ticket.getVehicleRegNumber(), ex);
+            return -1;
         }
     }
 
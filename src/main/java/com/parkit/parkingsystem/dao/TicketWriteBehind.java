@@ -0,0 +1,350 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for new tickets. Tickets are appended to a local journal file, kept in
+ * memory and inserted with one JDBC batch when {@code batchSize} tickets are waiting or every
+ * {@code flushIntervalMs}. The journal is replaced atomically after each successful flush, and
+ * tickets still in it are queued again on startup, so a crash loses nothing. Tickets that may
+ * already be in the DB, replayed from the journal after a crash between the DB commit and the
+ * journal rewrite, or left over from a batch whose commit failed, are looked up before being
+ * inserted again, so replaying never duplicates a ticket.
+ *
+ * Reads do not flush the queue: they add the tickets still queued for the vehicle to what the DB
+ * returns, see {@link #getPendingCount(String, long)} and {@link #getPendingTicket(String)}.
+ */
+public class TicketWriteBehind implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("TicketWriteBehind");
+
+    private static final String SEPARATOR = "\t";
+
+    private final TicketDAO ticketDAO;
+    private final int batchSize;
+    private final Path journalFile;
+    // guarded by this
+    private FileChannel journal;
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+    // guarded by this
+    private List<PendingTicket> pendingTickets = new ArrayList<>();
+    // the batch being inserted, guarded by this
+    private List<PendingTicket> insertingTickets = Collections.emptyList();
+    // number of batches inserted, guarded by this
+    private long flushCount;
+
+    public TicketWriteBehind(TicketDAO ticketDAO, Path journalFile, int batchSize, long flushIntervalMs) throws IOException {
+        this.ticketDAO = ticketDAO;
+        this.batchSize = batchSize;
+        this.journalFile = journalFile;
+        if (Files.exists(journalFile)) {
+            for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    PendingTicket pendingTicket = new PendingTicket(fromJournalLine(line), line);
+                    pendingTicket.maybeSaved = true;
+                    pendingTickets.add(pendingTicket);
+                }
+            }
+            if (!pendingTickets.isEmpty()) {
+                logger.warn("Replaying {} tickets from journal {}", pendingTickets.size(), journalFile);
+            }
+        }
+        this.journal = openJournal(journalFile);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ticket-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Journals the ticket and queues it for the next batch insert.
+     *
+     * @return completes with the generated ticket ID once the ticket is in the DB
+     */
+    public CompletableFuture<Integer> enqueue(Ticket ticket) throws IOException {
+        PendingTicket pendingTicket = new PendingTicket(ticket, toJournalLine(ticket));
+        boolean batchFull;
+        synchronized (this) {
+            write(journal, pendingTicket.journalLine);
+            journal.force(false);
+            pendingTickets.add(pendingTicket);
+            batchFull = pendingTickets.size() >= batchSize;
+        }
+        if (batchFull) {
+            flusher.execute(this::flush);
+        }
+        return pendingTicket.generatedId;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingTickets.size();
+    }
+
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Counts the vehicle's tickets that are not in the DB yet, queued or being inserted, to be
+     * added to its count in the DB.
+     *
+     * @param flushCount {@link #getFlushCount()} read before the DB count
+     * @return the number of tickets, or -1 if a batch was inserted since, the DB count may then
+     * already include some of them and has to be read again
+     */
+    public synchronized int getPendingCount(String vehicleRegNumber, long flushCount) {
+        if (this.flushCount != flushCount) {
+            return -1;
+        }
+        int count = 0;
+        for (PendingTicket pendingTicket : insertingTickets) {
+            count += pendingTicket.ticket.getVehicleRegNumber().equals(vehicleRegNumber) ? 1 : 0;
+        }
+        for (PendingTicket pendingTicket : pendingTickets) {
+            count += pendingTicket.ticket.getVehicleRegNumber().equals(vehicleRegNumber) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the vehicle's latest ticket that is not in the DB yet and has it inserted without
+     * waiting for the next flush interval.
+     *
+     * @return completes with the ticket once it is in the DB with its ID, or null if none of the
+     * vehicle's tickets is waiting, the DB then has them all
+     */
+    public CompletableFuture<Ticket> getPendingTicket(String vehicleRegNumber) {
+        PendingTicket latest = null;
+        synchronized (this) {
+            for (PendingTicket pendingTicket : insertingTickets) {
+                latest = pendingTicket.ticket.getVehicleRegNumber().equals(vehicleRegNumber) ? pendingTicket : latest;
+            }
+            for (PendingTicket pendingTicket : pendingTickets) {
+                latest = pendingTicket.ticket.getVehicleRegNumber().equals(vehicleRegNumber) ? pendingTicket : latest;
+            }
+        }
+        if (latest == null) {
+            return null;
+        }
+        flusher.execute(this::flush);
+        Ticket ticket = latest.ticket;
+        return latest.generatedId.thenApply(id -> ticket);
+    }
+
+    /**
+     * @return the tickets that are not in the DB yet, queued or being inserted, in queue order
+     */
+    public synchronized List<Ticket> getPendingTickets() {
+        List<Ticket> tickets = new ArrayList<>(insertingTickets.size() + pendingTickets.size());
+        for (PendingTicket pendingTicket : insertingTickets) {
+            tickets.add(pendingTicket.ticket);
+        }
+        for (PendingTicket pendingTicket : pendingTickets) {
+            tickets.add(pendingTicket.ticket);
+        }
+        return tickets;
+    }
+
+    /**
+     * @return completes with the generated ID of the ticket once it is in the DB, or null if the
+     * ticket is not waiting
+     */
+    public synchronized CompletableFuture<Integer> getGeneratedId(Ticket ticket) {
+        for (PendingTicket pendingTicket : insertingTickets) {
+            if (pendingTicket.ticket == ticket) {
+                return pendingTicket.generatedId;
+            }
+        }
+        for (PendingTicket pendingTicket : pendingTickets) {
+            if (pendingTicket.ticket == ticket) {
+                return pendingTicket.generatedId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inserts every queued ticket in one batch. On failure the tickets stay queued and journaled
+     * and the next flush retries them.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingTicket> batch;
+            synchronized (this) {
+                if (pendingTickets.isEmpty()) {
+                    return;
+                }
+                batch = pendingTickets;
+                pendingTickets = new ArrayList<>();
+                insertingTickets = batch;
+            }
+
+            int[] ids = save(batch);
+
+            synchronized (this) {
+                insertingTickets = Collections.emptyList();
+                if (ids == null) {
+                    // the commit may have gone through before the failure
+                    for (PendingTicket pendingTicket : batch) {
+                        pendingTicket.maybeSaved = true;
+                    }
+                    batch.addAll(pendingTickets);
+                    pendingTickets = batch;
+                    return;
+                }
+                flushCount++;
+                try {
+                    rewriteJournal();
+                } catch (IOException e) {
+                    logger.error("Error rewriting ticket journal, flushed tickets may be replayed", e);
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).ticket.setId(ids[i]);
+                batch.get(i).generatedId.complete(ids[i]);
+            }
+            logger.debug("Flushed {} tickets", batch.size());
+        }
+    }
+
+    /**
+     * Inserts the batch, skipping the tickets that may be saved already and are found in the DB.
+     *
+     * @return the IDs of the tickets in batch order, or null if the batch could not be saved
+     */
+    private int[] save(List<PendingTicket> batch) {
+        int[] ids = new int[batch.size()];
+        List<Ticket> tickets = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PendingTicket pendingTicket = batch.get(i);
+            if (pendingTicket.maybeSaved) {
+                int savedId = ticketDAO.getSavedTicketId(pendingTicket.ticket);
+                if (savedId < 0) {
+                    return null;
+                }
+                if (savedId > 0) {
+                    logger.warn("Ticket of {} is already saved with ID {}, not inserting it again",
+                            pendingTicket.ticket.getVehicleRegNumber(), savedId);
+                    ids[i] = savedId;
+                    continue;
+                }
+            }
+            tickets.add(pendingTicket.ticket);
+        }
+        if (tickets.isEmpty()) {
+            return ids;
+        }
+        int[] insertedIds = ticketDAO.saveTickets(tickets);
+        if (insertedIds == null) {
+            return null;
+        }
+        for (int i = 0, inserted = 0; i < ids.length; i++) {
+            if (ids[i] == 0) {
+                ids[i] = insertedIds[inserted++];
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (this) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Writes the tickets still queued to a temporary file and moves it over the journal, so a
+     * crash leaves either the old or the new journal and never a partial one.
+     */
+    private void rewriteJournal() throws IOException {
+        Path temporaryFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileChannel rewritten = FileChannel.open(temporaryFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (PendingTicket pendingTicket : pendingTickets) {
+                write(rewritten, pendingTicket.journalLine);
+            }
+            rewritten.force(false);
+        }
+        Files.move(temporaryFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // the old channel still points to the replaced file
+        journal.close();
+        journal = openJournal(journalFile);
+    }
+
+    private static FileChannel openJournal(Path journalFile) throws IOException {
+        return FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void write(FileChannel journal, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+    }
+
+    static String toJournalLine(Ticket ticket) {
+        return ticket.getParkingSpot().getId() + SEPARATOR
+                + ticket.getParkingSpot().getParkingType() + SEPARATOR
+                + ticket.getVehicleRegNumber() + SEPARATOR
+                + ticket.getPrice() + SEPARATOR
+                + ticket.getInTime().getTime() + SEPARATOR
+                + (ticket.getOutTime() == null ? "" : ticket.getOutTime().getTime());
+    }
+
+    static Ticket fromJournalLine(String line) {
+        String[] fields = line.split(SEPARATOR, -1);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(Integer.parseInt(fields[0]), ParkingType.valueOf(fields[1]), false));
+        ticket.setVehicleRegNumber(fields[2]);
+        ticket.setPrice(Double.parseDouble(fields[3]));
+        ticket.setInTime(new Date(Long.parseLong(fields[4])));
+        ticket.setOutTime(fields[5].isEmpty() ? null : new Date(Long.parseLong(fields[5])));
+        return ticket;
+    }
+
+    private static final class PendingTicket {
+        private final Ticket ticket;
+        private final String journalLine;
+        private final CompletableFuture<Integer> generatedId = new CompletableFuture<>();
+        // guarded by the write-behind's flush lock once queued
+        private boolean maybeSaved;
+
+        private PendingTicket(Ticket ticket, String journalLine) {
+            this.ticket = ticket;
+            this.journalLine = journalLine;
+        }
+    }
+}
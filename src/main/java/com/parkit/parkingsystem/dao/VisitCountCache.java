@@ -0,0 +1,122 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded LRU cache of ticket counts per vehicle registration number, so the entry welcome
+ * message and the exit discount don't each run a COUNT(*) over the vehicle's history.
+ * Entries expire after {@code ttlMillis} to pick up tickets written by other processes.
+ * Hits, misses and evictions are counted per cache and, summed over every lot, in the
+ * {@link Metrics} registry.
+ */
+public class VisitCountCache {
+
+    private static final Counter HIT_COUNTER = Metrics.counter("VisitCountCache.hits");
+    private static final Counter MISS_COUNTER = Metrics.counter("VisitCountCache.misses");
+    private static final Counter EVICTION_COUNTER = Metrics.counter("VisitCountCache.evictions");
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public VisitCountCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    public VisitCountCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > VisitCountCache.this.maxSize) {
+                    evictionCount++;
+                    EVICTION_COUNTER.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached count, or -1 if the vehicle is not cached or its entry expired
+     */
+    public synchronized int get(String vehicleRegNumber) {
+        Entry entry = entries.get(vehicleRegNumber);
+        if (entry == null) {
+            missCount++;
+            MISS_COUNTER.increment();
+            return -1;
+        }
+        if (clock.getAsLong() - entry.loadedAt > ttlMillis) {
+            entries.remove(vehicleRegNumber);
+            evictionCount++;
+            EVICTION_COUNTER.increment();
+            missCount++;
+            MISS_COUNTER.increment();
+            return -1;
+        }
+        hitCount++;
+        HIT_COUNTER.increment();
+        return entry.count;
+    }
+
+    public synchronized void put(String vehicleRegNumber, int count) {
+        entries.put(vehicleRegNumber, new Entry(count, clock.getAsLong()));
+    }
+
+    /**
+     * Records a new ticket for a cached vehicle. Uncached vehicles are left alone, their
+     * next lookup reads the up to date count from the DB.
+     */
+    public synchronized void increment(String vehicleRegNumber) {
+        Entry entry = entries.get(vehicleRegNumber);
+        if (entry != null) {
+            entry.count++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "VisitCountCache{size=" + entries.size() + "/" + maxSize + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+    }
+
+    private static final class Entry {
+        private int count;
+        private final long loadedAt;
+
+        private Entry(int count, long loadedAt) {
+            this.count = count;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
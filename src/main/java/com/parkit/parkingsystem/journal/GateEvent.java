@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * One record of the {@link GateJournal}. A vehicle parking is an ENTER; a vehicle leaving is an
+ * EXIT, which frees the spot, immediately followed by the PRICE charged for the stay, which
+ * carries everything needed to close the ticket.
+ */
+public final class GateEvent {
+
+    public enum Type {
+        ENTER, EXIT, PRICE
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String vehicleRegNumber;
+    private final int parkingNumber;
+    private final ParkingType parkingType;
+    private final long timeMillis;
+    private final long inTimeMillis;
+    private final int vehicleTicketCount;
+    private final double price;
+
+    GateEvent(long sequence, Type type, String vehicleRegNumber, int parkingNumber, ParkingType parkingType,
+              long timeMillis, long inTimeMillis, int vehicleTicketCount, double price) {
+        this.sequence = sequence;
+        this.type = type;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingNumber = parkingNumber;
+        this.parkingType = parkingType;
+        this.timeMillis = timeMillis;
+        this.inTimeMillis = inTimeMillis;
+        this.vehicleTicketCount = vehicleTicketCount;
+        this.price = price;
+    }
+
+    /**
+     * @param vehicleTicketCount the vehicle's number of tickets, this one included
+     */
+    public static GateEvent enter(String vehicleRegNumber, int parkingNumber, ParkingType parkingType,
+                                  long inTimeMillis, int vehicleTicketCount) {
+        return new GateEvent(0, Type.ENTER, vehicleRegNumber, parkingNumber, parkingType,
+                inTimeMillis, inTimeMillis, vehicleTicketCount, 0);
+    }
+
+    public static GateEvent exit(String vehicleRegNumber, int parkingNumber, ParkingType parkingType,
+                                 long inTimeMillis, long outTimeMillis) {
+        return new GateEvent(0, Type.EXIT, vehicleRegNumber, parkingNumber, parkingType,
+                outTimeMillis, inTimeMillis, 0, 0);
+    }
+
+    public static GateEvent price(String vehicleRegNumber, int parkingNumber, ParkingType parkingType,
+                                  long inTimeMillis, long outTimeMillis, double price) {
+        return new GateEvent(0, Type.PRICE, vehicleRegNumber, parkingNumber, parkingType,
+                outTimeMillis, inTimeMillis, 0, price);
+    }
+
+    /**
+     * @return the position of the event in the journal, starting at 1, or 0 before it is appended
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    /**
+     * @return the in time of an ENTER, the out time of an EXIT or PRICE
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return the in time of the stay the event belongs to
+     */
+    public long getInTimeMillis() {
+        return inTimeMillis;
+    }
+
+    /**
+     * @return the vehicle's number of tickets including this one, for an ENTER
+     */
+    public int getVehicleTicketCount() {
+        return vehicleTicketCount;
+    }
+
+    /**
+     * @return the fare, for a PRICE
+     */
+    public double getPrice() {
+        return price;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + vehicleRegNumber + " " + parkingType + " spot " + parkingNumber
+                + " at " + timeMillis + (type == Type.PRICE ? " price " + price : "");
+    }
+}
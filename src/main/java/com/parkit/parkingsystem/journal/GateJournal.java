@@ -0,0 +1,361 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of {@link GateEvent}s in memory-mapped segment files of fixed-size
+ * records, so recording a gate event is a copy into the page cache instead of a DB round trip.
+ * Segments are named after the sequence of their first record and are deleted once every
+ * record in them has been projected to the DB.
+ * <p>
+ * Records are {@value #RECORD_SIZE} bytes, a divisor of the page size so that none straddles two
+ * pages, and end with a CRC32 of their content. The events of one {@link #append} call form a
+ * batch, always written to a single segment: after a crash, a batch that was only partly
+ * written is dropped when the journal is reopened. Appended records survive a crash of the
+ * process as soon as they are written; they survive a crash of the machine only if
+ * {@code forceOnAppend} is set, at the cost of an msync per append.
+ * <pre>
+ *  0 sequence         long
+ *  8 type             byte, 1-based
+ *  9 parking type     byte
+ * 10 plate length     byte
+ * 11 flags            byte, END_OF_BATCH
+ * 12 parking number   int
+ * 16 time             long, epoch millis
+ * 24 in time          long, epoch millis
+ * 32 payload          long, ticket count of an ENTER or price bits of a PRICE
+ * 40 plate            16 ASCII bytes
+ * 56 reserved         int
+ * 60 checksum         int, CRC32 of bytes 0 to 59
+ * </pre>
+ */
+public class GateJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("GateJournal");
+
+    private static final Timer APPEND_TIMER = Metrics.timer("GateJournal.append");
+
+    public static final int RECORD_SIZE = 64;
+    public static final int MAX_PLATE_LENGTH = 16;
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+    private static final int READ_AFTER_CHUNK = 1024;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final GateEvent.Type[] TYPES = GateEvent.Type.values();
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    private static final int SEQUENCE = 0;
+    private static final int TYPE = 8;
+    private static final int PARKING_TYPE = 9;
+    private static final int PLATE_LENGTH = 10;
+    private static final int FLAGS = 11;
+    private static final int PARKING_NUMBER = 12;
+    private static final int TIME = 16;
+    private static final int IN_TIME = 24;
+    private static final int PAYLOAD = 32;
+    private static final int PLATE = 40;
+    private static final int RESERVED = 56;
+    private static final int CHECKSUM = 60;
+    private static final byte END_OF_BATCH = 1;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final boolean forceOnAppend;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    // by first sequence, guarded by this
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment activeSegment;
+    private long nextSequence;
+
+    public GateJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS, false);
+    }
+
+    /**
+     * Opens the journal in the directory, creating it if needed, and finds its end.
+     *
+     * @param segmentRecords number of records of the segments created from now on
+     */
+    public GateJournal(Path directory, int segmentRecords, boolean forceOnAppend) throws IOException {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.forceOnAppend = forceOnAppend;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long firstSequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(firstSequence, map(file, firstSequence, (int) (Files.size(file) / RECORD_SIZE)));
+            }
+        }
+        if (segments.isEmpty()) {
+            activeSegment = createSegment(1);
+            nextSequence = 1;
+        } else {
+            activeSegment = segments.lastEntry().getValue();
+            nextSequence = recoverEnd(activeSegment);
+        }
+        logger.info("Opened gate journal {} at sequence {} with {} segments", directory, nextSequence, segments.size());
+    }
+
+    /**
+     * Appends the events as one batch.
+     *
+     * @return the sequence of the last event
+     * @throws IllegalArgumentException if a plate is longer than {@value #MAX_PLATE_LENGTH} or not ASCII
+     */
+    public synchronized long append(GateEvent... events) throws IOException {
+        long start = APPEND_TIMER.start();
+        try {
+            for (GateEvent event : events) {
+                checkPlate(event.getVehicleRegNumber());
+            }
+            if (nextSequence - activeSegment.firstSequence + events.length > activeSegment.capacity) {
+                force(activeSegment);
+                activeSegment = createSegment(nextSequence);
+            }
+            for (int i = 0; i < events.length; i++) {
+                encode(events[i], nextSequence, i == events.length - 1);
+                int offset = (int) (nextSequence - activeSegment.firstSequence) * RECORD_SIZE;
+                ByteBuffer target = activeSegment.buffer.duplicate();
+                target.position(offset);
+                target.put(record);
+                // readers stop at nextSequence, so they only ever see whole batches
+                nextSequence++;
+            }
+            if (forceOnAppend) {
+                force(activeSegment);
+            }
+            return nextSequence - 1;
+        } catch (IOException | RuntimeException e) {
+            APPEND_TIMER.failed();
+            throw e;
+        } finally {
+            APPEND_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Reads appended events in order.
+     *
+     * @return up to {@code maxEvents} events from {@code fromSequence} on, empty when there is none yet
+     * @throws IOException if that part of the journal was deleted or a record is corrupt
+     */
+    public List<GateEvent> read(long fromSequence, int maxEvents) throws IOException {
+        List<GateEvent> events = new ArrayList<>();
+        long sequence = fromSequence;
+        while (events.size() < maxEvents) {
+            Segment segment;
+            long segmentEnd;
+            synchronized (this) {
+                if (sequence >= nextSequence) {
+                    break;
+                }
+                Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+                if (entry == null) {
+                    throw new IOException("Gate journal " + directory + " no longer holds sequence " + sequence);
+                }
+                segment = entry.getValue();
+                segmentEnd = segment == activeSegment ? nextSequence : segments.higherKey(segment.firstSequence);
+            }
+            ByteBuffer source = segment.buffer.duplicate();
+            CRC32 readCrc = new CRC32();
+            for (; sequence < segmentEnd && events.size() < maxEvents; sequence++) {
+                int offset = (int) (sequence - segment.firstSequence) * RECORD_SIZE;
+                if (!isValid(source, offset, sequence, readCrc)) {
+                    throw new IOException("Corrupt gate journal record " + sequence + " in " + directory);
+                }
+                events.add(decode(source, offset));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return every event appended after {@code sequence}, in order
+     * @throws IOException if that part of the journal was deleted or a record is corrupt
+     */
+    public List<GateEvent> readAfter(long sequence) throws IOException {
+        List<GateEvent> events = new ArrayList<>();
+        List<GateEvent> read;
+        do {
+            read = read(sequence + 1 + events.size(), READ_AFTER_CHUNK);
+            events.addAll(read);
+        } while (!read.isEmpty());
+        return events;
+    }
+
+    /**
+     * @return the sequence the next event will get
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Deletes the segments whose events all come before {@code sequence}.
+     *
+     * @return the number of segments deleted
+     */
+    public synchronized int deleteBefore(long sequence) throws IOException {
+        int deleted = 0;
+        while (segments.firstEntry().getValue() != activeSegment
+                && segments.higherKey(segments.firstKey()) <= sequence) {
+            Segment segment = segments.pollFirstEntry().getValue();
+            // the mapping itself goes away with the buffer
+            Files.deleteIfExists(segmentFile(segment.firstSequence));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            force(segment);
+        }
+        logger.info("Closed gate journal {} at sequence {}", directory, nextSequence);
+    }
+
+    private long recoverEnd(Segment segment) {
+        ByteBuffer source = segment.buffer.duplicate();
+        CRC32 readCrc = new CRC32();
+        long end = segment.firstSequence;
+        long sequence = segment.firstSequence;
+        for (; sequence < segment.firstSequence + segment.capacity; sequence++) {
+            int offset = (int) (sequence - segment.firstSequence) * RECORD_SIZE;
+            if (!isValid(source, offset, sequence, readCrc)) {
+                break;
+            }
+            if ((source.get(offset + FLAGS) & END_OF_BATCH) != 0) {
+                end = sequence + 1;
+            }
+        }
+        if (sequence > end) {
+            logger.warn("Dropping the partly written batch at the end of gate journal {}, sequences {} to {}",
+                    directory, end, sequence - 1);
+        }
+        // wipe the dropped and torn records, nothing was ever written after them
+        long wipeEnd = Math.min(sequence + 1, segment.firstSequence + segment.capacity);
+        for (int offset = (int) (end - segment.firstSequence) * RECORD_SIZE;
+             offset < (int) (wipeEnd - segment.firstSequence) * RECORD_SIZE; offset += Long.BYTES) {
+            source.putLong(offset, 0);
+        }
+        return end;
+    }
+
+    private void encode(GateEvent event, long sequence, boolean endOfBatch) {
+        String vehicleRegNumber = event.getVehicleRegNumber();
+        record.clear();
+        record.putLong(SEQUENCE, sequence);
+        record.put(TYPE, (byte) (event.getType().ordinal() + 1));
+        record.put(PARKING_TYPE, (byte) event.getParkingType().ordinal());
+        record.put(PLATE_LENGTH, (byte) vehicleRegNumber.length());
+        record.put(FLAGS, endOfBatch ? END_OF_BATCH : 0);
+        record.putInt(PARKING_NUMBER, event.getParkingNumber());
+        record.putLong(TIME, event.getTimeMillis());
+        record.putLong(IN_TIME, event.getInTimeMillis());
+        record.putLong(PAYLOAD, event.getType() == GateEvent.Type.PRICE
+                ? Double.doubleToRawLongBits(event.getPrice()) : event.getVehicleTicketCount());
+        for (int i = 0; i < MAX_PLATE_LENGTH; i++) {
+            record.put(PLATE + i, (byte) (i < vehicleRegNumber.length() ? vehicleRegNumber.charAt(i) : 0));
+        }
+        record.putInt(RESERVED, 0);
+        crc.reset();
+        crc.update(record.array(), 0, CHECKSUM);
+        record.putInt(CHECKSUM, (int) crc.getValue());
+    }
+
+    private static void checkPlate(String vehicleRegNumber) {
+        if (vehicleRegNumber.length() > MAX_PLATE_LENGTH) {
+            throw new IllegalArgumentException("Plate too long for the gate journal: " + vehicleRegNumber);
+        }
+        for (int i = 0; i < vehicleRegNumber.length(); i++) {
+            if (vehicleRegNumber.charAt(i) > 0x7f) {
+                throw new IllegalArgumentException("Plate not ASCII: " + vehicleRegNumber);
+            }
+        }
+    }
+
+    private static GateEvent decode(ByteBuffer source, int offset) {
+        GateEvent.Type type = TYPES[source.get(offset + TYPE) - 1];
+        byte[] plate = new byte[source.get(offset + PLATE_LENGTH)];
+        for (int i = 0; i < plate.length; i++) {
+            plate[i] = source.get(offset + PLATE + i);
+        }
+        long payload = source.getLong(offset + PAYLOAD);
+        return new GateEvent(source.getLong(offset + SEQUENCE), type, new String(plate, StandardCharsets.US_ASCII),
+                source.getInt(offset + PARKING_NUMBER), PARKING_TYPES[source.get(offset + PARKING_TYPE)],
+                source.getLong(offset + TIME), source.getLong(offset + IN_TIME),
+                type == GateEvent.Type.ENTER ? (int) payload : 0,
+                type == GateEvent.Type.PRICE ? Double.longBitsToDouble(payload) : 0);
+    }
+
+    private static boolean isValid(ByteBuffer source, int offset, long sequence, CRC32 readCrc) {
+        if (source.getLong(offset + SEQUENCE) != sequence) {
+            return false;
+        }
+        ByteBuffer content = source.duplicate();
+        content.limit(offset + CHECKSUM).position(offset);
+        readCrc.reset();
+        readCrc.update(content);
+        return source.getInt(offset + CHECKSUM) == (int) readCrc.getValue();
+    }
+
+    private Segment createSegment(long firstSequence) throws IOException {
+        Segment segment = map(segmentFile(firstSequence), firstSequence, segmentRecords);
+        segments.put(firstSequence, segment);
+        return segment;
+    }
+
+    private Path segmentFile(long firstSequence) {
+        return directory.resolve(String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+    }
+
+    private static Segment map(Path file, long firstSequence, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid once the channel is closed
+            return new Segment(firstSequence, capacity, channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) capacity * RECORD_SIZE));
+        }
+    }
+
+    private static void force(Segment segment) {
+        segment.buffer.force();
+    }
+
+    private static final class Segment {
+        private final long firstSequence;
+        private final int capacity;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long firstSequence, int capacity, MappedByteBuffer buffer) {
+            this.firstSequence = firstSequence;
+            this.capacity = capacity;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The parking spots and open tickets the gates hold in memory, as of a gate journal sequence,
+ * saved to a file so that the gates can start while the DB is unreachable. The snapshot then
+ * stands in for the DB: the journal events after its sequence are restored on top of it, the
+ * same way as those the DB has not seen yet.
+ * <p>
+ * The file is replaced atomically and ends with a CRC32 of its content, so a snapshot is read
+ * whole or not at all.
+ */
+public final class GateSnapshot {
+
+    private static final int MAGIC = 0x47534e31;
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    private final long sequence;
+    private final List<ParkingSpot> parkingSpots;
+    private final List<Ticket> openTickets;
+
+    public GateSnapshot(long sequence, List<ParkingSpot> parkingSpots, List<Ticket> openTickets) {
+        this.sequence = sequence;
+        this.parkingSpots = Collections.unmodifiableList(parkingSpots);
+        this.openTickets = Collections.unmodifiableList(openTickets);
+    }
+
+    /**
+     * @return the sequence of the last gate event included
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public List<ParkingSpot> getParkingSpots() {
+        return parkingSpots;
+    }
+
+    public List<Ticket> getOpenTickets() {
+        return openTickets;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file synced to disk, then moves it over {@code file}.
+     */
+    public void write(Path file) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(content);
+        out.writeInt(MAGIC);
+        out.writeLong(sequence);
+        out.writeInt(parkingSpots.size());
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            out.writeInt(parkingSpot.getId());
+            out.writeByte(parkingSpot.getParkingType().ordinal());
+            out.writeBoolean(parkingSpot.isAvailable());
+        }
+        out.writeInt(openTickets.size());
+        for (Ticket ticket : openTickets) {
+            out.writeUTF(ticket.getVehicleRegNumber());
+            out.writeInt(ticket.getId());
+            out.writeInt(ticket.getParkingSpot().getId());
+            out.writeByte(ticket.getParkingSpot().getParkingType().ordinal());
+            out.writeLong(ticket.getInTime().getTime());
+            out.writeInt(ticket.getVehicleTicketCount());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temporaryFile.toFile())) {
+            content.writeTo(fileOut);
+            fileOut.getFD().sync();
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @throws IOException if the file is missing, truncated or corrupt
+     */
+    public static GateSnapshot read(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        if (content.length < Integer.BYTES) {
+            throw new IOException("Corrupt gate snapshot: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Integer.BYTES);
+        if (ByteBuffer.wrap(content, content.length - Integer.BYTES, Integer.BYTES).getInt() != (int) crc.getValue()) {
+            throw new IOException("Corrupt gate snapshot: " + file);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a gate snapshot: " + file);
+        }
+        long sequence = in.readLong();
+        int spotCount = in.readInt();
+        List<ParkingSpot> parkingSpots = new ArrayList<>(spotCount);
+        for (int i = 0; i < spotCount; i++) {
+            parkingSpots.add(new ParkingSpot(in.readInt(), PARKING_TYPES[in.readByte()], in.readBoolean()));
+        }
+        int ticketCount = in.readInt();
+        List<Ticket> openTickets = new ArrayList<>(ticketCount);
+        for (int i = 0; i < ticketCount; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setVehicleRegNumber(in.readUTF());
+            ticket.setId(in.readInt());
+            ticket.setParkingSpot(new ParkingSpot(in.readInt(), PARKING_TYPES[in.readByte()], false));
+            ticket.setPrice(0);
+            ticket.setInTime(new Date(in.readLong()));
+            ticket.setVehicleTicketCount(in.readInt());
+            openTickets.add(ticket);
+        }
+        return new GateSnapshot(sequence, parkingSpots, openTickets);
+    }
+}
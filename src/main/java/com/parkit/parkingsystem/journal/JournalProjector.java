@@ -0,0 +1,235 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.dao.GateProjectionDAO;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projects the {@link GateJournal} onto the ticket and parking tables, in journal order, off the
+ * gates' critical path: an ENTER occupies the spot and inserts the ticket, a PRICE closes the
+ * ticket and frees the spot. EXIT events only matter to the in-memory state.
+ * <p>
+ * Events are projected in batches of {@value #BATCH_SIZE}, each written by
+ * {@link GateProjectionDAO#project} in one transaction with the sequence of its last event, so
+ * that a crash never projects an event twice and a backlog left by a DB outage is replayed in
+ * bulk once the DB is back. Within a batch, a stay entered and priced is inserted closed, and
+ * each spot is only written once, with its state after the batch: its state before is the one
+ * implied by its first event, and the spot is left alone when both are the same. When the DB is
+ * down, projection stops and the next run retries the same batch.
+ * <p>
+ * Fully projected segments are deleted, except those after the retained sequence, still needed
+ * to bring a gate snapshot up to date.
+ */
+public class JournalProjector implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("JournalProjector");
+
+    private static final Timer PROJECT_TIMER = Metrics.timer("JournalProjector.project");
+
+    public static final int BATCH_SIZE = 500;
+
+    // DATETIME columns keep whole seconds
+    private static final long TIME_PRECISION_MS = 1000;
+
+    private final GateJournal gateJournal;
+    private final GateProjectionDAO gateProjectionDAO;
+    // written under this lock, -1 until read from the DB
+    private volatile long projectedSequence = -1;
+    private volatile long retainedSequence = Long.MAX_VALUE;
+    // guarded by this
+    private ScheduledExecutorService projector;
+
+    public JournalProjector(GateJournal gateJournal, GateProjectionDAO gateProjectionDAO) {
+        this.gateJournal = gateJournal;
+        this.gateProjectionDAO = gateProjectionDAO;
+    }
+
+    /**
+     * Projects the journal every {@code intervalMs} from now on.
+     */
+    public synchronized void start(long intervalMs) {
+        projector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-projector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        projector.scheduleWithFixedDelay(this::catchUp, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Projects every event appended so far.
+     *
+     * @return false if projection stopped before the end of the journal
+     */
+    public synchronized boolean catchUp() {
+        long start = PROJECT_TIMER.start();
+        try {
+            if (projectedSequence < 0 && !loadProjectedSequence()) {
+                PROJECT_TIMER.failed();
+                return false;
+            }
+            while (true) {
+                List<GateEvent> events = gateJournal.read(projectedSequence + 1, BATCH_SIZE);
+                if (events.isEmpty()) {
+                    return true;
+                }
+                if (!project(events)) {
+                    PROJECT_TIMER.failed();
+                    return false;
+                }
+                projectedSequence = events.get(events.size() - 1).getSequence();
+                gateJournal.deleteBefore(Math.min(projectedSequence, retainedSequence) + 1);
+                logger.debug("Projected gate journal up to {}", projectedSequence);
+            }
+        } catch (Exception e) {
+            PROJECT_TIMER.failed();
+            logger.error("Error projecting gate journal after sequence " + projectedSequence, e);
+            return false;
+        } finally {
+            PROJECT_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * @return the sequence of the last event projected to the DB, or -1 until it could be read from the DB
+     */
+    public long getProjectedSequence() {
+        return projectedSequence;
+    }
+
+    /**
+     * Keeps the segments holding the events after {@code sequence}, even once projected.
+     */
+    public void setRetainedSequence(long sequence) {
+        retainedSequence = sequence;
+    }
+
+    /**
+     * @return the number of events appended but not projected yet, or -1 until the projected
+     * sequence could be read from the DB
+     */
+    public long getLag() {
+        long projected = getProjectedSequence();
+        return projected < 0 ? -1 : gateJournal.getNextSequence() - 1 - projected;
+    }
+
+    /**
+     * Stops the periodic projection and projects what is left.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService projector;
+        synchronized (this) {
+            projector = this.projector;
+        }
+        if (projector != null) {
+            projector.shutdown();
+            try {
+                projector.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!catchUp()) {
+            logger.warn("{} gate events are left to project at the next start", getLag());
+        }
+    }
+
+    private boolean loadProjectedSequence() {
+        long sequence = gateProjectionDAO.getProjectedSequence();
+        if (sequence < 0) {
+            return false;
+        }
+        if (sequence >= gateJournal.getNextSequence()) {
+            // projecting would skip the events appended from now on
+            logger.error("The DB has projected gate events up to {} but the gate journal ends before {}",
+                    sequence, gateJournal.getNextSequence());
+            return false;
+        }
+        projectedSequence = sequence;
+        return true;
+    }
+
+    private boolean project(List<GateEvent> events) {
+        List<Ticket> newTickets = new ArrayList<>();
+        List<Ticket> closedStays = new ArrayList<>();
+        // tickets inserted by this batch, by plate, so that a stay priced in it is inserted closed
+        Map<String, Ticket> entered = new HashMap<>();
+        Map<Integer, ParkingSpot> spots = new LinkedHashMap<>();
+        Map<Integer, Boolean> availableBefore = new HashMap<>();
+        for (GateEvent event : events) {
+            String plate = event.getVehicleRegNumber().toUpperCase(Locale.ROOT);
+            switch (event.getType()) {
+                case ENTER: {
+                    Ticket ticket = toTicket(event);
+                    newTickets.add(ticket);
+                    entered.put(plate, ticket);
+                    setSpot(spots, availableBefore, event, false);
+                    break;
+                }
+                case PRICE: {
+                    Ticket ticket = entered.get(plate);
+                    if (ticket != null && isSameStay(ticket, event)) {
+                        entered.remove(plate);
+                    } else {
+                        ticket = toTicket(event);
+                        closedStays.add(ticket);
+                    }
+                    ticket.setOutTime(new Date(event.getTimeMillis()));
+                    ticket.setPrice(event.getPrice());
+                    setSpot(spots, availableBefore, event, true);
+                    break;
+                }
+                default: break;
+            }
+        }
+        List<ParkingSpot> changedSpots = new ArrayList<>();
+        for (ParkingSpot parkingSpot : spots.values()) {
+            if (availableBefore.get(parkingSpot.getId()) != parkingSpot.isAvailable()) {
+                changedSpots.add(parkingSpot);
+            }
+        }
+        return gateProjectionDAO.project(newTickets, closedStays, changedSpots,
+                events.get(events.size() - 1).getSequence());
+    }
+
+    private static void setSpot(Map<Integer, ParkingSpot> spots, Map<Integer, Boolean> availableBefore,
+                                GateEvent event, boolean available) {
+        // an ENTER finds its spot free, a PRICE finds it taken
+        availableBefore.putIfAbsent(event.getParkingNumber(), !available);
+        spots.put(event.getParkingNumber(), new ParkingSpot(event.getParkingNumber(), event.getParkingType(), available));
+    }
+
+    private static Ticket toTicket(GateEvent event) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(event.getParkingNumber(), event.getParkingType(), false));
+        ticket.setVehicleRegNumber(event.getVehicleRegNumber());
+        ticket.setPrice(0);
+        ticket.setInTime(new Date(event.getInTimeMillis()));
+        ticket.setOutTime(null);
+        return ticket;
+    }
+
+    /**
+     * @return true if the event belongs to the ticket, whose in time may have been rounded by the DB
+     */
+    public static boolean isSameStay(Ticket ticket, GateEvent event) {
+        return Math.abs(ticket.getInTime().getTime() - event.getInTimeMillis()) < TIME_PRECISION_MS;
+    }
+}
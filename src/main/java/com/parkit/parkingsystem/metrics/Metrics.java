@@ -0,0 +1,140 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide registry of the {@link Timer}s and {@link Counter}s of the hot path. Disabled by
+ * default; turned on with -Dparkit.metrics=true or at runtime through JMX.
+ */
+public final class Metrics {
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    public static final String OBJECT_NAME = "com.parkit.parkingsystem:type=Metrics";
+
+    private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static volatile boolean enabled = Boolean.getBoolean("parkit.metrics");
+    private static ScheduledExecutorService logDumper;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * @return the timer of that name, created on first use
+     */
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * @return the counter of that name, created on first use
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public static void reset() {
+        timers.values().forEach(Timer::reset);
+        counters.values().forEach(Counter::reset);
+    }
+
+    /**
+     * Registers the {@link MetricsMXBean}, once per JVM.
+     *
+     * @return false if the MBean could not be registered
+     */
+    public static synchronized boolean registerMBean() {
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), objectName);
+            }
+            return true;
+        } catch (Exception ex) {
+            logger.error("Unable to register metrics MBean", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Logs every timer and counter at INFO every {@code intervalMs}, while metrics are enabled.
+     */
+    public static synchronized void startLogDump(long intervalMs) {
+        stopLogDump();
+        logDumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-log-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logDumper.scheduleWithFixedDelay(Metrics::logDump, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopLogDump() {
+        if (logDumper != null) {
+            logDumper.shutdownNow();
+            logDumper = null;
+        }
+    }
+
+    static void logDump() {
+        if (!enabled) {
+            return;
+        }
+        for (Timer timer : timers.values()) {
+            if (timer.getHistogram().getCount() > 0 || timer.getFailures() > 0) {
+                logger.info(timer);
+            }
+        }
+        for (Counter counter : counters.values()) {
+            if (counter.getCount() > 0) {
+                logger.info(counter);
+            }
+        }
+    }
+
+    private static final class MBean implements MetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public String[] getTimers() {
+            return timers.values().stream().map(Timer::toString).toArray(String[]::new);
+        }
+
+        @Override
+        public String[] getCounters() {
+            return counters.values().stream().map(Counter::toString).toArray(String[]::new);
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
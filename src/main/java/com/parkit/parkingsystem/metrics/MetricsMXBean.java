@@ -0,0 +1,20 @@
+package com.parkit.parkingsystem.metrics;
+
+/**
+ * JMX view of {@link Metrics}, registered as {@value Metrics#OBJECT_NAME}.
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return one summary line per timer: count, failures, mean, p50, p99, p99.9 and max
+     */
+    String[] getTimers();
+
+    String[] getCounters();
+
+    void reset();
+}
@@ -0,0 +1,74 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and failure count of one operation. Meant to be held in a static final
+ * field and used as:
+ * <pre>
+ * long start = TIMER.start();
+ * try {
+ *     ...
+ * } catch (Exception ex) {
+ *     TIMER.failed();
+ * } finally {
+ *     TIMER.stop(start);
+ * }
+ * </pre>
+ * While metrics are disabled {@link #start()} returns 0 without reading the clock and the other
+ * calls return at once, so an instrumented method only pays for a volatile read.
+ */
+public class Timer {
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the start time to give to {@link #stop(long)}, 0 when metrics are disabled
+     */
+    public long start() {
+        return Metrics.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    public void stop(long start) {
+        if (start != 0L) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    public void failed() {
+        if (Metrics.isEnabled()) {
+            failures.increment();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    void reset() {
+        histogram.reset();
+        failures.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s count=%d failures=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+                name, histogram.getCount(), getFailures(), histogram.getMeanNanos() / 1e6,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * Revenue and occupancy of one parking type over one hour: the fares of the tickets closed
+ * during that hour, and the time all vehicles of that type spent parked within it.
+ */
+public class RevenueBucket {
+
+    private static final double MILLIS_PER_HOUR = 60 * 60 * 1000;
+
+    private Date hourStart;
+    private ParkingType parkingType;
+    private double revenue;
+    private int closedTickets;
+    private long occupiedMillis;
+
+    public RevenueBucket(Date hourStart, ParkingType parkingType) {
+        this.hourStart = hourStart;
+        this.parkingType = parkingType;
+    }
+
+    public Date getHourStart() {
+        return hourStart;
+    }
+
+    public void setHourStart(Date hourStart) {
+        this.hourStart = hourStart;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public void setParkingType(ParkingType parkingType) {
+        this.parkingType = parkingType;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(double revenue) {
+        this.revenue = revenue;
+    }
+
+    public int getClosedTickets() {
+        return closedTickets;
+    }
+
+    public void setClosedTickets(int closedTickets) {
+        this.closedTickets = closedTickets;
+    }
+
+    public long getOccupiedMillis() {
+        return occupiedMillis;
+    }
+
+    public void setOccupiedMillis(long occupiedMillis) {
+        this.occupiedMillis = occupiedMillis;
+    }
+
+    /**
+     * @return the average number of spots of this type occupied during the hour
+     */
+    public double getAverageOccupiedSpots() {
+        return occupiedMillis / MILLIS_PER_HOUR;
+    }
+
+    public void add(RevenueBucket other) {
+        revenue += other.revenue;
+        closedTickets += other.closedTickets;
+        occupiedMillis += other.occupiedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%tF %<tH:00 %s revenue=%.2f closedTickets=%d averageOccupiedSpots=%.2f",
+                hourStart, parkingType, revenue, closedTickets, getAverageOccupiedSpots());
+    }
+}
@@ -10,6 +10,7 @@ public class Ticket {
     private double price;
     private Date inTime;
     private Date outTime;
+    private int vehicleTicketCount;
 
     public Ticket() {}
 
@@ -71,4 +72,15 @@ public class Ticket {
     public void setOutTime(Date outTime) {
         this.outTime = outTime;
     }
+
+    /**
+     * Number of tickets recorded for this vehicle, this one included, as of when the ticket was loaded.
+     */
+    public int getVehicleTicketCount() {
+        return vehicleTicketCount;
+    }
+
+    public void setVehicleTicketCount(int vehicleTicketCount) {
+        this.vehicleTicketCount = vehicleTicketCount;
+    }
 }
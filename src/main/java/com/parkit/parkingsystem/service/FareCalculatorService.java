@@ -1,49 +1,199 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.Ticket;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 public class FareCalculatorService {
 
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+    private static final long ROUNDING_DENOMINATOR = MILLIS_PER_HOUR * 100;
+
+    /**
+     * Below this many tickets a bulk calculation stays on the calling thread.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final TariffService tariffService;
+    private final String lotId;
+
+    public FareCalculatorService() {
+        this(new TariffService());
+    }
+
+    public FareCalculatorService(TariffService tariffService) {
+        this(tariffService, TariffService.DEFAULT_LOT);
+    }
+
+    /**
+     * Prices with the lot's schedule, or the default one while the lot has no tariff of its own.
+     */
+    public FareCalculatorService(TariffService tariffService, String lotId) {
+        this.tariffService = tariffService;
+        this.lotId = lotId;
+    }
+
     public void calculateFare(Ticket ticket, boolean discount){
 
-        if( (ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime())) ){
-            throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
+        if (ticket.getOutTime() == null) {
+            throw new IllegalArgumentException("Out time provided is incorrect: null");
         }
+        long fareCents = calculateFareCents(ticket.getInTime().getTime(), ticket.getOutTime().getTime(),
+                ticket.getParkingSpot().getParkingType().ordinal(), discount);
+        ticket.setPrice(fareCents / 100.0);
+    }
+
+    public void calculateFare (Ticket ticket){
 
-        long inTimeMillis = ticket.getInTime().getTime();
-        long outTimeMillis = ticket.getOutTime().getTime();
+        calculateFare(ticket, false);
+    }
+
+    /**
+     * Allocation-free pricing kernel working on primitives only, in fixed-point cents.
+     * Stays are free up to the free duration of the current tariff, then billed per millisecond
+     * at the hourly rate of the parking type for each hour of the week the stay covers. The amount
+     * is rounded half-up to the cent once, after the recurring user discount.
+     *
+     * @param parkingTypeOrdinal {@link ParkingType#ordinal()} of the spot
+     * @return the fare in cents
+     */
+    public long calculateFareCents(long inTimeMillis, long outTimeMillis, int parkingTypeOrdinal, boolean discount) {
+        return tariffService.getSchedule(lotId).priceCents(inTimeMillis, outTimeMillis, parkingTypeOrdinal, discount);
+    }
 
-        double durationInHours = (outTimeMillis - inTimeMillis) / (1000.0 * 60 * 60);
+    /**
+     * Prices a whole column of tickets at once, with the same rules and rounding as
+     * {@link #calculateFareCents(long, long, int, boolean)}. Ticket i is described by
+     * inTimes[i], outTimes[i], typeOrdinals[i] and bit i of discounts, and its fare is written
+     * to faresCents[i]. The whole column is priced with one tariff, even if it is reloaded
+     * meanwhile. With a flat tariff the pricing loop has no early exits: invalid rows are only
+     * reported once the whole range is priced, so the JIT can unroll it. The 64-bit division per
+     * row dominates and does not vectorise, so the large win comes from the ForkJoin overload.
+     */
+    public void calculateFaresCents(long[] inTimes, long[] outTimes, int[] typeOrdinals, BitSet discounts, long[] faresCents) {
+        checkLengths(inTimes, outTimes, typeOrdinals, faresCents);
+        TariffSchedule schedule = tariffService.getSchedule(lotId);
+        long[] discountWords = discountWords(discounts, inTimes.length);
+        if (!priceRange(schedule, inTimes, outTimes, typeOrdinals, discountWords, faresCents, 0, inTimes.length)) {
+            throwForFirstInvalidRow(schedule, inTimes, outTimes, typeOrdinals);
+        }
+    }
 
-        if (durationInHours <= 0.5) {
-            ticket.setPrice(0.0);
+    /**
+     * Same as {@link #calculateFaresCents(long[], long[], int[], BitSet, long[])}, split across
+     * the given pool when there are more than {@link #PARALLEL_THRESHOLD} tickets.
+     */
+    public void calculateFaresCents(long[] inTimes, long[] outTimes, int[] typeOrdinals, BitSet discounts, long[] faresCents,
+                                    ForkJoinPool pool) {
+        checkLengths(inTimes, outTimes, typeOrdinals, faresCents);
+        TariffSchedule schedule = tariffService.getSchedule(lotId);
+        long[] discountWords = discountWords(discounts, inTimes.length);
+        PriceRangeTask task = new PriceRangeTask(schedule, inTimes, outTimes, typeOrdinals, discountWords, faresCents,
+                0, inTimes.length);
+        if (!pool.invoke(task)) {
+            throwForFirstInvalidRow(schedule, inTimes, outTimes, typeOrdinals);
+        }
+    }
 
-            return;
+    private static void checkLengths(long[] inTimes, long[] outTimes, int[] typeOrdinals, long[] faresCents) {
+        int length = inTimes.length;
+        if (outTimes.length != length || typeOrdinals.length != length || faresCents.length != length) {
+            throw new IllegalArgumentException("Ticket columns must all have the same length");
         }
+    }
 
-        double fare = 0.0;
+    private static long[] discountWords(BitSet discounts, int length) {
+        // padded so the pricing loop never needs a bounds branch
+        return Arrays.copyOf(discounts.toLongArray(), (length + 63) >>> 6);
+    }
 
-        switch (ticket.getParkingSpot().getParkingType()){
-            case CAR: {
-                fare = durationInHours * Fare.CAR_RATE_PER_HOUR;
-                break;
+    private static void throwForFirstInvalidRow(TariffSchedule schedule, long[] inTimes, long[] outTimes, int[] typeOrdinals) {
+        for (int i = 0; i < inTimes.length; i++) {
+            if (outTimes[i] < inTimes[i]) {
+                throw new IllegalArgumentException("Out time provided is incorrect for ticket at index " + i);
             }
-            case BIKE: {
-                fare = durationInHours * Fare.BIKE_RATE_PER_HOUR;
-                break;
+            if (typeOrdinals[i] < 0 || typeOrdinals[i] >= schedule.getParkingTypeCount()) {
+                throw new IllegalArgumentException("Unknown Parking Type for ticket at index " + i);
             }
-            default: throw new IllegalArgumentException("Unknown Parking Type");
         }
+    }
 
-        if (discount) {
-            fare *= 0.95;
+    /**
+     * @return false if at least one row had an out time before its in time or an unknown type
+     */
+    private static boolean priceRange(TariffSchedule schedule, long[] inTimes, long[] outTimes, int[] typeOrdinals,
+                                      long[] discountWords, long[] faresCents, int from, int to) {
+        int lastType = schedule.getParkingTypeCount() - 1;
+        int invalidType = 0;
+        for (int i = from; i < to; i++) {
+            // sign bit set for an ordinal outside [0, lastType]
+            invalidType |= typeOrdinals[i] | (lastType - typeOrdinals[i]);
         }
-        ticket.setPrice(fare);
+        if (invalidType < 0) {
+            return false;
+        }
+        long invalidDuration = 0;
+        if (!schedule.isFlat()) {
+            for (int i = from; i < to; i++) {
+                long durationMillis = outTimes[i] - inTimes[i];
+                invalidDuration |= durationMillis;
+                boolean discount = ((discountWords[i >>> 6] >>> i) & 1L) != 0;
+                faresCents[i] = durationMillis < 0 ? 0L : schedule.priceCents(inTimes[i], outTimes[i], typeOrdinals[i], discount);
+            }
+            return invalidDuration >= 0;
+        }
+        long[] rates = schedule.firstHourRatesCentsPerHour();
+        long freeDurationMillis = schedule.getFreeDurationMillis();
+        long discountedPercent = 100 - schedule.getDiscountPercent();
+        for (int i = from; i < to; i++) {
+            long durationMillis = outTimes[i] - inTimes[i];
+            invalidDuration |= durationMillis;
+            long percent = ((discountWords[i >>> 6] >>> i) & 1L) != 0 ? discountedPercent : 100;
+            faresCents[i] = durationMillis <= freeDurationMillis ? 0L
+                    : (durationMillis * rates[typeOrdinals[i]] * percent + ROUNDING_DENOMINATOR / 2) / ROUNDING_DENOMINATOR;
+        }
+        return invalidDuration >= 0;
     }
 
-    public void calculateFare (Ticket ticket){
+    private static final class PriceRangeTask extends RecursiveTask<Boolean> {
+        private final TariffSchedule schedule;
+        private final long[] inTimes;
+        private final long[] outTimes;
+        private final int[] typeOrdinals;
+        private final long[] discountWords;
+        private final long[] faresCents;
+        private final int from;
+        private final int to;
 
-        calculateFare(ticket, false);
+        private PriceRangeTask(TariffSchedule schedule, long[] inTimes, long[] outTimes, int[] typeOrdinals,
+                               long[] discountWords, long[] faresCents, int from, int to) {
+            this.schedule = schedule;
+            this.inTimes = inTimes;
+            this.outTimes = outTimes;
+            this.typeOrdinals = typeOrdinals;
+            this.discountWords = discountWords;
+            this.faresCents = faresCents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return priceRange(schedule, inTimes, outTimes, typeOrdinals, discountWords, faresCents, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            PriceRangeTask left = new PriceRangeTask(schedule, inTimes, outTimes, typeOrdinals, discountWords, faresCents,
+                    from, middle);
+            PriceRangeTask right = new PriceRangeTask(schedule, inTimes, outTimes, typeOrdinals, discountWords, faresCents,
+                    middle, to);
+            left.fork();
+            boolean rightValid = right.compute();
+            return left.join() && rightValid;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,259 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds a file of recorded gate events to {@link ParkingService} without any prompt, for load
+ * testing and for back-filling the events of an outage. One event per line:
+ * <pre>
+ * 2024-01-01T08:00:00,ENTER,AB-123-CD,CAR
+ * 1704099600000,EXIT,AB-123-CD
+ * </pre>
+ * The timestamp is either an ISO local date-time in the default time zone or epoch millis;
+ * blank lines and lines starting with # are skipped. The events of one vehicle are always
+ * processed in file order; with several workers, different vehicles are processed in parallel.
+ */
+public class GateEventReplay {
+
+    private static final Logger logger = LogManager.getLogger("GateEventReplay");
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int DISPATCH_BATCH_SIZE = 256;
+    // batches waiting per worker, the reader blocks past it so a large file never fills the heap
+    private static final int MAX_QUEUED_BATCHES = 4;
+
+    private final ParkingService parkingService;
+    private final int nbWorkers;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    private final AtomicLong entered = new AtomicLong();
+    private final AtomicLong exited = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private long malformed;
+
+    /**
+     * Replays the file against the configured database with the same DAO setup as the shell,
+     * then prints the report. No menu or per-vehicle message is printed.
+     */
+    public static void runReplay(Path eventFile, int nbWorkers) {
+        ParkingSystem parkingSystem = new ParkingSystem(null, Math.max(nbWorkers, DataBaseConfig.DEFAULT_POOL_SIZE));
+        try {
+            Report report = new GateEventReplay(parkingSystem.getParkingService(), nbWorkers).replay(eventFile);
+            System.out.println("Replayed " + eventFile + ": " + report);
+        } catch (IOException e) {
+            logger.error("Unable to read gate events from " + eventFile, e);
+            System.out.println("Unable to read gate events from " + eventFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            parkingSystem.close();
+        }
+    }
+
+    public GateEventReplay(ParkingService parkingService, int nbWorkers) {
+        this.parkingService = parkingService;
+        this.nbWorkers = Math.max(1, nbWorkers);
+    }
+
+    /**
+     * Replays the whole file and waits for every event to be processed.
+     *
+     * @return the replay summary
+     */
+    public Report replay(Path eventFile) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        entered.set(0);
+        exited.set(0);
+        rejected.set(0);
+        malformed = 0;
+        ExecutorService[] workers = new ExecutorService[nbWorkers];
+        List<List<GateEvent>> batches = new ArrayList<>(nbWorkers);
+        for (int worker = 0; worker < nbWorkers; worker++) {
+            // one thread per worker keeps the events of a vehicle in order
+            workers[worker] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES), GateEventReplay::waitForQueueSpace);
+            batches.add(new ArrayList<>(DISPATCH_BATCH_SIZE));
+        }
+        long nbEvents = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(eventFile), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                GateEvent event = parse(line, lineNumber);
+                if (event == null) {
+                    malformed++;
+                    continue;
+                }
+                nbEvents++;
+                int worker = nbWorkers == 1 ? 0 : Math.floorMod(event.vehicleRegNumber.hashCode(), nbWorkers);
+                List<GateEvent> batch = batches.get(worker);
+                batch.add(event);
+                if (batch.size() == DISPATCH_BATCH_SIZE) {
+                    workers[worker].execute(() -> process(batch));
+                    batches.set(worker, new ArrayList<>(DISPATCH_BATCH_SIZE));
+                }
+            }
+        } finally {
+            for (int worker = 0; worker < nbWorkers; worker++) {
+                List<GateEvent> batch = batches.get(worker);
+                if (!batch.isEmpty()) {
+                    workers[worker].execute(() -> process(batch));
+                }
+                workers[worker].shutdown();
+            }
+            for (ExecutorService worker : workers) {
+                worker.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        }
+        Report report = new Report(nbEvents, entered.get(), exited.get(), rejected.get(), malformed,
+                System.nanoTime() - start);
+        logger.info("Replayed {}: {}", eventFile, report);
+        return report;
+    }
+
+    /**
+     * Blocks the reader until the worker has room for the batch. Running it on the reader
+     * instead would overtake the worker and break the order of a vehicle's events.
+     */
+    private static void waitForQueueSpace(Runnable batch, ThreadPoolExecutor worker) {
+        try {
+            worker.getQueue().put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a replay worker", e);
+        }
+    }
+
+    private void process(List<GateEvent> batch) {
+        for (GateEvent event : batch) {
+            if (event.parkingType != null) {
+                if (parkingService.processIncomingVehicle(event.vehicleRegNumber, event.parkingType, event.time) != null) {
+                    entered.incrementAndGet();
+                } else {
+                    rejected.incrementAndGet();
+                }
+            } else if (parkingService.processExitingVehicle(event.vehicleRegNumber, event.time) != null) {
+                exited.incrementAndGet();
+            } else {
+                rejected.incrementAndGet();
+            }
+        }
+    }
+
+    private GateEvent parse(String line, long lineNumber) {
+        try {
+            String[] fields = line.split(",");
+            String time = fields[0].trim();
+            long timeMillis = time.indexOf('-') < 0
+                    ? Long.parseLong(time)
+                    : LocalDateTime.parse(time).atZone(zoneId).toInstant().toEpochMilli();
+            String vehicleRegNumber = fields[2].trim();
+            switch (fields[1].trim()) {
+                case "ENTER": {
+                    return new GateEvent(new Date(timeMillis), vehicleRegNumber, ParkingType.valueOf(fields[3].trim()));
+                }
+                case "EXIT": {
+                    return new GateEvent(new Date(timeMillis), vehicleRegNumber, null);
+                }
+                default: throw new IllegalArgumentException("Unknown gate event " + fields[1]);
+            }
+        } catch (Exception e) {
+            logger.error("Skipping malformed gate event at line " + lineNumber + ": " + line, e);
+            return null;
+        }
+    }
+
+    private static final class GateEvent {
+        private final Date time;
+        private final String vehicleRegNumber;
+        // null for an exit
+        private final ParkingType parkingType;
+
+        private GateEvent(Date time, String vehicleRegNumber, ParkingType parkingType) {
+            this.time = time;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.parkingType = parkingType;
+        }
+    }
+
+    public static final class Report {
+        private final long events;
+        private final long entered;
+        private final long exited;
+        private final long rejected;
+        private final long malformed;
+        private final long elapsedNanos;
+
+        Report(long events, long entered, long exited, long rejected, long malformed, long elapsedNanos) {
+            this.events = events;
+            this.entered = entered;
+            this.exited = exited;
+            this.rejected = rejected;
+            this.malformed = malformed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        public long getEntered() {
+            return entered;
+        }
+
+        public long getExited() {
+            return exited;
+        }
+
+        /**
+         * @return events that could not be applied: lot full, no open ticket, DB error
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getMalformed() {
+            return malformed;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getEventsPerSecond() {
+            return elapsedNanos == 0 ? 0 : events * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d events (%d entries, %d exits, %d rejected, %d malformed lines) in %.3f s, %.0f events/s",
+                    events, entered, exited, rejected, malformed, elapsedNanos / 1e9, getEventsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs gate operations concurrently on top of the blocking JDBC DAOs. On Java 21+ every
+ * operation gets its own virtual thread, so a thousand gates waiting on the DB cost a thousand
+ * cheap continuations rather than a thousand platform threads; on older JVMs a fixed pool of
+ * platform threads is used instead. Either way at most {@code maxConcurrency} operations run at
+ * once, which should match the connection pool size: callers beyond it wait on a semaphore
+ * instead of piling up on the pool's connection timeout.
+ */
+public class GateExecutor implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("GateExecutor");
+
+    private final ParkingService parkingService;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public GateExecutor(ParkingService parkingService, int maxConcurrency) {
+        this(parkingService, maxConcurrency, newPerTaskExecutor(maxConcurrency));
+    }
+
+    public GateExecutor(ParkingService parkingService, int maxConcurrency, ExecutorService executor) {
+        this(parkingService, executor, new Semaphore(maxConcurrency, true), maxConcurrency);
+    }
+
+    /**
+     * Shares its permits with the other gate executors on the same connection pool, such as the
+     * lots of one shard, so that together they never run more operations than the pool has
+     * connections.
+     *
+     * @param permits fair semaphore of the pool, with as many permits as {@code maxConcurrency}
+     */
+    public GateExecutor(ParkingService parkingService, ExecutorService executor, Semaphore permits, int maxConcurrency) {
+        this.parkingService = parkingService;
+        this.maxConcurrency = maxConcurrency;
+        this.executor = executor;
+        this.permits = permits;
+    }
+
+    /**
+     * @return a virtual-thread-per-task executor when the JVM has virtual threads, otherwise a
+     * fixed pool of {@code fallbackThreads} platform threads
+     */
+    public static ExecutorService newPerTaskExecutor(int fallbackThreads) {
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        if (virtualThreads != null) {
+            return virtualThreads;
+        }
+        logger.info("Virtual threads are not available on Java {}, using {} platform threads",
+                System.getProperty("java.version"), fallbackThreads);
+        return Executors.newFixedThreadPool(fallbackThreads);
+    }
+
+    /**
+     * @return a virtual-thread-per-task executor, or null before Java 21
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // looked up reflectively so the code still compiles and runs on Java 8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public CompletableFuture<Ticket> enter(String vehicleRegNumber, ParkingType parkingType, Date inTime) {
+        return submit(service -> service.processIncomingVehicle(vehicleRegNumber, parkingType, inTime));
+    }
+
+    public CompletableFuture<Ticket> exit(String vehicleRegNumber, Date outTime) {
+        return submit(service -> service.processExitingVehicle(vehicleRegNumber, outTime));
+    }
+
+    /**
+     * Runs the operation on the executor, once a permit is free.
+     */
+    public <T> CompletableFuture<T> submit(Function<ParkingService, T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(call(operation));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the operation on the calling thread, once a permit is free. Meant for callers that
+     * already run on their own thread, like the gate server's request handlers.
+     */
+    public <T> T call(Function<ParkingService, T> operation) throws InterruptedException {
+        permits.acquire();
+        try {
+            return operation.apply(parkingService);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return the number of callers waiting for a permit, including those of the executors sharing the permits
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.LotShardMap;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * HTTP/JSON front of {@link ParkingService}, so that every gate terminal talks to one shared
+ * process instead of running its own JVM and DB connections.
+ * <pre>
+ * POST /gate/enter?plate=AB-123-CD&amp;type=CAR  200 ticket, 409 lot full, 503 not saved
+ * POST /gate/exit?plate=AB-123-CD            200 priced ticket, 404 no parked vehicle, 503 not closed
+ * GET  /availability                         200 free spots per type
+ * </pre>
+ * Every request may name its lot with a {@code lot} parameter, the default lot otherwise; a lot
+ * this server does not serve is answered 404. Parameters come from the query string or a
+ * form-encoded body. Connections are accepted and
+ * read by the HTTP server's selector thread, so idle keep-alive terminals cost no thread; only
+ * requests in progress occupy one of the {@link GateExecutor}'s threads.
+ */
+public class GateServer implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("GateServer");
+
+    private final HttpServer httpServer;
+    private final Map<Integer, GateExecutor> gateExecutors;
+    private final Map<Integer, ParkingSpotDAO> parkingSpotDAOs;
+
+    /**
+     * Requests are handled on the gate executor's threads, virtual ones on Java 21+, and at most
+     * its concurrency limit of them reach the DAOs at once.
+     */
+    public GateServer(GateExecutor gateExecutor, ParkingSpotDAO parkingSpotDAO, InetSocketAddress address) throws IOException {
+        this(Collections.singletonMap(DBConstants.DEFAULT_LOT_ID, gateExecutor),
+                Collections.singletonMap(DBConstants.DEFAULT_LOT_ID, parkingSpotDAO), gateExecutor.getExecutor(), address);
+    }
+
+    /**
+     * Serves several lots, each through its own gate executor, whose concurrency limit applies to
+     * that lot only. Requests are handled on {@code requestExecutor}, which the gate executors
+     * should share.
+     */
+    public GateServer(Map<Integer, GateExecutor> gateExecutors, Map<Integer, ParkingSpotDAO> parkingSpotDAOs,
+                      Executor requestExecutor, InetSocketAddress address) throws IOException {
+        this.gateExecutors = gateExecutors;
+        this.parkingSpotDAOs = parkingSpotDAOs;
+        httpServer = HttpServer.create(address, 0);
+        httpServer.setExecutor(requestExecutor);
+        httpServer.createContext("/gate/enter", exchange -> handle(exchange, "POST", this::enter));
+        httpServer.createContext("/gate/exit", exchange -> handle(exchange, "POST", this::exit));
+        httpServer.createContext("/availability", exchange -> handle(exchange, "GET", this::availability));
+    }
+
+    /**
+     * Serves gates on the given port against the configured database, or every lot of the
+     * -Dparkit.shardMap file, until the JVM is stopped.
+     */
+    public static void runServer(int port, int poolSize) {
+        String shardMap = System.getProperty("parkit.shardMap");
+        if (shardMap != null) {
+            runShardedServer(port, poolSize, shardMap);
+            return;
+        }
+        ParkingSystem parkingSystem = new ParkingSystem(null, poolSize);
+        GateExecutor gateExecutor = new GateExecutor(parkingSystem.getParkingService(), poolSize);
+        try {
+            GateServer gateServer = new GateServer(gateExecutor, parkingSystem.getParkingSpotDAO(), new InetSocketAddress(port));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                gateServer.close();
+                gateExecutor.close();
+                parkingSystem.close();
+            }, "gate-server-shutdown"));
+            gateServer.start();
+            System.out.println("Gate server listening on port " + gateServer.getPort());
+        } catch (IOException e) {
+            logger.error("Unable to start gate server on port " + port, e);
+            gateExecutor.close();
+            parkingSystem.close();
+        }
+    }
+
+    private static void runShardedServer(int port, int poolSize, String shardMap) {
+        ParkingLots parkingLots;
+        try {
+            parkingLots = new ParkingLots(LotShardMap.load(Paths.get(shardMap)), null, poolSize);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to read shard map " + shardMap, e);
+            return;
+        }
+        // the lots of a shard share its pool, so they share one set of permits sized like it
+        Map<String, Semaphore> shardPermits = new HashMap<>();
+        for (int lotId : parkingLots.getLotIds()) {
+            shardPermits.computeIfAbsent(parkingLots.getShard(lotId), shard -> new Semaphore(poolSize, true));
+        }
+        ExecutorService requestExecutor = GateExecutor.newPerTaskExecutor(poolSize * shardPermits.size());
+        Map<Integer, GateExecutor> gateExecutors = new HashMap<>();
+        Map<Integer, ParkingSpotDAO> parkingSpotDAOs = new HashMap<>();
+        for (int lotId : parkingLots.getLotIds()) {
+            gateExecutors.put(lotId, new GateExecutor(parkingLots.getParkingService(lotId), requestExecutor,
+                    shardPermits.get(parkingLots.getShard(lotId)), poolSize));
+            parkingSpotDAOs.put(lotId, parkingLots.getLot(lotId).getParkingSpotDAO());
+        }
+        try {
+            GateServer gateServer = new GateServer(gateExecutors, parkingSpotDAOs, requestExecutor, new InetSocketAddress(port));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                gateServer.close();
+                // the gate executors share the request executor, closing one stops them all
+                gateExecutors.values().forEach(GateExecutor::close);
+                parkingLots.close();
+            }, "gate-server-shutdown"));
+            gateServer.start();
+            System.out.println("Gate server listening on port " + gateServer.getPort() + " for lots " + parkingLots.getLotIds());
+        } catch (IOException e) {
+            logger.error("Unable to start gate server on port " + port, e);
+            requestExecutor.shutdown();
+            parkingLots.close();
+        }
+    }
+
+    public void start() {
+        httpServer.start();
+        logger.info("Gate server listening on {}", httpServer.getAddress());
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+    }
+
+    private Response enter(Map<String, String> params) throws InterruptedException {
+        String plate = params.get("plate");
+        String type = params.get("type");
+        if (plate == null || plate.trim().isEmpty() || type == null) {
+            return Response.error(400, "plate and type are required");
+        }
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(type.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Response.error(400, "Unknown parking type: " + type);
+        }
+        int lotId = lotOf(params);
+        GateExecutor gateExecutor = gateExecutors.get(lotId);
+        if (gateExecutor == null) {
+            return unknownLot(params);
+        }
+        String vehicleRegNumber = plate.trim();
+        Ticket ticket = gateExecutor.call(service -> service.processIncomingVehicle(vehicleRegNumber, parkingType, new Date()));
+        if (ticket == null) {
+            // spots left means the entry failed on the DB or the journal, not on a full lot
+            if (parkingSpotDAOs.get(lotId).getAvailableSpotCount(parkingType) == 0) {
+                return Response.error(409, "No parking spot could be reserved. Parking slots might be full");
+            }
+            return Response.error(503, "The ticket could not be saved, please retry");
+        }
+        return new Response(200, toJson(ticket));
+    }
+
+    private Response exit(Map<String, String> params) throws InterruptedException {
+        String plate = params.get("plate");
+        if (plate == null || plate.trim().isEmpty()) {
+            return Response.error(400, "plate is required");
+        }
+        GateExecutor gateExecutor = gateExecutors.get(lotOf(params));
+        if (gateExecutor == null) {
+            return unknownLot(params);
+        }
+        String vehicleRegNumber = plate.trim();
+        Ticket ticket = gateExecutor.call(service -> service.processExitingVehicle(vehicleRegNumber, new Date()));
+        if (ticket == null) {
+            // a vehicle still parked, or not known to be gone, means the close failed on the DB or the journal
+            if (gateExecutor.call(service -> service.countOpenTickets(vehicleRegNumber)) == 0) {
+                return Response.error(404, "No parked vehicle found for registration number:" + vehicleRegNumber);
+            }
+            return Response.error(503, "The ticket could not be closed, please retry");
+        }
+        return new Response(200, toJson(ticket));
+    }
+
+    private Response availability(Map<String, String> params) {
+        ParkingSpotDAO parkingSpotDAO = parkingSpotDAOs.get(lotOf(params));
+        if (parkingSpotDAO == null) {
+            return unknownLot(params);
+        }
+        StringBuilder json = new StringBuilder("{");
+        for (ParkingType parkingType : ParkingType.values()) {
+            int count = parkingSpotDAO.getAvailableSpotCount(parkingType);
+            if (count < 0) {
+                return Response.error(503, "Availability is not known");
+            }
+            json.append(json.length() > 1 ? "," : "").append('"').append(parkingType).append("\":").append(count);
+        }
+        return new Response(200, json.append('}').toString());
+    }
+
+    /**
+     * @return the lot named by the request, the default lot if none is, or 0 if it is not a number
+     */
+    private static int lotOf(Map<String, String> params) {
+        String lot = params.get("lot");
+        if (lot == null || lot.trim().isEmpty()) {
+            return DBConstants.DEFAULT_LOT_ID;
+        }
+        try {
+            return Integer.parseInt(lot.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Response unknownLot(Map<String, String> params) {
+        return Response.error(404, "Unknown lot: " + params.get("lot"));
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        Response response;
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                response = Response.error(405, "Use " + method);
+            } else {
+                response = handler.handle(readParams(exchange));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response = Response.error(503, "Server is shutting down");
+        } catch (Exception e) {
+            logger.error("Error handling " + exchange.getRequestURI(), e);
+            response = Response.error(500, "Internal error");
+        }
+        byte[] body = response.json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[512];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        parseForm(new String(body.toByteArray(), StandardCharsets.UTF_8), params);
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) throws IOException {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+    }
+
+    static String toJson(Ticket ticket) {
+        return "{\"ticketId\":" + ticket.getId()
+                + ",\"vehicleRegNumber\":" + quote(ticket.getVehicleRegNumber())
+                + ",\"parkingNumber\":" + ticket.getParkingSpot().getId()
+                + ",\"parkingType\":\"" + ticket.getParkingSpot().getParkingType() + "\""
+                + ",\"inTime\":" + ticket.getInTime().getTime()
+                + ",\"outTime\":" + (ticket.getOutTime() == null ? "null" : String.valueOf(ticket.getOutTime().getTime()))
+                + ",\"price\":" + ticket.getPrice()
+                + ",\"recurring\":" + (ticket.getVehicleTicketCount() > 1)
+                + "}";
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private interface Handler {
+        Response handle(Map<String, String> params) throws InterruptedException;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String json;
+
+        private Response(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + quote(message) + "}");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OccupancyCounters;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.journal.JournalProjector;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Free spots per type for the entrance displays, answered from {@link OccupancyCounters}
+ * that the DAOs update on every spot taken or freed. The counters are seeded from the parking
+ * table at startup and reconciled with it periodically, so spots changed by other processes or
+ * by direct SQL are picked up within one interval. With the gate journal, entries and exits reach
+ * the counters before the parking table, so reconciliation waits for the table to catch up.
+ */
+public class OccupancyService implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("OccupancyService");
+
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final TicketDAO ticketDAO;
+    private final OccupancyCounters occupancyCounters = new OccupancyCounters();
+    private volatile JournalProjector journalProjector;
+    private ScheduledExecutorService reconciler;
+
+    public OccupancyService(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.ticketDAO = ticketDAO;
+    }
+
+    /**
+     * Hooks the counters into the DAOs, seeds them from the DB and reconciles them every
+     * {@code reconcileIntervalMs}.
+     *
+     * @return false if the counters could not be seeded, the DAOs then keep counting from the DB
+     */
+    public synchronized boolean start(long reconcileIntervalMs) {
+        // hooked before seeding so that no update between the count query and now is missed
+        parkingSpotDAO.occupancyCounters = occupancyCounters;
+        ticketDAO.occupancyCounters = occupancyCounters;
+        Map<ParkingType, Integer> counts = parkingSpotDAO.getAvailableSpotCounts();
+        if (counts == null) {
+            parkingSpotDAO.occupancyCounters = null;
+            ticketDAO.occupancyCounters = null;
+            return false;
+        }
+        reset(counts);
+        logger.info("Occupancy counters seeded: {}", this);
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "occupancy-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Makes reconciliation wait until the projector has brought the parking table up to the gate
+     * journal. Set once the journaled events restored at startup are counted.
+     */
+    public void setJournalProjector(JournalProjector journalProjector) {
+        this.journalProjector = journalProjector;
+    }
+
+    /**
+     * Resets the counters to the parking table. Skipped while journaled gate events are not
+     * projected to the table, or get projected during the count: the table is then behind the
+     * counters, which are already right.
+     *
+     * @return false if the table could not be read or is behind the gate journal
+     */
+    public boolean reconcile() {
+        JournalProjector projector = journalProjector;
+        long projectedSequence = projector == null ? 0 : projector.getProjectedSequence();
+        if (projector != null && projector.getLag() != 0) {
+            logger.debug("Gate events are not projected yet, occupancy reconciliation skipped");
+            return false;
+        }
+        Map<ParkingType, Integer> counts = parkingSpotDAO.getAvailableSpotCounts();
+        if (counts == null) {
+            return false;
+        }
+        if (projector != null && (projector.getLag() != 0 || projector.getProjectedSequence() != projectedSequence)) {
+            logger.debug("Gate events were recorded during the count, occupancy reconciliation skipped");
+            return false;
+        }
+        reset(counts);
+        return true;
+    }
+
+    private void reset(Map<ParkingType, Integer> counts) {
+        for (Map.Entry<ParkingType, Integer> count : counts.entrySet()) {
+            long drift = occupancyCounters.reconcile(count.getKey(), count.getValue());
+            if (drift != 0 && reconciler != null) {
+                logger.warn("Free {} spot count was off by {}, reset to {}", count.getKey(), drift, count.getValue());
+            }
+        }
+    }
+
+    public long getAvailable(ParkingType parkingType) {
+        return occupancyCounters.getAvailable(parkingType);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder available = new StringBuilder("OccupancyService{");
+        for (ParkingType parkingType : ParkingType.values()) {
+            available.append(parkingType.ordinal() == 0 ? "" : ", ").append(parkingType).append('=').append(getAvailable(parkingType));
+        }
+        return available.append('}').toString();
+    }
+}
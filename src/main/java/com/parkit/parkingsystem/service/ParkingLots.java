@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.LotShardMap;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Every lot of a {@link LotShardMap} in one process: one connection pool per shard, and one
+ * {@link ParkingSystem} per lot on its shard's pool, with its own spot index, open tickets,
+ * caches and journals. Entries and exits are dispatched to the {@link ParkingService} of their
+ * lot, so lots never contend on each other's state and only share their shard's connections.
+ * Archival runs once per shard.
+ */
+public class ParkingLots implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingLots");
+
+    private final LotShardMap lotShardMap;
+    private final Map<String, DataBaseConfig> shards = new HashMap<>();
+    private final Map<Integer, ParkingSystem> lots = new TreeMap<>();
+    private final List<TicketArchiver> ticketArchivers = new ArrayList<>();
+
+    /**
+     * @param poolSize maximum number of open connections of each shard
+     */
+    public ParkingLots(LotShardMap lotShardMap, InputReaderUtil inputReaderUtil, int poolSize) {
+        this.lotShardMap = lotShardMap;
+        ParkingSystem.startMetrics();
+        for (String shard : lotShardMap.getShards()) {
+            DataBaseConfig dataBaseConfig = lotShardMap.newDataBaseConfig(shard);
+            dataBaseConfig.enablePool(poolSize, DataBaseConfig.DEFAULT_CONNECTION_TIMEOUT_MS, DataBaseConfig.DEFAULT_MAX_LIFETIME_MS);
+            shards.put(shard, dataBaseConfig);
+            TicketArchiver ticketArchiver = ParkingSystem.startTicketArchiver(dataBaseConfig);
+            if (ticketArchiver != null) {
+                ticketArchivers.add(ticketArchiver);
+            }
+        }
+        for (int lotId : lotShardMap.getLotIds()) {
+            lots.put(lotId, new ParkingSystem(inputReaderUtil, shards.get(lotShardMap.getShard(lotId)), lotId));
+        }
+        logger.info("Serving {} lots over {} shards", lots.size(), shards.size());
+    }
+
+    public Set<Integer> getLotIds() {
+        return lots.keySet();
+    }
+
+    /**
+     * @return the shard whose connection pool the lot uses, or null if this process does not serve the lot
+     */
+    public String getShard(int lotId) {
+        return lots.containsKey(lotId) ? lotShardMap.getShard(lotId) : null;
+    }
+
+    /**
+     * @return the lot's parking system, or null if this process does not serve the lot
+     */
+    public ParkingSystem getLot(int lotId) {
+        return lots.get(lotId);
+    }
+
+    /**
+     * @return the lot's parking service, or null if this process does not serve the lot
+     */
+    public ParkingService getParkingService(int lotId) {
+        ParkingSystem parkingSystem = lots.get(lotId);
+        return parkingSystem == null ? null : parkingSystem.getParkingService();
+    }
+
+    /**
+     * Stops the archival, closes every lot, then the shards' pools.
+     */
+    @Override
+    public void close() {
+        for (TicketArchiver ticketArchiver : ticketArchivers) {
+            ticketArchiver.close();
+        }
+        for (ParkingSystem parkingSystem : lots.values()) {
+            parkingSystem.close();
+        }
+        for (DataBaseConfig dataBaseConfig : shards.values()) {
+            dataBaseConfig.shutdownPool();
+        }
+        Metrics.stopLogDump();
+    }
+}
@@ -3,22 +3,42 @@ package com.parkit.parkingsystem.service;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.journal.GateEvent;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.GateSnapshot;
+import com.parkit.parkingsystem.journal.JournalProjector;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
+import com.parkit.parkingsystem.util.PlateCodec;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
-    private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private static final Timer ENTER_VEHICLE_TIMER = Metrics.timer("ParkingService.enterVehicle");
+    private static final Timer EXIT_VEHICLE_TIMER = Metrics.timer("ParkingService.exitVehicle");
+    private static final Timer CALCULATE_FARE_TIMER = Metrics.timer("ParkingService.calculateFare");
+
+    private FareCalculatorService fareCalculatorService = new FareCalculatorService();
     private InputReaderUtil inputReaderUtil;
     private ParkingSpotDAO parkingSpotDAO;
     private  TicketDAO ticketDAO;
+    private GateJournal gateJournal;
+    // held shared by every entry and exit, exclusively while the gate state is copied
+    private final ReadWriteLock gateLock = new ReentrantReadWriteLock();
 
     public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
         this.inputReaderUtil = inputReaderUtil;
@@ -26,39 +46,270 @@ public class ParkingService {
         this.ticketDAO = ticketDAO;
     }
 
-    public void processIncomingVehicle() {
+    public void setFareCalculatorService(FareCalculatorService fareCalculatorService) {
+        this.fareCalculatorService = fareCalculatorService;
+    }
+
+    /**
+     * Records entries and exits in the gate journal instead of the DB, for every plate the open
+     * ticket store can hold: spots come from the free-spot index, open tickets from the store,
+     * and a {@link com.parkit.parkingsystem.journal.JournalProjector} writes them to the DB
+     * later. Both the index and the store must be loaded. Other plates still go to the DB.
+     */
+    public void setGateJournal(GateJournal gateJournal) {
+        this.gateJournal = gateJournal;
+    }
+
+    /**
+     * Applies an event of the gate journal that is not in the DB yet to the free-spot index and
+     * the open ticket store, once they were loaded from the DB or a gate snapshot at startup.
+     */
+    public void restoreJournaledEvent(GateEvent event) {
+        switch (event.getType()) {
+            case ENTER: {
+                ParkingSpot parkingSpot = new ParkingSpot(event.getParkingNumber(), event.getParkingType(), false);
+                parkingSpotDAO.updateJournaledSlot(parkingSpot);
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(parkingSpot);
+                ticket.setVehicleRegNumber(event.getVehicleRegNumber());
+                ticket.setPrice(0);
+                ticket.setInTime(new Date(event.getInTimeMillis()));
+                ticket.setVehicleTicketCount(event.getVehicleTicketCount());
+                ticketDAO.storeJournaledTicket(ticket, true);
+                break;
+            }
+            case EXIT: {
+                Ticket ticket = ticketDAO.getJournaledOpenTicket(event.getVehicleRegNumber());
+                if (ticket != null && JournalProjector.isSameStay(ticket, event)) {
+                    ticketDAO.removeJournaledTicket(ticket);
+                    parkingSpotDAO.updateJournaledSlot(new ParkingSpot(event.getParkingNumber(), event.getParkingType(), true));
+                }
+                break;
+            }
+            default: break;
+        }
+    }
 
+    /**
+     * Copies the free-spot index and the open ticket store once the entries and exits in
+     * progress are done, together with the sequence of the last journaled event they include.
+     *
+     * @return the snapshot, or null if there is no gate journal, entries and exits were still
+     * running after {@code timeoutMs}, or the index or the store is not loaded
+     */
+    public GateSnapshot captureGateSnapshot(long timeoutMs) throws InterruptedException {
+        if (gateJournal == null) {
+            return null;
+        }
+        Lock lock = gateLock.writeLock();
+        if (!lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        try {
+            List<ParkingSpot> parkingSpots = parkingSpotDAO.getIndexedParkingSpots();
+            List<Ticket> openTickets = ticketDAO.getStoredOpenTickets();
+            if (parkingSpots == null || openTickets == null) {
+                return null;
+            }
+            return new GateSnapshot(gateJournal.getNextSequence() - 1, parkingSpots, openTickets);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isJournaled(String vehicleRegNumber) {
+        return gateJournal != null && PlateCodec.encode(vehicleRegNumber) != PlateCodec.NOT_ENCODABLE;
+    }
+
+    public void processIncomingVehicle() {
+        ParkingSpot parkingSpot = null;
+        gateLock.readLock().lock();
         try{
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
+            parkingSpot = getNextParkingNumberIfAvailable();
             if(parkingSpot !=null && parkingSpot.getId() > 0){
                 String vehicleRegNumber = getVehichleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);
-
-                int nbTickets = ticketDAO.getNbTicket(vehicleRegNumber);
+                Date inTime = new Date();
+                Ticket ticket = enterVehicle(parkingSpot, vehicleRegNumber, inTime);
+                if (ticket == null) {
+                    System.out.println("No parking spot could be reserved. Parking slots might be full");
+                    return;
+                }
 
-                if (nbTickets > 0) {
+                if (ticket.getVehicleTicketCount() > 1) {
                     System.out.println("Bienvenue à nouveau ! Nous sommes ravis de vous revoir.");
                 } else {
                     System.out.println("Bienvenue ! C'est votre première visite.");
                 }
-
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
                 System.out.println("Generated Ticket and saved in DB");
                 System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
                 System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber+" is:" + inTime);
             }
         }catch(Exception e){
             logger.error("Unable to process incoming vehicle",e);
+            if (parkingSpot != null && parkingSpot.isAvailable()) {
+                parkingSpotDAO.releaseSlot(parkingSpot);
+            }
+        }finally {
+            gateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Parks a vehicle without prompting, for replayed gate events.
+     *
+     * @return the saved ticket, or null if no spot of that type could be reserved or saving failed
+     */
+    public Ticket processIncomingVehicle(String vehicleRegNumber, ParkingType parkingType, Date inTime) {
+        ParkingSpot parkingSpot = null;
+        gateLock.readLock().lock();
+        try {
+            int parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
+            if (parkingNumber <= 0) {
+                return null;
+            }
+            parkingSpot = new ParkingSpot(parkingNumber, parkingType, true);
+            return enterVehicle(parkingSpot, vehicleRegNumber, inTime);
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicle", e);
+            if (parkingSpot != null && parkingSpot.isAvailable()) {
+                parkingSpotDAO.releaseSlot(parkingSpot);
+            }
+            return null;
+        } finally {
+            gateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the saved ticket, with the vehicle ticket count including it, or null if the spot could not be
+     * reserved or the ticket could not be saved, in which case the spot is freed again
+     */
+    private Ticket enterVehicle(ParkingSpot parkingSpot, String vehicleRegNumber, Date inTime) {
+        long start = ENTER_VEHICLE_TIMER.start();
+        Ticket ticket = null;
+        try {
+            if (isJournaled(vehicleRegNumber)) {
+                ticket = journalEntry(parkingSpot, vehicleRegNumber, inTime);
+                return ticket;
+            }
+            if (!claimParkingSpot(parkingSpot)) {
+                return null;
+            }
+            int nbTickets = ticketDAO.getNbTicket(vehicleRegNumber);
+
+            ticket = new Ticket();
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(inTime);
+            ticket.setOutTime(null);
+            // 0 when the count is unknown, it is then read again at exit
+            ticket.setVehicleTicketCount(nbTickets < 0 ? 0 : nbTickets + 1);
+            if (!ticketDAO.saveTicket(ticket)) {
+                logger.error("Unable to save the ticket of {}, freeing spot {}", vehicleRegNumber, parkingSpot.getId());
+                parkingSpot.setAvailable(true);
+                parkingSpotDAO.updateParking(parkingSpot);
+                ticket = null;
+            }
+            return ticket;
+        } finally {
+            if (ticket == null) {
+                ENTER_VEHICLE_TIMER.failed();
+            }
+            ENTER_VEHICLE_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Journals the entry into the spot handed out by the free-spot index.
+     *
+     * @return the ticket, not in the DB yet, or null if the journal could not be written
+     */
+    private Ticket journalEntry(ParkingSpot parkingSpot, String vehicleRegNumber, Date inTime) {
+        int nbTickets = ticketDAO.getNbTicket(vehicleRegNumber);
+        // journaled as 0 when the count is unknown, it is then counted at exit
+        int vehicleTicketCount = nbTickets < 0 ? 0 : nbTickets + 1;
+        try {
+            gateJournal.append(GateEvent.enter(vehicleRegNumber, parkingSpot.getId(), parkingSpot.getParkingType(),
+                    inTime.getTime(), vehicleTicketCount));
+        } catch (IOException e) {
+            logger.error("Unable to journal the entry of " + vehicleRegNumber, e);
+            parkingSpotDAO.releaseSlot(parkingSpot);
+            return null;
         }
+        parkingSpot.setAvailable(false);
+        parkingSpotDAO.updateJournaledSlot(parkingSpot);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(inTime);
+        ticket.setOutTime(null);
+        ticket.setVehicleTicketCount(vehicleTicketCount);
+        ticketDAO.storeJournaledTicket(ticket, true);
+        return ticket;
+    }
+
+    /**
+     * Journals the exit and the fare of a vehicle whose open ticket was taken from the store.
+     *
+     * @return false if another gate let the vehicle out first or the journal could not be written
+     */
+    private boolean journalExit(Ticket ticket) {
+        if (!ticketDAO.removeJournaledTicket(ticket)) {
+            return false;
+        }
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        try {
+            gateJournal.append(
+                    GateEvent.exit(ticket.getVehicleRegNumber(), parkingSpot.getId(), parkingSpot.getParkingType(),
+                            ticket.getInTime().getTime(), ticket.getOutTime().getTime()),
+                    GateEvent.price(ticket.getVehicleRegNumber(), parkingSpot.getId(), parkingSpot.getParkingType(),
+                            ticket.getInTime().getTime(), ticket.getOutTime().getTime(), ticket.getPrice()));
+        } catch (IOException e) {
+            logger.error("Unable to journal the exit of " + ticket.getVehicleRegNumber(), e);
+            ticketDAO.storeJournaledTicket(ticket, false);
+            return false;
+        }
+        parkingSpot.setAvailable(true);
+        parkingSpotDAO.updateJournaledSlot(parkingSpot);
+        return true;
+    }
+
+    /**
+     * @return 1 if the vehicle is parked, 0 if it is not, or -1 if that could not be looked up
+     */
+    public int countOpenTickets(String vehicleRegNumber) {
+        if (isJournaled(vehicleRegNumber)) {
+            return ticketDAO.getJournaledOpenTicket(vehicleRegNumber) != null ? 1 : 0;
+        }
+        return ticketDAO.countOpenTickets(vehicleRegNumber);
+    }
+
+    /**
+     * @return the vehicle's open ticket, from the open ticket store for journaled plates
+     */
+    private Ticket getOpenTicket(String vehicleRegNumber) {
+        if (isJournaled(vehicleRegNumber)) {
+            return ticketDAO.getJournaledOpenTicket(vehicleRegNumber);
+        }
+        return ticketDAO.getOpenTicket(vehicleRegNumber);
+    }
+
+    /**
+     * Occupies the proposed spot in the DB, or the next free one of the same type if another
+     * gate took it in the meantime.
+     */
+    private boolean claimParkingSpot(ParkingSpot parkingSpot) {
+        if (!parkingSpotDAO.claimParkingSpot(parkingSpot)) {
+            int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(parkingSpot.getParkingType());
+            if (parkingNumber <= 0) {
+                return false;
+            }
+            parkingSpot.setId(parkingNumber);
+        }
+        parkingSpot.setAvailable(false);
+        return true;
     }
 
     private String getVehichleRegNumber() throws Exception {
@@ -114,31 +365,84 @@ public class ParkingService {
     }
 
     public void processExitingVehicle() {
+        gateLock.readLock().lock();
         try{
             String vehicleRegNumber = getVehichleRegNumber();
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
+            Ticket ticket = getOpenTicket(vehicleRegNumber);
+            if (ticket == null) {
+                System.out.println("No parked vehicle found for registration number:" + vehicleRegNumber);
+                return;
+            }
             Date outTime = new Date();
-            ticket.setOutTime(outTime);
+            if(exitVehicle(ticket, outTime)) {
+                System.out.println("Please pay the parking fare:" + ticket.getPrice());
+                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
+            }else{
+                System.out.println("Unable to update ticket information. Error occurred");
+            }
+        }catch(Exception e){
+            logger.error("Unable to process exiting vehicle",e);
+        }finally {
+            gateLock.readLock().unlock();
+        }
+    }
 
-            int nbTickets = ticketDAO.getNbTicket(vehicleRegNumber);
+    /**
+     * Prices and closes the open ticket of a vehicle without prompting, for replayed gate events.
+     *
+     * @return the closed ticket, or null if the vehicle has no open ticket or closing it failed
+     */
+    public Ticket processExitingVehicle(String vehicleRegNumber, Date outTime) {
+        gateLock.readLock().lock();
+        try {
+            Ticket ticket = getOpenTicket(vehicleRegNumber);
+            if (ticket == null || !exitVehicle(ticket, outTime)) {
+                return null;
+            }
+            return ticket;
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle", e);
+            return null;
+        } finally {
+            gateLock.readLock().unlock();
+        }
+    }
+
+    private boolean exitVehicle(Ticket ticket, Date outTime) {
+        long start = EXIT_VEHICLE_TIMER.start();
+        boolean closed = false;
+        try {
+            ticket.setOutTime(outTime);
+            if (ticket.getVehicleTicketCount() <= 0) {
+                // entered while the count could not be read
+                ticket.setVehicleTicketCount(ticketDAO.getNbTicketUpTo(ticket));
+            }
 
-            if(nbTickets > 1){
+            long fareStart = CALCULATE_FARE_TIMER.start();
+            if(ticket.getVehicleTicketCount() > 1){
                 fareCalculatorService.calculateFare(ticket, true);
             }else {
                 fareCalculatorService.calculateFare(ticket, false);
             }
+            CALCULATE_FARE_TIMER.stop(fareStart);
 
-            if(ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-            }else{
-                System.out.println("Unable to update ticket information. Error occurred");
+            if (isJournaled(ticket.getVehicleRegNumber())) {
+                closed = journalExit(ticket);
+                return closed;
             }
-        }catch(Exception e){
-            logger.error("Unable to process exiting vehicle",e);
+            if (!ticketDAO.closeTicket(ticket)) {
+                return false;
+            }
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            parkingSpotDAO.releaseSlot(parkingSpot);
+            closed = true;
+            return true;
+        } finally {
+            if (!closed) {
+                EXIT_VEHICLE_TIMER.failed();
+            }
+            EXIT_VEHICLE_TIMER.stop(start);
         }
     }
 }
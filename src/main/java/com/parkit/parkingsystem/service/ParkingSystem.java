@@ -0,0 +1,347 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.dao.GateProjectionDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.RevenueAggregateDAO;
+import com.parkit.parkingsystem.dao.RevenueAggregator;
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import com.parkit.parkingsystem.journal.GateEvent;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.GateSnapshot;
+import com.parkit.parkingsystem.journal.JournalProjector;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wires one pooled {@link DataBaseConfig}, the DAOs and their caches, and the tariff into a
+ * {@link ParkingService}, the same way for the shell, the replay mode and the gate server.
+ * A process serving several lots runs one per lot through {@link ParkingLots}; each then keeps
+ * its journals next to the configured path, suffixed with {@code -lot<id>}.
+ * <ul>
+ * <li>-Dparkit.ticketJournal=&lt;file&gt; turns on batched write-behind of new tickets</li>
+ * <li>-Dparkit.gateJournal=&lt;directory&gt; records entries and exits in the gate journal and
+ * projects them to the DB every -Dparkit.gateJournal.projectIntervalMs ms, 100 by default;
+ * -Dparkit.gateJournal.force=true syncs every entry and exit to disk. The gates' state is saved
+ * to a snapshot every -Dparkit.gateJournal.snapshotIntervalMs ms, 10 s by default, so that they
+ * can start and keep parking vehicles while the DB is unreachable</li>
+ * <li>-Dparkit.tariffFile=&lt;file&gt; prices with that tariff, reloaded whenever the file changes</li>
+ * <li>-Dparkit.metrics=true records latencies from the start, they can also be switched on over JMX;
+ * they are logged every -Dparkit.metrics.logIntervalMs ms, 60 s by default</li>
+ * <li>closed tickets are added to the hourly revenue table every -Dparkit.revenue.flushIntervalMs
+ * ms, 10 s by default</li>
+ * <li>-Dparkit.archive.retentionDays=&lt;days&gt; moves the tickets closed more than that many days ago
+ * to the archive every -Dparkit.archive.intervalMs ms, 1 h by default, in batches of
+ * -Dparkit.archive.batchSize tickets, 1000 by default</li>
+ * <li>-Dparkit.shardMap=&lt;file&gt; makes the gate server serve every lot of that
+ * {@link com.parkit.parkingsystem.config.LotShardMap}, and the export and revenue commands
+ * connect to the database of their lot's shard</li>
+ * </ul>
+ */
+public class ParkingSystem implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingSystem");
+
+    private static final int VISIT_COUNT_CACHE_SIZE = 10_000;
+    private static final long VISIT_COUNT_CACHE_TTL_MS = 60 * 60 * 1000;
+    private static final long TARIFF_CHECK_INTERVAL_MS = 10 * 1000;
+    private static final long OCCUPANCY_RECONCILE_INTERVAL_MS = 60 * 1000;
+    private static final long METRICS_LOG_INTERVAL_MS = 60 * 1000;
+    private static final int EXPECTED_OPEN_TICKETS = 1024;
+    private static final long REVENUE_FLUSH_INTERVAL_MS = 10 * 1000;
+    private static final long JOURNAL_PROJECT_INTERVAL_MS = 100;
+    private static final long GATE_SNAPSHOT_INTERVAL_MS = 10 * 1000;
+    private static final long GATE_SNAPSHOT_LOCK_TIMEOUT_MS = 100;
+    private static final long ARCHIVE_INTERVAL_MS = 60 * 60 * 1000;
+    private static final int ARCHIVE_BATCH_SIZE = 1000;
+    private static final long ARCHIVE_BATCH_PAUSE_MS = 50;
+
+    private final DataBaseConfig dataBaseConfig;
+    // false when the pool, the metrics and the archival belong to ParkingLots
+    private final boolean standalone;
+    private final int lotId;
+    private final ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+    private final TicketDAO ticketDAO = new TicketDAO();
+    private final TariffService tariffService = new TariffService();
+    private final OccupancyService occupancyService = new OccupancyService(parkingSpotDAO, ticketDAO);
+    private final ParkingService parkingService;
+    private GateJournal gateJournal;
+    private JournalProjector journalProjector;
+    private Path gateSnapshotFile;
+    private ScheduledExecutorService gateSnapshotWriter;
+    private TicketArchiver ticketArchiver;
+
+    /**
+     * Serves the default lot of the configured database, with a pool of its own.
+     */
+    public ParkingSystem(InputReaderUtil inputReaderUtil, int poolSize) {
+        this(inputReaderUtil, newPooledDataBaseConfig(poolSize), DBConstants.DEFAULT_LOT_ID, true);
+    }
+
+    /**
+     * Serves one lot of a shard, whose pool is shared with the other lots of the shard and left
+     * open by {@link #close()}.
+     */
+    public ParkingSystem(InputReaderUtil inputReaderUtil, DataBaseConfig shardDataBaseConfig, int lotId) {
+        this(inputReaderUtil, shardDataBaseConfig, lotId, false);
+    }
+
+    private ParkingSystem(InputReaderUtil inputReaderUtil, DataBaseConfig dataBaseConfig, int lotId, boolean standalone) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.lotId = lotId;
+        this.standalone = standalone;
+        if (standalone) {
+            startMetrics();
+        }
+        parkingSpotDAO.lotId = lotId;
+        ticketDAO.lotId = lotId;
+        RevenueAggregateDAO revenueAggregateDAO = new RevenueAggregateDAO();
+        revenueAggregateDAO.dataBaseConfig = dataBaseConfig;
+        revenueAggregateDAO.lotId = lotId;
+        ticketDAO.revenueAggregator = new RevenueAggregator(revenueAggregateDAO,
+                Long.getLong("parkit.revenue.flushIntervalMs", REVENUE_FLUSH_INTERVAL_MS));
+        String gateJournalDirectory = System.getProperty("parkit.gateJournal");
+        if (gateJournalDirectory != null) {
+            // projected before the in-memory state is loaded from the DB
+            openGateJournal(lotPath(gateJournalDirectory));
+        }
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadParkingSpotIndex();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.visitCountCache = new VisitCountCache(VISIT_COUNT_CACHE_SIZE, VISIT_COUNT_CACHE_TTL_MS);
+        ticketDAO.warmVisitCountCache(VISIT_COUNT_CACHE_SIZE);
+        occupancyService.start(OCCUPANCY_RECONCILE_INTERVAL_MS);
+        String ticketJournal = System.getProperty("parkit.ticketJournal");
+        if (ticketJournal != null) {
+            try {
+                ticketDAO.ticketWriteBehind = new TicketWriteBehind(ticketDAO, lotPath(ticketJournal), 100, 1000);
+            } catch (IOException e) {
+                logger.error("Unable to open ticket journal, tickets will be saved directly", e);
+            }
+        }
+        ticketDAO.loadOpenTicketStore(EXPECTED_OPEN_TICKETS);
+        String tariffFile = System.getProperty("parkit.tariffFile");
+        if (tariffFile != null) {
+            tariffService.startAutoReload(Paths.get(tariffFile), TARIFF_CHECK_INTERVAL_MS);
+        }
+        parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        parkingService.setFareCalculatorService(new FareCalculatorService(tariffService, String.valueOf(lotId)));
+        if (journalProjector != null) {
+            startGateJournal();
+            occupancyService.setJournalProjector(journalProjector);
+        }
+        if (standalone) {
+            ticketArchiver = startTicketArchiver(dataBaseConfig);
+        }
+    }
+
+    private static DataBaseConfig newPooledDataBaseConfig(int poolSize) {
+        DataBaseConfig dataBaseConfig = new DataBaseConfig();
+        dataBaseConfig.enablePool(poolSize, DataBaseConfig.DEFAULT_CONNECTION_TIMEOUT_MS, DataBaseConfig.DEFAULT_MAX_LIFETIME_MS);
+        return dataBaseConfig;
+    }
+
+    static void startMetrics() {
+        Metrics.registerMBean();
+        Metrics.startLogDump(Long.getLong("parkit.metrics.logIntervalMs", METRICS_LOG_INTERVAL_MS));
+    }
+
+    /**
+     * Starts archiving the tickets of every lot of the database when -Dparkit.archive.retentionDays is set.
+     *
+     * @return the running archiver, or null if archival is off
+     */
+    static TicketArchiver startTicketArchiver(DataBaseConfig dataBaseConfig) {
+        Integer retentionDays = Integer.getInteger("parkit.archive.retentionDays");
+        if (retentionDays == null) {
+            return null;
+        }
+        TicketArchiveDAO ticketArchiveDAO = new TicketArchiveDAO();
+        ticketArchiveDAO.dataBaseConfig = dataBaseConfig;
+        TicketArchiver ticketArchiver = new TicketArchiver(ticketArchiveDAO, retentionDays,
+                Integer.getInteger("parkit.archive.batchSize", ARCHIVE_BATCH_SIZE), ARCHIVE_BATCH_PAUSE_MS);
+        ticketArchiver.start(Long.getLong("parkit.archive.intervalMs", ARCHIVE_INTERVAL_MS));
+        return ticketArchiver;
+    }
+
+    private Path lotPath(String path) {
+        return standalone ? Paths.get(path) : Paths.get(path + "-lot" + lotId);
+    }
+
+    private void openGateJournal(Path directory) {
+        try {
+            gateJournal = new GateJournal(directory, GateJournal.DEFAULT_SEGMENT_RECORDS,
+                    Boolean.getBoolean("parkit.gateJournal.force"));
+            // straight to the DB, the gates keep the caches up to date
+            GateProjectionDAO gateProjectionDAO = new GateProjectionDAO();
+            gateProjectionDAO.dataBaseConfig = dataBaseConfig;
+            gateProjectionDAO.lotId = lotId;
+            gateProjectionDAO.revenueAggregator = ticketDAO.revenueAggregator;
+            journalProjector = new JournalProjector(gateJournal, gateProjectionDAO);
+            gateSnapshotFile = directory.resolve("snapshot");
+            // events after the last snapshot are kept until the next one
+            journalProjector.setRetainedSequence(Files.exists(gateSnapshotFile) ? readGateSnapshotSequence() : 0);
+            if (!journalProjector.catchUp()) {
+                logger.warn("{} gate events could not be projected yet", journalProjector.getLag());
+            }
+        } catch (IOException e) {
+            logger.error("Unable to open gate journal " + directory + ", entries and exits will be saved directly", e);
+            if (gateJournal != null) {
+                gateJournal.close();
+                gateJournal = null;
+            }
+        }
+    }
+
+    private long readGateSnapshotSequence() {
+        try {
+            return GateSnapshot.read(gateSnapshotFile).getSequence();
+        } catch (IOException e) {
+            logger.warn("Unable to read gate snapshot " + gateSnapshotFile, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Brings the in-memory state up to the journal, then hands entries and exits over to it.
+     * The state comes from the DB when it could be read, otherwise from the gate snapshot.
+     */
+    private void startGateJournal() {
+        try {
+            long restoredSequence = journalProjector.getProjectedSequence();
+            if (parkingSpotDAO.parkingSpotIndex == null || ticketDAO.openTicketStore == null || restoredSequence < 0) {
+                restoredSequence = restoreGateSnapshot();
+            }
+            if (restoredSequence >= 0) {
+                for (GateEvent event : gateJournal.readAfter(restoredSequence)) {
+                    parkingService.restoreJournaledEvent(event);
+                }
+                parkingService.setGateJournal(gateJournal);
+            }
+        } catch (IOException e) {
+            logger.error("Unable to read the gate journal, entries and exits will be saved directly", e);
+        }
+        journalProjector.start(Long.getLong("parkit.gateJournal.projectIntervalMs", JOURNAL_PROJECT_INTERVAL_MS));
+        long snapshotIntervalMs = Long.getLong("parkit.gateJournal.snapshotIntervalMs", GATE_SNAPSHOT_INTERVAL_MS);
+        gateSnapshotWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gate-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        gateSnapshotWriter.scheduleWithFixedDelay(this::saveGateSnapshot, snapshotIntervalMs, snapshotIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replaces the index and the store with those of the gate snapshot, for a start without the DB.
+     *
+     * @return the sequence of the snapshot, or -1 if there is none
+     */
+    private long restoreGateSnapshot() {
+        if (!Files.exists(gateSnapshotFile)) {
+            logger.error("The DB is unreachable and there is no gate snapshot, entries and exits will be saved directly");
+            return -1;
+        }
+        try {
+            GateSnapshot snapshot = GateSnapshot.read(gateSnapshotFile);
+            parkingSpotDAO.restoreParkingSpotIndex(snapshot.getParkingSpots());
+            ticketDAO.restoreOpenTicketStore(snapshot.getOpenTickets(), EXPECTED_OPEN_TICKETS);
+            logger.warn("The DB is unreachable, gates started from the snapshot of gate event {}", snapshot.getSequence());
+            return snapshot.getSequence();
+        } catch (IOException e) {
+            logger.error("The DB is unreachable and the gate snapshot could not be read, "
+                    + "entries and exits will be saved directly", e);
+            return -1;
+        }
+    }
+
+    private void saveGateSnapshot() {
+        try {
+            GateSnapshot snapshot = parkingService.captureGateSnapshot(GATE_SNAPSHOT_LOCK_TIMEOUT_MS);
+            if (snapshot == null) {
+                logger.debug("Gate snapshot skipped");
+                return;
+            }
+            snapshot.write(gateSnapshotFile);
+            journalProjector.setRetainedSequence(snapshot.getSequence());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Unable to save gate snapshot " + gateSnapshotFile, e);
+        }
+    }
+
+    public ParkingService getParkingService() {
+        return parkingService;
+    }
+
+    public ParkingSpotDAO getParkingSpotDAO() {
+        return parkingSpotDAO;
+    }
+
+    public TicketDAO getTicketDAO() {
+        return ticketDAO;
+    }
+
+    public OccupancyService getOccupancyService() {
+        return occupancyService;
+    }
+
+    public DataBaseConfig getDataBaseConfig() {
+        return dataBaseConfig;
+    }
+
+    public int getLotId() {
+        return lotId;
+    }
+
+    /**
+     * Stops the archival, flushes pending tickets, gate events and revenue, stops the tariff reload
+     * and closes the connection pool, unless it is shared with other lots.
+     */
+    @Override
+    public void close() {
+        if (ticketArchiver != null) {
+            ticketArchiver.close();
+        }
+        if (gateSnapshotWriter != null) {
+            gateSnapshotWriter.shutdownNow();
+            saveGateSnapshot();
+        }
+        if (journalProjector != null) {
+            journalProjector.close();
+            gateJournal.close();
+        }
+        if (ticketDAO.ticketWriteBehind != null) {
+            try {
+                ticketDAO.ticketWriteBehind.close();
+            } catch (IOException e) {
+                logger.error("Error closing ticket journal", e);
+            }
+        }
+        ticketDAO.revenueAggregator.close();
+        tariffService.stopAutoReload();
+        occupancyService.close();
+        logger.info("Visit count cache stats of lot {}: {}", lotId, ticketDAO.visitCountCache);
+        if (standalone) {
+            dataBaseConfig.shutdownPool();
+            Metrics.stopLogDump();
+        }
+    }
+}
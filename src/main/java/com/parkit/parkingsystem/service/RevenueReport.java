@@ -0,0 +1,94 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.LotShardMap;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.RevenueAggregateDAO;
+import com.parkit.parkingsystem.model.RevenueBucket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hourly revenue and occupancy per parking type for management, read from the revenue_hourly
+ * table kept by {@link com.parkit.parkingsystem.dao.RevenueAggregator}, see
+ * {@link RevenueAggregateDAO}.
+ */
+public class RevenueReport {
+
+    private static final Logger logger = LogManager.getLogger("RevenueReport");
+
+    private RevenueReport() {
+    }
+
+    /**
+     * Recomputes the lot's buckets from {@code from} to the day before {@code to} from the ticket
+     * history, over a single unpooled connection to the lot's database.
+     */
+    public static void runBackfill(LocalDate from, LocalDate to, int lotId) {
+        RevenueAggregateDAO revenueAggregateDAO = newRevenueAggregateDAO(lotId);
+        if (revenueAggregateDAO == null) {
+            return;
+        }
+        int rebuilt = revenueAggregateDAO.rebuild(toDate(from), toDate(to));
+        if (rebuilt < 0) {
+            System.out.println("Revenue backfill failed, the stored buckets were left unchanged");
+        } else {
+            System.out.println("Rebuilt " + rebuilt + " revenue buckets from " + from + " to " + to);
+        }
+    }
+
+    /**
+     * Prints the lot's buckets from {@code from} to the day before {@code to}, then the totals
+     * per parking type.
+     *
+     * @param parkingType null for every type
+     */
+    public static void runReport(LocalDate from, LocalDate to, ParkingType parkingType, int lotId) {
+        RevenueAggregateDAO revenueAggregateDAO = newRevenueAggregateDAO(lotId);
+        if (revenueAggregateDAO == null) {
+            return;
+        }
+        List<RevenueBucket> buckets = revenueAggregateDAO.getBuckets(toDate(from), toDate(to), parkingType);
+        if (buckets == null) {
+            System.out.println("Unable to read the revenue buckets");
+            return;
+        }
+        Map<ParkingType, RevenueBucket> totals = new EnumMap<>(ParkingType.class);
+        for (RevenueBucket bucket : buckets) {
+            System.out.println(bucket);
+            totals.computeIfAbsent(bucket.getParkingType(), type -> new RevenueBucket(toDate(from), type)).add(bucket);
+        }
+        for (RevenueBucket total : totals.values()) {
+            System.out.println(String.format("Total %s from %s to %s: revenue=%.2f closedTickets=%d",
+                    total.getParkingType(), from, to, total.getRevenue(), total.getClosedTickets()));
+        }
+    }
+
+    /**
+     * @return a DAO over the lot's database, its shard's with -Dparkit.shardMap, or null if it
+     * could not be found
+     */
+    private static RevenueAggregateDAO newRevenueAggregateDAO(int lotId) {
+        RevenueAggregateDAO revenueAggregateDAO = new RevenueAggregateDAO();
+        try {
+            revenueAggregateDAO.dataBaseConfig = LotShardMap.newDataBaseConfig(System.getProperty("parkit.shardMap"), lotId);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to find the database of lot " + lotId, e);
+            System.out.println("Unable to find the database of lot " + lotId);
+            return null;
+        }
+        revenueAggregateDAO.lotId = lotId;
+        return revenueAggregateDAO;
+    }
+
+    private static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
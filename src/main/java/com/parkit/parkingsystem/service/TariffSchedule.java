@@ -0,0 +1,132 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Immutable, precompiled price schedule of one lot. Each parking type has an hourly rate for
+ * each of the 168 hours of the week, Monday 00:00 first, plus a running total of those rates.
+ * A stay is priced in O(1) as the difference of the running total at out time and at in time,
+ * whatever the number of tariff rules it was compiled from.
+ */
+public final class TariffSchedule {
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+
+    static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+    private static final long MILLIS_PER_WEEK = HOURS_PER_WEEK * MILLIS_PER_HOUR;
+    // 1970-01-01 was a Thursday, shift so that week buckets start on Monday
+    private static final long EPOCH_TO_MONDAY_MILLIS = 3 * 24 * MILLIS_PER_HOUR;
+    private static final long ROUNDING_DENOMINATOR = MILLIS_PER_HOUR * 100;
+
+    /**
+     * Flat schedule built from the {@link Fare} constants.
+     */
+    public static final TariffSchedule DEFAULT = flat(TimeZone.getDefault());
+
+    private final TimeZone timeZone;
+    private final long freeDurationMillis;
+    private final long discountPercent;
+    // [type][hour of week], cents per hour
+    private final long[][] ratesCentsPerHour;
+    // [type][hour of week], sum of rate * MILLIS_PER_HOUR over the previous hours of the week
+    private final long[][] weekToDate;
+    private final long[] weekTotal;
+    private final boolean flat;
+
+    TariffSchedule(TimeZone timeZone, long freeDurationMillis, long discountPercent, long[][] ratesCentsPerHour) {
+        this.timeZone = timeZone;
+        this.freeDurationMillis = freeDurationMillis;
+        this.discountPercent = discountPercent;
+        this.ratesCentsPerHour = ratesCentsPerHour;
+        this.weekToDate = new long[ratesCentsPerHour.length][HOURS_PER_WEEK];
+        this.weekTotal = new long[ratesCentsPerHour.length];
+        boolean allFlat = true;
+        for (int type = 0; type < ratesCentsPerHour.length; type++) {
+            long total = 0;
+            for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+                weekToDate[type][hour] = total;
+                total += ratesCentsPerHour[type][hour] * MILLIS_PER_HOUR;
+                allFlat &= ratesCentsPerHour[type][hour] == ratesCentsPerHour[type][0];
+            }
+            weekTotal[type] = total;
+        }
+        this.flat = allFlat;
+    }
+
+    static TariffSchedule flat(TimeZone timeZone) {
+        long[][] rates = new long[ParkingType.values().length][HOURS_PER_WEEK];
+        Arrays.fill(rates[ParkingType.CAR.ordinal()], Fare.CAR_RATE_CENTS_PER_HOUR);
+        Arrays.fill(rates[ParkingType.BIKE.ordinal()], Fare.BIKE_RATE_CENTS_PER_HOUR);
+        return new TariffSchedule(timeZone, Fare.FREE_DURATION_MILLIS, Fare.RECURRING_USER_DISCOUNT_PERCENT, rates);
+    }
+
+    /**
+     * Prices a stay in cents, rounded half-up once after the discount. Free up to the free
+     * duration, then each millisecond is billed at the rate of the hour of the week it falls in,
+     * in this schedule's time zone.
+     */
+    public long priceCents(long inTimeMillis, long outTimeMillis, int parkingTypeOrdinal, boolean discount) {
+        if (outTimeMillis < inTimeMillis) {
+            throw new IllegalArgumentException("Out time provided is incorrect: before in time");
+        }
+        if (parkingTypeOrdinal < 0 || parkingTypeOrdinal >= ratesCentsPerHour.length) {
+            throw new IllegalArgumentException("Unknown Parking Type");
+        }
+        if (outTimeMillis - inTimeMillis <= freeDurationMillis) {
+            return 0;
+        }
+        // both ends use the in-time offset so a DST change never bills an hour more or less
+        long offsetMillis = timeZone.getOffset(inTimeMillis);
+        long centMillis = runningTotal(outTimeMillis + offsetMillis, parkingTypeOrdinal)
+                - runningTotal(inTimeMillis + offsetMillis, parkingTypeOrdinal);
+        long percent = discount ? 100 - discountPercent : 100;
+        return (centMillis * percent + ROUNDING_DENOMINATOR / 2) / ROUNDING_DENOMINATOR;
+    }
+
+    private long runningTotal(long localEpochMillis, int type) {
+        long localMillis = localEpochMillis + EPOCH_TO_MONDAY_MILLIS;
+        long weeks = Math.floorDiv(localMillis, MILLIS_PER_WEEK);
+        long inWeek = localMillis - weeks * MILLIS_PER_WEEK;
+        int hour = (int) (inWeek / MILLIS_PER_HOUR);
+        return weeks * weekTotal[type] + weekToDate[type][hour]
+                + ratesCentsPerHour[type][hour] * (inWeek - hour * MILLIS_PER_HOUR);
+    }
+
+    /**
+     * @return true when every hour of the week has the same rate for each type
+     */
+    public boolean isFlat() {
+        return flat;
+    }
+
+    /**
+     * @return the rate of the first hour of the week of each type, the rate of every hour when flat
+     */
+    long[] firstHourRatesCentsPerHour() {
+        long[] rates = new long[ratesCentsPerHour.length];
+        for (int type = 0; type < rates.length; type++) {
+            rates[type] = ratesCentsPerHour[type][0];
+        }
+        return rates;
+    }
+
+    public int getParkingTypeCount() {
+        return ratesCentsPerHour.length;
+    }
+
+    public long getRateCentsPerHour(int parkingTypeOrdinal, int hourOfWeek) {
+        return ratesCentsPerHour[parkingTypeOrdinal][hourOfWeek];
+    }
+
+    public long getFreeDurationMillis() {
+        return freeDurationMillis;
+    }
+
+    public long getDiscountPercent() {
+        return discountPercent;
+    }
+}
@@ -0,0 +1,296 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the compiled {@link TariffSchedule} of each lot. Tariff rules are compiled once when
+ * loaded, and a reload swaps the whole set of schedules atomically, so an exit in progress
+ * always prices with one consistent tariff and never evaluates rules itself.
+ *
+ * Tariff definitions are properties, rates in cents per hour:
+ * <pre>
+ * timezone=Europe/Paris
+ * free.minutes=30
+ * discount.percent=5
+ * rate.CAR=150
+ * rate.CAR.weekend=100
+ * rate.CAR.weekday.08-19=200
+ * lot.2.rate.BIKE=80
+ * </pre>
+ * A rate applies to every hour of the week, to a set of days (weekday, weekend, monday ...
+ * sunday), or to an hour range of those days, end hour excluded and wrapping past midnight.
+ * More specific rules win. Keys prefixed with {@code lot.<id>.} override the default lot for the
+ * lot whose numeric LOT_ID is {@code <id>}, as in the shard map.
+ */
+public class TariffService {
+
+    private static final Logger logger = LogManager.getLogger("TariffService");
+
+    public static final String DEFAULT_LOT = "default";
+
+    private static final String LOT_PREFIX = "lot.";
+    private static final String RATE_PREFIX = "rate.";
+    private static final String[] DAY_NAMES = {"monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"};
+
+    private final AtomicReference<Map<String, TariffSchedule>> schedules =
+            new AtomicReference<>(Collections.singletonMap(DEFAULT_LOT, TariffSchedule.DEFAULT));
+    private ScheduledExecutorService reloader;
+
+    public TariffSchedule getSchedule() {
+        return schedules.get().get(DEFAULT_LOT);
+    }
+
+    /**
+     * @param lotId the numeric LOT_ID of the lot, as a string
+     * @return the schedule of the lot, or the default one if the lot has no tariff of its own
+     */
+    public TariffSchedule getSchedule(String lotId) {
+        Map<String, TariffSchedule> current = schedules.get();
+        TariffSchedule schedule = current.get(lotId);
+        return schedule == null ? current.get(DEFAULT_LOT) : schedule;
+    }
+
+    /**
+     * Compiles the tariff definitions and swaps them in.
+     *
+     * @throws IllegalArgumentException if a definition is malformed, the current tariff is kept
+     */
+    public void load(Properties tariff) {
+        schedules.set(compile(tariff));
+    }
+
+    /**
+     * Reads, compiles and swaps in the tariff file.
+     *
+     * @return false if the file could not be read or compiled, the current tariff is kept
+     */
+    public boolean reload(Path tariffFile) {
+        try (Reader reader = Files.newBufferedReader(tariffFile, StandardCharsets.UTF_8)) {
+            Properties tariff = new Properties();
+            tariff.load(reader);
+            load(tariff);
+            logger.info("Tariff loaded from {}", tariffFile);
+            return true;
+        } catch (Exception e) {
+            logger.error("Error loading tariff from " + tariffFile + ", keeping the current tariff", e);
+            return false;
+        }
+    }
+
+    /**
+     * Loads the tariff file, then reloads it whenever its modification time changes.
+     */
+    public synchronized void startAutoReload(Path tariffFile, long checkIntervalMs) {
+        stopAutoReload();
+        reload(tariffFile);
+        AtomicReference<FileTime> loadedVersion = new AtomicReference<>(lastModified(tariffFile));
+        reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tariff-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(() -> {
+            FileTime version = lastModified(tariffFile);
+            if (version != null && !version.equals(loadedVersion.get()) && reload(tariffFile)) {
+                loadedVersion.set(version);
+            }
+        }, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopAutoReload() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+            reloader = null;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static Map<String, TariffSchedule> compile(Properties tariff) {
+        Map<String, Properties> lotOverrides = new HashMap<>();
+        Properties defaults = new Properties();
+        for (String key : tariff.stringPropertyNames()) {
+            String value = tariff.getProperty(key).trim();
+            if (key.startsWith(LOT_PREFIX)) {
+                int end = key.indexOf('.', LOT_PREFIX.length());
+                if (end < 0) {
+                    throw new IllegalArgumentException("Missing tariff key after lot id: " + key);
+                }
+                String lotId = key.substring(LOT_PREFIX.length(), end);
+                if (!lotId.matches("[0-9]+")) {
+                    throw new IllegalArgumentException("Lot id is not a number: " + key);
+                }
+                lotOverrides.computeIfAbsent(lotId, lot -> new Properties())
+                        .setProperty(key.substring(end + 1), value);
+            } else {
+                defaults.setProperty(key, value);
+            }
+        }
+
+        Map<String, TariffSchedule> compiled = new HashMap<>();
+        compiled.put(DEFAULT_LOT, compileLot(defaults));
+        for (Map.Entry<String, Properties> lot : lotOverrides.entrySet()) {
+            Properties lotTariff = new Properties();
+            lotTariff.putAll(defaults);
+            lotTariff.putAll(lot.getValue());
+            compiled.put(lot.getKey(), compileLot(lotTariff));
+        }
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    private static TariffSchedule compileLot(Properties tariff) {
+        TariffSchedule defaults = TariffSchedule.DEFAULT;
+        String timeZoneId = tariff.getProperty("timezone");
+        TimeZone timeZone = timeZoneId == null ? TimeZone.getDefault() : TimeZone.getTimeZone(timeZoneId);
+        long freeDurationMillis = tariff.containsKey("free.minutes")
+                ? parseNonNegative(tariff, "free.minutes") * 60 * 1000 : defaults.getFreeDurationMillis();
+        long discountPercent = tariff.containsKey("discount.percent")
+                ? parseNonNegative(tariff, "discount.percent") : defaults.getDiscountPercent();
+        if (discountPercent > 100) {
+            throw new IllegalArgumentException("Discount above 100%: " + discountPercent);
+        }
+
+        ParkingType[] parkingTypes = ParkingType.values();
+        long[][] rates = new long[parkingTypes.length][TariffSchedule.HOURS_PER_WEEK];
+        for (ParkingType parkingType : parkingTypes) {
+            long[] typeRates = rates[parkingType.ordinal()];
+            for (int hour = 0; hour < TariffSchedule.HOURS_PER_WEEK; hour++) {
+                typeRates[hour] = defaults.getRateCentsPerHour(parkingType.ordinal(), hour);
+            }
+            String typePrefix = RATE_PREFIX + parkingType.name();
+            if (tariff.containsKey(typePrefix)) {
+                applyRate(typeRates, allDays(), 0, 24, parseNonNegative(tariff, typePrefix));
+            }
+            // day rules before hour ranges, and weekday/weekend before named days, so that the
+            // more specific rule is applied last and wins
+            List<String> groupDayRules = new ArrayList<>();
+            List<String> namedDayRules = new ArrayList<>();
+            List<String> groupHourRules = new ArrayList<>();
+            List<String> namedHourRules = new ArrayList<>();
+            for (String key : new TreeSet<>(tariff.stringPropertyNames())) {
+                if (!key.startsWith(typePrefix + ".")) {
+                    continue;
+                }
+                String[] selector = key.substring(typePrefix.length() + 1).split("\\.");
+                boolean group = isDayGroup(selector[0]);
+                if (selector.length == 1) {
+                    (group ? groupDayRules : namedDayRules).add(key);
+                } else if (selector.length == 2) {
+                    (group ? groupHourRules : namedHourRules).add(key);
+                } else {
+                    throw new IllegalArgumentException("Unknown tariff rule: " + key);
+                }
+            }
+            for (List<String> rules : Arrays.asList(groupDayRules, namedDayRules, groupHourRules, namedHourRules)) {
+                for (String key : rules) {
+                    applyRule(typeRates, tariff, typePrefix, key);
+                }
+            }
+        }
+        return new TariffSchedule(timeZone, freeDurationMillis, discountPercent, rates);
+    }
+
+    private static void applyRule(long[] typeRates, Properties tariff, String typePrefix, String key) {
+        String[] selector = key.substring(typePrefix.length() + 1).split("\\.");
+        if (selector.length == 1) {
+            applyRate(typeRates, parseDays(key, selector[0]), 0, 24, parseNonNegative(tariff, key));
+            return;
+        }
+        String[] hours = selector[1].split("-");
+        if (hours.length != 2) {
+            throw new IllegalArgumentException("Hour range must be HH-HH: " + key);
+        }
+        int fromHour = parseHour(key, hours[0]);
+        int toHour = parseHour(key, hours[1]);
+        applyRate(typeRates, parseDays(key, selector[0]), fromHour, toHour, parseNonNegative(tariff, key));
+    }
+
+    private static boolean isDayGroup(String selector) {
+        return "weekday".equals(selector) || "weekend".equals(selector);
+    }
+
+    private static void applyRate(long[] typeRates, boolean[] days, int fromHour, int toHour, long rate) {
+        int length = toHour > fromHour ? toHour - fromHour : toHour + 24 - fromHour;
+        for (int day = 0; day < days.length; day++) {
+            if (!days[day]) {
+                continue;
+            }
+            for (int i = 0; i < length; i++) {
+                typeRates[(day * 24 + fromHour + i) % TariffSchedule.HOURS_PER_WEEK] = rate;
+            }
+        }
+    }
+
+    private static boolean[] allDays() {
+        boolean[] days = new boolean[DAY_NAMES.length];
+        Arrays.fill(days, true);
+        return days;
+    }
+
+    private static boolean[] parseDays(String key, String selector) {
+        boolean[] days = new boolean[DAY_NAMES.length];
+        switch (selector) {
+            case "weekday": {
+                Arrays.fill(days, 0, 5, true);
+                return days;
+            }
+            case "weekend": {
+                Arrays.fill(days, 5, 7, true);
+                return days;
+            }
+            default: {
+                for (int day = 0; day < DAY_NAMES.length; day++) {
+                    if (DAY_NAMES[day].equals(selector)) {
+                        days[day] = true;
+                        return days;
+                    }
+                }
+                throw new IllegalArgumentException("Unknown days in tariff rule: " + key);
+            }
+        }
+    }
+
+    private static int parseHour(String key, String hour) {
+        int parsed = Integer.parseInt(hour.trim());
+        if (parsed < 0 || parsed > 24) {
+            throw new IllegalArgumentException("Hour out of range in tariff rule: " + key);
+        }
+        return parsed;
+    }
+
+    private static long parseNonNegative(Properties tariff, String key) {
+        long value = Long.parseLong(tariff.getProperty(key).trim());
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value in tariff rule: " + key);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,62 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.LotShardMap;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Dumps the ticket history to a CSV file for finance, see {@link TicketDAO#exportTickets}.
+ */
+public class TicketExport {
+
+    private static final Logger logger = LogManager.getLogger("TicketExport");
+
+    private TicketExport() {
+    }
+
+    /**
+     * Exports the lot's tickets that came in from {@code from} to the day before {@code to}, over
+     * a single unpooled connection to the lot's database, its shard's with -Dparkit.shardMap.
+     *
+     * @param from first day, null for no lower bound
+     * @param to day after the last one, null for no upper bound
+     * @param parkingType null for every type
+     */
+    public static void runExport(Path exportFile, LocalDate from, LocalDate to, ParkingType parkingType, int lotId) {
+        TicketDAO ticketDAO = new TicketDAO();
+        try {
+            ticketDAO.dataBaseConfig = LotShardMap.newDataBaseConfig(System.getProperty("parkit.shardMap"), lotId);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to find the database of lot " + lotId, e);
+            System.out.println("Unable to find the database of lot " + lotId);
+            return;
+        }
+        ticketDAO.lotId = lotId;
+        try (FileChannel channel = FileChannel.open(exportFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long exported = ticketDAO.exportTickets(toDate(from), toDate(to), parkingType, channel);
+            if (exported < 0) {
+                System.out.println("Ticket export failed, " + exportFile + " is incomplete");
+            } else {
+                System.out.println("Exported " + exported + " tickets to " + exportFile);
+            }
+        } catch (IOException e) {
+            logger.error("Unable to write ticket export to " + exportFile, e);
+            System.out.println("Unable to write ticket export to " + exportFile);
+        }
+    }
+
+    private static Date toDate(LocalDate day) {
+        return day == null ? null : Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,132 @@
+package com.parkit.parkingsystem.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes CSV rows into a fixed direct buffer that is drained to a channel whenever it fills up,
+ * so the memory used does not depend on the number of rows. Numbers are written digit by digit
+ * without going through a String; text fields are quoted only when they need it.
+ */
+public class CsvChannelWriter {
+
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+    private static final byte NEWLINE = '\n';
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] digitBuffer = new byte[20];
+    private boolean firstField = true;
+
+    public CsvChannelWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public CsvChannelWriter text(String value) throws IOException {
+        separate();
+        if (value == null) {
+            return this;
+        }
+        boolean quoted = value.indexOf(SEPARATOR) >= 0 || value.indexOf(QUOTE) >= 0
+                || value.indexOf(NEWLINE) >= 0 || value.indexOf('\r') >= 0;
+        if (quoted) {
+            put(QUOTE);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == QUOTE) {
+                    put(QUOTE);
+                }
+                put((byte) c);
+            } else {
+                // rare in this data, encode the rest of the value the slow way
+                for (byte b : value.substring(i).replace("\"", "\"\"").getBytes(StandardCharsets.UTF_8)) {
+                    put(b);
+                }
+                break;
+            }
+        }
+        if (quoted) {
+            put(QUOTE);
+        }
+        return this;
+    }
+
+    public CsvChannelWriter number(long value) throws IOException {
+        separate();
+        if (value < 0) {
+            put((byte) '-');
+        }
+        digits(value);
+        return this;
+    }
+
+    /**
+     * Writes an amount with two decimals, rounded half up.
+     */
+    public CsvChannelWriter amount(double value) throws IOException {
+        separate();
+        long cents = Math.round(value * 100);
+        if (cents < 0) {
+            put((byte) '-');
+        }
+        digits(cents / 100);
+        put((byte) '.');
+        put((byte) ('0' + Math.abs(cents % 100 / 10)));
+        put((byte) ('0' + Math.abs(cents % 10)));
+        return this;
+    }
+
+    public CsvChannelWriter empty() throws IOException {
+        separate();
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        put(NEWLINE);
+        firstField = true;
+    }
+
+    /**
+     * Writes out whatever is buffered.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // absolute value of a possibly negative number, sign written by the caller
+    private void digits(long value) throws IOException {
+        int length = 0;
+        long rest = value;
+        do {
+            digitBuffer[length++] = (byte) ('0' + Math.abs(rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        while (length > 0) {
+            put(digitBuffer[--length]);
+        }
+    }
+
+    private void separate() throws IOException {
+        if (!firstField) {
+            put(SEPARATOR);
+        }
+        firstField = false;
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+}
@@ -0,0 +1,64 @@
+package com.parkit.parkingsystem.util;
+
+/**
+ * Packs a vehicle registration number of up to {@value #MAX_LENGTH} characters into a long, 6
+ * bits per character, so plates can be hashed and compared without any String. Letters are
+ * folded to upper case, the way the case-insensitive VEHICLE_REG_NUMBER column compares them.
+ * Digits, letters and the separators {@code - . /} and space are supported.
+ */
+public final class PlateCodec {
+
+    public static final int MAX_LENGTH = 10;
+    public static final long NOT_ENCODABLE = -1L;
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ-./ ";
+    private static final int BITS_PER_CHAR = 6;
+    private static final int CHAR_MASK = (1 << BITS_PER_CHAR) - 1;
+
+    private PlateCodec() {
+    }
+
+    /**
+     * @return the packed plate, never 0, or {@link #NOT_ENCODABLE} if the plate is empty, too
+     * long or has a character outside the alphabet
+     */
+    public static long encode(CharSequence vehicleRegNumber) {
+        int length = vehicleRegNumber.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return NOT_ENCODABLE;
+        }
+        long packed = 0;
+        for (int i = 0; i < length; i++) {
+            int code = code(vehicleRegNumber.charAt(i));
+            if (code == 0) {
+                return NOT_ENCODABLE;
+            }
+            packed = (packed << BITS_PER_CHAR) | code;
+        }
+        return packed;
+    }
+
+    public static String decode(long packed) {
+        char[] chars = new char[MAX_LENGTH];
+        int start = MAX_LENGTH;
+        for (long rest = packed; rest != 0; rest >>>= BITS_PER_CHAR) {
+            chars[--start] = ALPHABET.charAt((int) (rest & CHAR_MASK) - 1);
+        }
+        return new String(chars, start, MAX_LENGTH - start);
+    }
+
+    // 1-based so that 0 never stands for a character
+    private static int code(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 1;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 11;
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 11;
+        }
+        int separator = ALPHABET.indexOf(c, 36);
+        return separator < 0 ? 0 : separator + 1;
+    }
+}
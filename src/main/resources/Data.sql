@@ -3,20 +3,56 @@ create database open_c_prod;
 use open_c_prod;
 
 create table parking(
-PARKING_NUMBER int PRIMARY KEY,
+LOT_ID int NOT NULL DEFAULT 1,
+PARKING_NUMBER int NOT NULL,
 AVAILABLE bool NOT NULL,
-TYPE varchar(10) NOT NULL
+TYPE varchar(10) NOT NULL,
+PRIMARY KEY (LOT_ID, PARKING_NUMBER)
 );
 
 create table ticket(
  ID int PRIMARY KEY AUTO_INCREMENT,
+ LOT_ID int NOT NULL DEFAULT 1,
  PARKING_NUMBER int NOT NULL,
  VEHICLE_REG_NUMBER varchar(10) NOT NULL,
  PRICE double,
  IN_TIME DATETIME NOT NULL,
  OUT_TIME DATETIME,
- FOREIGN KEY (PARKING_NUMBER)
- REFERENCES parking(PARKING_NUMBER));
+ FOREIGN KEY (LOT_ID, PARKING_NUMBER)
+ REFERENCES parking(LOT_ID, PARKING_NUMBER),
+ INDEX IDX_TICKET_VEHICLE_OPEN (LOT_ID, VEHICLE_REG_NUMBER, OUT_TIME, IN_TIME),
+ INDEX IDX_TICKET_VEHICLE_IN_TIME (LOT_ID, VEHICLE_REG_NUMBER, IN_TIME),
+ INDEX IDX_TICKET_IN_TIME (LOT_ID, IN_TIME));
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ LOT_ID int NOT NULL,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL,
+ INDEX IDX_TICKET_ARCHIVE_VEHICLE_IN_TIME (LOT_ID, VEHICLE_REG_NUMBER, IN_TIME),
+ INDEX IDX_TICKET_ARCHIVE_IN_TIME (LOT_ID, IN_TIME));
+
+create table vehicle_visit_summary(
+ LOT_ID int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ ARCHIVED_TICKETS int NOT NULL,
+ PRIMARY KEY (LOT_ID, VEHICLE_REG_NUMBER));
+
+create table revenue_hourly(
+ LOT_ID int NOT NULL,
+ HOUR_START DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ REVENUE double NOT NULL,
+ CLOSED_TICKETS int NOT NULL,
+ OCCUPIED_MILLIS bigint NOT NULL,
+ PRIMARY KEY (LOT_ID, HOUR_START, TYPE));
+
+create table gate_projection(
+ LOT_ID int PRIMARY KEY,
+ SEQUENCE bigint NOT NULL);
 
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
@@ -11,7 +11,10 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.BitSet;
 import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class FareCalculatorServiceTest {
 
@@ -111,7 +114,8 @@ public class FareCalculatorServiceTest {
         ticket.setOutTime(outTime);
         ticket.setParkingSpot(parkingSpot);
         fareCalculatorService.calculateFare(ticket);
-        assertEquals( (0.75 * Fare.CAR_RATE_PER_HOUR) , ticket.getPrice());
+        // 1.125 rounded half-up to the cent
+        assertEquals( 1.13 , ticket.getPrice());
     }
 
     @Test
@@ -178,7 +182,8 @@ public class FareCalculatorServiceTest {
 
         fareCalculatorService.calculateFare(ticket, true);
 
-        double expectedPrice = Fare.CAR_RATE_PER_HOUR * 0.95;
+        // 1.425 rounded half-up to the cent
+        double expectedPrice = 1.43;
 
         assertEquals(expectedPrice, ticket.getPrice());
     }
@@ -201,4 +206,63 @@ public class FareCalculatorServiceTest {
 
         assertEquals(expectedPrice, ticket.getPrice());
     }
+
+    @Test
+    public void calculateFareCentsCar() {
+        long inTime = 1_600_000_000_000L;
+        long outTime = inTime + 2 * 60 * 60 * 1000;
+
+        assertEquals(2 * Fare.CAR_RATE_CENTS_PER_HOUR,
+                fareCalculatorService.calculateFareCents(inTime, outTime, ParkingType.CAR.ordinal(), false));
+    }
+
+    @Test
+    public void calculateFareCentsFreeDurationAndDiscount() {
+        long inTime = 1_600_000_000_000L;
+
+        assertEquals(0, fareCalculatorService.calculateFareCents(inTime, inTime + 30 * 60 * 1000, ParkingType.CAR.ordinal(), true));
+        assertEquals(95, fareCalculatorService.calculateFareCents(inTime, inTime + 60 * 60 * 1000, ParkingType.BIKE.ordinal(), true));
+    }
+
+    @Test
+    public void calculateFareCentsUnknownType() {
+        assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFareCents(0, 60 * 60 * 1000, 42, false));
+    }
+
+    @Test
+    public void calculateFaresCentsMatchesSingleTicketKernel() {
+        int nbTickets = FareCalculatorService.PARALLEL_THRESHOLD * 3 + 17;
+        Random random = new Random(7);
+        long[] inTimes = new long[nbTickets];
+        long[] outTimes = new long[nbTickets];
+        int[] typeOrdinals = new int[nbTickets];
+        BitSet discounts = new BitSet();
+        for (int i = 0; i < nbTickets; i++) {
+            inTimes[i] = 1_600_000_000_000L + random.nextInt(1_000_000_000);
+            outTimes[i] = inTimes[i] + random.nextInt(3 * 24 * 60 * 60 * 1000);
+            typeOrdinals[i] = random.nextInt(ParkingType.values().length);
+            discounts.set(i, random.nextBoolean());
+        }
+
+        long[] sequential = new long[nbTickets];
+        long[] parallel = new long[nbTickets];
+        fareCalculatorService.calculateFaresCents(inTimes, outTimes, typeOrdinals, discounts, sequential);
+        fareCalculatorService.calculateFaresCents(inTimes, outTimes, typeOrdinals, discounts, parallel, ForkJoinPool.commonPool());
+
+        for (int i = 0; i < nbTickets; i++) {
+            long expected = fareCalculatorService.calculateFareCents(inTimes[i], outTimes[i], typeOrdinals[i], discounts.get(i));
+            assertEquals(expected, sequential[i]);
+            assertEquals(expected, parallel[i]);
+        }
+    }
+
+    @Test
+    public void calculateFaresCentsRejectsOutTimeBeforeInTime() {
+        long[] inTimes = {1000, 2000};
+        long[] outTimes = {5000, 1000};
+        int[] typeOrdinals = {0, 0};
+
+        assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFaresCents(
+                inTimes, outTimes, typeOrdinals, new BitSet(), new long[2]));
+    }
 }
@@ -0,0 +1,94 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.benchmark.InMemoryParkingSpotDAO;
+import com.parkit.parkingsystem.benchmark.InMemoryTicketDAO;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.GateEventReplay;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateEventReplayTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private Path eventFile;
+    private InMemoryParkingSpotDAO parkingSpotDAO;
+    private ParkingService parkingService;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        eventFile = Files.createTempFile("gate-events", ".csv");
+        parkingSpotDAO = new InMemoryParkingSpotDAO(3, 2);
+        parkingService = new ParkingService(null, parkingSpotDAO, new InMemoryTicketDAO(parkingSpotDAO));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(eventFile);
+    }
+
+    @Test
+    public void replaysEntriesAndExitsWithRecordedTimes() throws Exception {
+        Files.write(eventFile, Arrays.asList(
+                "# recorded at gate 1",
+                "2024-01-01T08:00:00,ENTER,AAA,CAR",
+                "2024-01-01T08:05:00,ENTER,BBB,BIKE",
+                "2024-01-01T10:00:00,EXIT,AAA",
+                "",
+                "2024-01-01T10:05:00,EXIT,BBB",
+                "2024-01-01T10:06:00,EXIT,UNKNOWN",
+                "not an event"), StandardCharsets.UTF_8);
+
+        GateEventReplay.Report report = new GateEventReplay(parkingService, 1).replay(eventFile);
+
+        assertEquals(5, report.getEvents());
+        assertEquals(2, report.getEntered());
+        assertEquals(2, report.getExited());
+        assertEquals(1, report.getRejected());
+        assertEquals(1, report.getMalformed());
+        assertEquals(3, parkingSpotDAO.parkingSpotIndex.getAvailableCount(ParkingType.CAR));
+    }
+
+    @Test
+    public void exitIsPricedFromEventTimestamps() throws Exception {
+        long inTime = 1704096000000L;
+        Files.write(eventFile, Arrays.asList(inTime + ",ENTER,AAA,CAR"), StandardCharsets.UTF_8);
+        new GateEventReplay(parkingService, 1).replay(eventFile);
+
+        assertEquals(3.0, parkingService.processExitingVehicle("AAA", new Date(inTime + 2 * HOUR)).getPrice());
+    }
+
+    @Test
+    public void severalWorkersKeepEachVehicleInOrder() throws Exception {
+        List<String> events = new ArrayList<>();
+        long time = 1704096000000L;
+        for (int round = 0; round < 200; round++) {
+            for (int vehicle = 0; vehicle < 5; vehicle++) {
+                events.add((time + round * HOUR) + ",ENTER,V" + vehicle + "," + (vehicle < 3 ? "CAR" : "BIKE"));
+            }
+            for (int vehicle = 0; vehicle < 5; vehicle++) {
+                events.add((time + round * HOUR + HOUR / 2) + ",EXIT,V" + vehicle);
+            }
+        }
+        Files.write(eventFile, events, StandardCharsets.UTF_8);
+
+        GateEventReplay.Report report = new GateEventReplay(parkingService, 4).replay(eventFile);
+
+        assertEquals(2000, report.getEvents());
+        assertEquals(1000, report.getEntered());
+        assertEquals(1000, report.getExited());
+        assertEquals(0, report.getRejected());
+    }
+}
@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.benchmark.InMemoryParkingSpotDAO;
+import com.parkit.parkingsystem.benchmark.InMemoryTicketDAO;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.GateExecutor;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateExecutorTest {
+
+    private final InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(100, 100);
+    private final ParkingService parkingService = new ParkingService(null, parkingSpotDAO, new InMemoryTicketDAO(parkingSpotDAO));
+
+    @Test
+    public void gatesEnterAndExitConcurrently() {
+        parkingSpotDAO.simulatedLatencyNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        try (GateExecutor gateExecutor = new GateExecutor(parkingService, 4)) {
+            List<CompletableFuture<Ticket>> exits = new ArrayList<>();
+            for (int gate = 0; gate < 100; gate++) {
+                String plate = "GATE-" + gate;
+                exits.add(gateExecutor.enter(plate, ParkingType.CAR, new Date())
+                        .thenCompose(ticket -> gateExecutor.exit(plate, new Date())));
+            }
+            for (CompletableFuture<Ticket> exit : exits) {
+                assertNotNull(exit.join().getOutTime());
+            }
+            assertEquals(100, parkingSpotDAO.parkingSpotIndex.getAvailableCount(ParkingType.CAR));
+        }
+    }
+
+    @Test
+    public void neverRunsMoreOperationsThanTheLimit() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (GateExecutor gateExecutor = new GateExecutor(parkingService, 3, GateExecutor.newPerTaskExecutor(16))) {
+            List<CompletableFuture<Integer>> operations = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                operations.add(gateExecutor.submit(service -> {
+                    int now = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(now, Math::max);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return running.decrementAndGet();
+                }));
+            }
+            CompletableFuture.allOf(operations.toArray(new CompletableFuture<?>[0])).join();
+        }
+        assertTrue(maxRunning.get() <= 3, "at most 3 operations at once, saw " + maxRunning.get());
+    }
+
+    @Test
+    public void executorsSharingPermitsStayWithinTheLimitTogether() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = GateExecutor.newPerTaskExecutor(16);
+        Semaphore permits = new Semaphore(3, true);
+        try (GateExecutor north = new GateExecutor(parkingService, executor, permits, 3);
+             GateExecutor south = new GateExecutor(parkingService, executor, permits, 3)) {
+            List<CompletableFuture<Integer>> operations = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                operations.add((i % 2 == 0 ? north : south).submit(service -> {
+                    int now = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(now, Math::max);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return running.decrementAndGet();
+                }));
+            }
+            CompletableFuture.allOf(operations.toArray(new CompletableFuture<?>[0])).join();
+        }
+        assertTrue(maxRunning.get() <= 3, "at most 3 operations at once across both lots, saw " + maxRunning.get());
+    }
+
+    @Test
+    public void failedOperationCompletesExceptionally() {
+        try (GateExecutor gateExecutor = new GateExecutor(parkingService, 1)) {
+            CompletableFuture<Object> failed = gateExecutor.submit(service -> {
+                throw new IllegalStateException("boom");
+            });
+            assertThrows(Exception.class, failed::join);
+            // the permit was given back
+            assertNull(gateExecutor.exit("NOBODY", new Date()).join());
+        }
+    }
+}
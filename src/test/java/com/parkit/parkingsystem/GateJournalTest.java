@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.GateEvent;
+import com.parkit.parkingsystem.journal.GateJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateJournalTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        directory = Files.createTempDirectory("gate-journal");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void eventsAreReadBackInOrderAfterReopening() throws Exception {
+        GateJournal gateJournal = new GateJournal(directory, 16, false);
+        assertEquals(1, gateJournal.append(GateEvent.enter("AB-123-CD", 3, ParkingType.CAR, 1000, 2)));
+        assertEquals(3, gateJournal.append(GateEvent.exit("AB-123-CD", 3, ParkingType.CAR, 1000, 5000),
+                GateEvent.price("AB-123-CD", 3, ParkingType.CAR, 1000, 5000, 1.425)));
+        gateJournal.close();
+
+        GateJournal reopened = new GateJournal(directory, 16, false);
+        assertEquals(4, reopened.getNextSequence());
+        List<GateEvent> events = reopened.read(1, 10);
+
+        assertEquals(3, events.size());
+        assertEquals(GateEvent.Type.ENTER, events.get(0).getType());
+        assertEquals("AB-123-CD", events.get(0).getVehicleRegNumber());
+        assertEquals(2, events.get(0).getVehicleTicketCount());
+        assertEquals(GateEvent.Type.EXIT, events.get(1).getType());
+        assertEquals(5000, events.get(1).getTimeMillis());
+        assertEquals(1000, events.get(1).getInTimeMillis());
+        assertEquals(3, events.get(2).getSequence());
+        assertEquals(1.425, events.get(2).getPrice());
+        assertEquals(ParkingType.CAR, events.get(2).getParkingType());
+        assertEquals(3, events.get(2).getParkingNumber());
+        assertTrue(reopened.read(4, 10).isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void partlyWrittenBatchIsDroppedOnReopening() throws Exception {
+        GateJournal gateJournal = new GateJournal(directory, 16, false);
+        gateJournal.append(GateEvent.enter("AAA", 1, ParkingType.CAR, 1000, 1));
+        gateJournal.append(GateEvent.exit("AAA", 1, ParkingType.CAR, 1000, 2000),
+                GateEvent.price("AAA", 1, ParkingType.CAR, 1000, 2000, 0));
+        gateJournal.close();
+        // tear the PRICE record, as a crash in the middle of the append would
+        try (FileChannel segment = FileChannel.open(directory.resolve(String.format("%020d.journal", 1)),
+                StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[]{42}), 2 * GateJournal.RECORD_SIZE + 20);
+        }
+
+        GateJournal reopened = new GateJournal(directory, 16, false);
+
+        assertEquals(2, reopened.getNextSequence());
+        assertEquals(1, reopened.read(1, 10).size());
+        assertEquals(2, reopened.append(GateEvent.enter("BBB", 2, ParkingType.CAR, 3000, 1)));
+        assertEquals("BBB", reopened.read(2, 10).get(0).getVehicleRegNumber());
+        reopened.close();
+    }
+
+    @Test
+    public void batchesStayInOneSegmentAndProjectedSegmentsAreDeleted() throws Exception {
+        GateJournal gateJournal = new GateJournal(directory, 4, false);
+        for (int i = 0; i < 3; i++) {
+            gateJournal.append(GateEvent.enter("V" + i, i + 1, ParkingType.CAR, 1000, 1));
+        }
+        // does not fit in the 4th slot, starts the second segment
+        gateJournal.append(GateEvent.exit("V0", 1, ParkingType.CAR, 1000, 2000),
+                GateEvent.price("V0", 1, ParkingType.CAR, 1000, 2000, 1.5));
+        assertEquals(2, segmentCount());
+
+        List<GateEvent> events = gateJournal.read(1, 10);
+        assertEquals(5, events.size());
+        assertEquals(GateEvent.Type.PRICE, events.get(4).getType());
+        assertEquals(5, events.get(4).getSequence());
+
+        assertEquals(0, gateJournal.deleteBefore(3));
+        assertEquals(1, gateJournal.deleteBefore(4));
+        assertEquals(1, segmentCount());
+        assertEquals(2, gateJournal.read(4, 10).size());
+        assertThrows(IOException.class, () -> gateJournal.read(1, 10));
+        gateJournal.close();
+    }
+}
@@ -0,0 +1,210 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.benchmark.InMemoryParkingSpotDAO;
+import com.parkit.parkingsystem.benchmark.InMemoryTicketDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.GateExecutor;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateServerTest {
+
+    private static final int NB_CAR_SPOTS = 300;
+
+    private GateExecutor gateExecutor;
+    private GateServer gateServer;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(NB_CAR_SPOTS, 1);
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, new InMemoryTicketDAO(parkingSpotDAO));
+        gateExecutor = new GateExecutor(parkingService, 8);
+        gateServer = new GateServer(gateExecutor, parkingSpotDAO, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        gateServer.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gateServer.close();
+        gateExecutor.close();
+    }
+
+    @Test
+    public void vehicleEntersAndExits() throws Exception {
+        Reply entered = call("POST", "/gate/enter?plate=AB-123&type=car");
+        assertEquals(200, entered.status);
+        assertTrue(entered.body.contains("\"vehicleRegNumber\":\"AB-123\""));
+        assertTrue(entered.body.contains("\"parkingNumber\":1"));
+        assertTrue(entered.body.contains("\"outTime\":null"));
+        assertEquals("{\"CAR\":" + (NB_CAR_SPOTS - 1) + ",\"BIKE\":1}", call("GET", "/availability").body);
+
+        Reply exited = call("POST", "/gate/exit?plate=AB-123");
+        assertEquals(200, exited.status);
+        assertTrue(exited.body.contains("\"price\":0.0"));
+        assertEquals("{\"CAR\":" + NB_CAR_SPOTS + ",\"BIKE\":1}", call("GET", "/availability").body);
+    }
+
+    @Test
+    public void errorsAreReportedWithStatusCodes() throws Exception {
+        assertEquals(404, call("POST", "/gate/exit?plate=UNKNOWN").status);
+        assertEquals(400, call("POST", "/gate/enter?plate=AB-123&type=TRUCK").status);
+        assertEquals(400, call("POST", "/gate/enter?type=CAR").status);
+        assertEquals(405, call("GET", "/gate/enter?plate=AB-123&type=CAR").status);
+
+        assertEquals(200, call("POST", "/gate/enter?plate=BIKE-1&type=BIKE").status);
+        Reply full = call("POST", "/gate/enter?plate=BIKE-2&type=BIKE");
+        assertEquals(409, full.status);
+        assertTrue(full.body.startsWith("{\"error\":"));
+    }
+
+    @Test
+    public void failedSaveIsNotReportedAsAFullLot() throws Exception {
+        InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(2, 0);
+        InMemoryTicketDAO ticketDAO = new InMemoryTicketDAO(parkingSpotDAO) {
+            @Override
+            public boolean saveTicket(Ticket ticket) {
+                return false;
+            }
+        };
+        GateExecutor failingExecutor = new GateExecutor(new ParkingService(null, parkingSpotDAO, ticketDAO), 1);
+        GateServer failingServer = new GateServer(failingExecutor, parkingSpotDAO, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        failingServer.start();
+        try {
+            int port = failingServer.getPort();
+            assertEquals(503, call(port, "POST", "/gate/enter?plate=AB-123&type=CAR").status);
+            assertEquals("{\"CAR\":2,\"BIKE\":0}", call(port, "GET", "/availability").body);
+        } finally {
+            failingServer.close();
+            failingExecutor.close();
+        }
+    }
+
+    @Test
+    public void failedCloseIsNotReportedAsAnUnknownVehicle() throws Exception {
+        InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(2, 0);
+        InMemoryTicketDAO ticketDAO = new InMemoryTicketDAO(parkingSpotDAO) {
+            @Override
+            public boolean closeTicket(Ticket ticket) {
+                return false;
+            }
+        };
+        GateExecutor failingExecutor = new GateExecutor(new ParkingService(null, parkingSpotDAO, ticketDAO), 1);
+        GateServer failingServer = new GateServer(failingExecutor, parkingSpotDAO, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        failingServer.start();
+        try {
+            int port = failingServer.getPort();
+            assertEquals(200, call(port, "POST", "/gate/enter?plate=AB-123&type=CAR").status);
+            assertEquals(503, call(port, "POST", "/gate/exit?plate=AB-123").status);
+            assertEquals(404, call(port, "POST", "/gate/exit?plate=CD-456").status);
+        } finally {
+            failingServer.close();
+            failingExecutor.close();
+        }
+    }
+
+    @Test
+    public void manyTerminalsAtOnceNeverShareASpot() throws Exception {
+        ExecutorService terminals = Executors.newFixedThreadPool(50);
+        try {
+            List<Future<Reply>> replies = new ArrayList<>();
+            for (int terminal = 0; terminal < NB_CAR_SPOTS; terminal++) {
+                String plate = "T" + terminal;
+                replies.add(terminals.submit(() -> call("POST", "/gate/enter?plate=" + plate + "&type=CAR")));
+            }
+            List<String> spots = new ArrayList<>();
+            for (Future<Reply> reply : replies) {
+                Reply entered = reply.get();
+                assertEquals(200, entered.status);
+                spots.add(entered.body.replaceAll(".*\"parkingNumber\":(\\d+).*", "$1"));
+            }
+            assertEquals(NB_CAR_SPOTS, spots.stream().distinct().count());
+            assertEquals(409, call("POST", "/gate/enter?plate=LATE&type=CAR").status);
+        } finally {
+            terminals.shutdownNow();
+        }
+    }
+
+    @Test
+    public void eachLotIsServedByItsOwnService() throws Exception {
+        Map<Integer, GateExecutor> gateExecutors = new HashMap<>();
+        Map<Integer, ParkingSpotDAO> parkingSpotDAOs = new HashMap<>();
+        ExecutorService requestExecutor = Executors.newFixedThreadPool(4);
+        for (int lotId = 1; lotId <= 2; lotId++) {
+            // lot 1 has one car spot, lot 2 has two
+            InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(lotId, 1);
+            ParkingService parkingService = new ParkingService(null, parkingSpotDAO, new InMemoryTicketDAO(parkingSpotDAO));
+            gateExecutors.put(lotId, new GateExecutor(parkingService, 2, requestExecutor));
+            parkingSpotDAOs.put(lotId, parkingSpotDAO);
+        }
+        GateServer lotsServer = new GateServer(gateExecutors, parkingSpotDAOs, requestExecutor,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        lotsServer.start();
+        try {
+            int port = lotsServer.getPort();
+            assertEquals(200, call(port, "POST", "/gate/enter?lot=2&plate=AB-123&type=CAR").status);
+            assertEquals("{\"CAR\":1,\"BIKE\":1}", call(port, "GET", "/availability?lot=1").body);
+            assertEquals("{\"CAR\":1,\"BIKE\":1}", call(port, "GET", "/availability?lot=2").body);
+            // without a lot, the default one
+            assertEquals(200, call(port, "POST", "/gate/enter?plate=CD-456&type=CAR").status);
+            assertEquals("{\"CAR\":0,\"BIKE\":1}", call(port, "GET", "/availability?lot=1").body);
+
+            assertEquals(404, call(port, "POST", "/gate/exit?lot=1&plate=AB-123").status);
+            assertEquals(200, call(port, "POST", "/gate/exit?lot=2&plate=AB-123").status);
+            assertEquals(404, call(port, "POST", "/gate/enter?lot=3&plate=EF-789&type=CAR").status);
+            assertEquals(404, call(port, "GET", "/availability?lot=north").status);
+        } finally {
+            lotsServer.close();
+            requestExecutor.shutdownNow();
+        }
+    }
+
+    private Reply call(String method, String path) throws Exception {
+        return call(gateServer.getPort(), method, path);
+    }
+
+    private Reply call(int port, String method, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            body.write(buffer, 0, read);
+        }
+        in.close();
+        return new Reply(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static final class Reply {
+        private final int status;
+        private final String body;
+
+        private Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
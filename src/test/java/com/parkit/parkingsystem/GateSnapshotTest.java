@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.GateSnapshot;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateSnapshotTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        directory = Files.createTempDirectory("gate-snapshot");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void snapshotIsReadBackAsWritten() throws Exception {
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setParkingSpot(new ParkingSpot(4, ParkingType.BIKE, false));
+        ticket.setInTime(new Date(1000));
+        ticket.setVehicleTicketCount(3);
+        Path file = directory.resolve("snapshot");
+        new GateSnapshot(42, Arrays.asList(new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(4, ParkingType.BIKE, false)), Collections.singletonList(ticket)).write(file);
+
+        GateSnapshot snapshot = GateSnapshot.read(file);
+
+        assertEquals(42, snapshot.getSequence());
+        assertEquals(2, snapshot.getParkingSpots().size());
+        assertEquals(1, snapshot.getParkingSpots().get(0).getId());
+        assertTrue(snapshot.getParkingSpots().get(0).isAvailable());
+        assertEquals(ParkingType.BIKE, snapshot.getParkingSpots().get(1).getParkingType());
+        assertFalse(snapshot.getParkingSpots().get(1).isAvailable());
+        Ticket restored = snapshot.getOpenTickets().get(0);
+        assertEquals("ABCDEF", restored.getVehicleRegNumber());
+        assertEquals(0, restored.getId());
+        assertEquals(4, restored.getParkingSpot().getId());
+        assertEquals(1000, restored.getInTime().getTime());
+        assertEquals(3, restored.getVehicleTicketCount());
+    }
+
+    @Test
+    public void corruptSnapshotIsRejected() throws Exception {
+        Path file = directory.resolve("snapshot");
+        new GateSnapshot(7, Collections.singletonList(new ParkingSpot(1, ParkingType.CAR, true)),
+                Collections.emptyList()).write(file);
+        byte[] content = Files.readAllBytes(file);
+        content[12] ^= 1;
+        Files.write(file, content);
+
+        assertThrows(IOException.class, () -> GateSnapshot.read(file));
+    }
+}
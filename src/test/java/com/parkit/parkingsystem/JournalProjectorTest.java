@@ -0,0 +1,113 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateProjectionDAO;
+import com.parkit.parkingsystem.journal.GateEvent;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.JournalProjector;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class JournalProjectorTest {
+
+    @Mock
+    private GateProjectionDAO gateProjectionDAO;
+
+    private Path directory;
+    private GateJournal gateJournal;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        directory = Files.createTempDirectory("gate-journal");
+        gateJournal = new GateJournal(directory, 16, false);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        gateJournal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void batchIsProjectedWithOneWritePerSpot() throws Exception {
+        gateJournal.append(GateEvent.enter("ABCDEF", 1, ParkingType.CAR, 1000, 1));
+        gateJournal.append(GateEvent.enter("GHIJKL", 2, ParkingType.CAR, 2000, 1));
+        gateJournal.append(GateEvent.exit("abcdef", 1, ParkingType.CAR, 1000, 3_601_000),
+                GateEvent.price("abcdef", 1, ParkingType.CAR, 1000, 3_601_000, 1.5));
+        // parked before the batch
+        gateJournal.append(GateEvent.exit("MNOPQR", 3, ParkingType.CAR, 500, 7_200_500),
+                GateEvent.price("MNOPQR", 3, ParkingType.CAR, 500, 7_200_500, 3));
+        when(gateProjectionDAO.getProjectedSequence()).thenReturn(0L);
+        when(gateProjectionDAO.project(anyList(), anyList(), anyCollection(), eq(6L))).thenReturn(true);
+        JournalProjector journalProjector = new JournalProjector(gateJournal, gateProjectionDAO);
+
+        assertTrue(journalProjector.catchUp());
+
+        ArgumentCaptor<List<Ticket>> newTickets = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<Ticket>> closedStays = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Collection<ParkingSpot>> changedSpots = ArgumentCaptor.forClass(Collection.class);
+        verify(gateProjectionDAO).project(newTickets.capture(), closedStays.capture(), changedSpots.capture(), eq(6L));
+        // entered and left within the batch: inserted closed, its spot untouched
+        assertEquals(2, newTickets.getValue().size());
+        assertEquals(3_601_000, newTickets.getValue().get(0).getOutTime().getTime());
+        assertEquals(1.5, newTickets.getValue().get(0).getPrice());
+        assertNull(newTickets.getValue().get(1).getOutTime());
+        assertEquals(1, closedStays.getValue().size());
+        assertEquals("MNOPQR", closedStays.getValue().get(0).getVehicleRegNumber());
+        assertEquals(500, closedStays.getValue().get(0).getInTime().getTime());
+        assertEquals(3, closedStays.getValue().get(0).getPrice());
+        List<ParkingSpot> spots = new ArrayList<>(changedSpots.getValue());
+        assertEquals(2, spots.size());
+        assertEquals(2, spots.get(0).getId());
+        assertFalse(spots.get(0).isAvailable());
+        assertEquals(3, spots.get(1).getId());
+        assertTrue(spots.get(1).isAvailable());
+        assertEquals(6, journalProjector.getProjectedSequence());
+        assertEquals(0, journalProjector.getLag());
+    }
+
+    @Test
+    public void projectionStopsWhileTheDataBaseIsDownAndRetriesTheBatch() throws Exception {
+        gateJournal.append(GateEvent.enter("AAA", 1, ParkingType.CAR, 1000, 1));
+        gateJournal.append(GateEvent.enter("BBB", 2, ParkingType.CAR, 2000, 1));
+        when(gateProjectionDAO.getProjectedSequence()).thenReturn(-1L, 1L);
+        when(gateProjectionDAO.project(anyList(), anyList(), anyCollection(), eq(2L))).thenReturn(false, true);
+        JournalProjector journalProjector = new JournalProjector(gateJournal, gateProjectionDAO);
+
+        // the projected sequence cannot be read
+        assertFalse(journalProjector.catchUp());
+        assertEquals(-1, journalProjector.getLag());
+        // AAA was projected before the DB went away, BBB fails once
+        assertFalse(journalProjector.catchUp());
+        assertEquals(1, journalProjector.getProjectedSequence());
+        assertEquals(1, journalProjector.getLag());
+
+        assertTrue(journalProjector.catchUp());
+        assertEquals(2, journalProjector.getProjectedSequence());
+        verify(gateProjectionDAO, times(2)).project(anyList(), anyList(), anyCollection(), eq(2L));
+    }
+}
@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.LotShardMap;
+import com.parkit.parkingsystem.config.ShardDataBaseConfig;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LotShardMapTest {
+
+    private static Properties shardMap(String... keyValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return properties;
+    }
+
+    @Test
+    public void lotsAreMappedToTheirShard() {
+        LotShardMap lotShardMap = LotShardMap.parse(shardMap(
+                "shard.north.url", "jdbc:mysql://db-north:3306/open_c_prod",
+                "shard.north.username", "parkit",
+                "shard.south.url", "jdbc:mysql://db-south:3306/open_c_prod",
+                "lot.3", "south",
+                "lot.1", "north",
+                "lot.2", " north "));
+
+        assertEquals(Arrays.asList(1, 2, 3), Arrays.asList(lotShardMap.getLotIds().toArray()));
+        assertEquals(Arrays.asList("north", "south"), Arrays.asList(lotShardMap.getShards().toArray()));
+        assertEquals("north", lotShardMap.getShard(2));
+        assertEquals("south", lotShardMap.getShard(3));
+        assertNull(lotShardMap.getShard(4));
+        ShardDataBaseConfig north = lotShardMap.newDataBaseConfig("north");
+        assertEquals("north", north.getShard());
+        assertFalse(north.isPooled());
+    }
+
+    @Test
+    public void malformedMapsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> LotShardMap.parse(shardMap("lot.1", "north")));
+        assertThrows(IllegalArgumentException.class, () -> LotShardMap.parse(shardMap(
+                "shard.north.url", "jdbc:mysql://db-north:3306/open_c_prod", "lot.north", "north")));
+        assertThrows(IllegalArgumentException.class, () -> LotShardMap.parse(shardMap(
+                "shard.north.url", "jdbc:mysql://db-north:3306/open_c_prod", "lot.0", "north")));
+        LotShardMap empty = LotShardMap.parse(shardMap());
+        assertTrue(empty.getLotIds().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> empty.newDataBaseConfig("north"));
+    }
+
+    @Test
+    public void lotDataBaseIsResolvedThroughTheShardMapFile() throws Exception {
+        Path file = Files.createTempFile("shards", ".properties");
+        try {
+            Files.write(file, ("shard.south.url=jdbc:mysql://db-south:3306/open_c_prod\nlot.3=south\n")
+                    .getBytes(StandardCharsets.UTF_8));
+
+            DataBaseConfig south = LotShardMap.newDataBaseConfig(file.toString(), 3);
+            assertEquals("south", ((ShardDataBaseConfig) south).getShard());
+            assertThrows(IllegalArgumentException.class, () -> LotShardMap.newDataBaseConfig(file.toString(), 4));
+            assertFalse(LotShardMap.newDataBaseConfig(null, 4) instanceof ShardDataBaseConfig);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
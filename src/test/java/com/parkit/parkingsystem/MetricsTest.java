@@ -0,0 +1,113 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MetricsTest {
+
+    @Mock
+    private DataBaseConfig dataBaseConfig;
+
+    @AfterEach
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void histogramPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_500, histogram.getMeanNanos(), 1e-6);
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.07);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.07);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void timerRecordsNothingWhileDisabled() {
+        Timer timer = Metrics.timer("MetricsTest.disabled");
+
+        long start = timer.start();
+        timer.stop(start);
+        timer.failed();
+
+        assertEquals(0, start);
+        assertEquals(0, timer.getHistogram().getCount());
+        assertEquals(0, timer.getFailures());
+    }
+
+    @Test
+    public void daoCallsAndFailuresAreRecordedWhenEnabled() throws Exception {
+        Metrics.setEnabled(true);
+        when(dataBaseConfig.getConnection()).thenThrow(new SQLException("DB down"));
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+
+        assertNull(ticketDAO.getTicket("ABCDEF"));
+        assertEquals(-1, ticketDAO.getNbTicket("ABCDEF"));
+
+        Timer getTicket = Metrics.timer("TicketDAO.getTicket");
+        assertEquals(1, getTicket.getHistogram().getCount());
+        assertEquals(1, getTicket.getFailures());
+        assertEquals(1, Metrics.timer("TicketDAO.getNbTicket").getFailures());
+    }
+
+    @Test
+    public void visitCountCacheStatsArePublished() {
+        Metrics.setEnabled(true);
+        VisitCountCache visitCountCache = new VisitCountCache(1, 60_000);
+
+        visitCountCache.get("AAA");
+        visitCountCache.put("AAA", 1);
+        visitCountCache.get("AAA");
+        visitCountCache.put("BBB", 1);
+
+        assertEquals(1, Metrics.counter("VisitCountCache.hits").getCount());
+        assertEquals(1, Metrics.counter("VisitCountCache.misses").getCount());
+        assertEquals(1, Metrics.counter("VisitCountCache.evictions").getCount());
+    }
+
+    @Test
+    public void mbeanTogglesRecordingAndListsTimers() throws Exception {
+        assertTrue(Metrics.registerMBean());
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(Metrics.OBJECT_NAME);
+
+        mBeanServer.setAttribute(objectName, new Attribute("Enabled", true));
+        Timer timer = Metrics.timer("MetricsTest.mbean");
+        timer.stop(timer.start());
+
+        assertTrue(Metrics.isEnabled());
+        String[] timers = (String[]) mBeanServer.getAttribute(objectName, "Timers");
+        boolean listed = false;
+        for (String line : timers) {
+            listed |= line.startsWith("MetricsTest.mbean count=1 ");
+        }
+        assertTrue(listed);
+    }
+}
@@ -0,0 +1,173 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OccupancyCounters;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.journal.JournalProjector;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.OccupancyService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class OccupancyServiceTest {
+
+    @Mock
+    private DataBaseConfig dataBaseConfig;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    private final Map<ParkingType, Integer> parkingTable = new EnumMap<>(ParkingType.class);
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private OccupancyService occupancyService;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        parkingTable.put(ParkingType.CAR, 3);
+        parkingTable.put(ParkingType.BIKE, 2);
+        parkingSpotDAO = new ParkingSpotDAO() {
+            @Override
+            public Map<ParkingType, Integer> getAvailableSpotCounts() {
+                return new EnumMap<>(parkingTable);
+            }
+        };
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        occupancyService = new OccupancyService(parkingSpotDAO, ticketDAO);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        occupancyService.close();
+    }
+
+    @Test
+    public void countsAreSeededThenFollowClaimsAndClosedTickets() throws Exception {
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+
+        assertTrue(occupancyService.start(60_000));
+        assertEquals(3, occupancyService.getAvailable(ParkingType.CAR));
+        assertEquals(2, parkingSpotDAO.getAvailableSpotCount(ParkingType.BIKE));
+
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, true);
+        assertTrue(parkingSpotDAO.claimParkingSpot(parkingSpot));
+        assertEquals(2, occupancyService.getAvailable(ParkingType.CAR));
+
+        Ticket ticket = new Ticket(1, parkingSpot, "ABCDEF", 1.5, new Date(), new Date());
+        assertTrue(ticketDAO.closeTicket(ticket));
+        assertEquals(3, occupancyService.getAvailable(ParkingType.CAR));
+    }
+
+    @Test
+    public void onlySpotsThatChangeStateAreCounted() throws Exception {
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.FLIP_PARKING_SPOT)).thenReturn(preparedStatement);
+        // the first update frees a taken spot, the second finds it free already
+        when(preparedStatement.executeUpdate()).thenReturn(1, 0);
+        assertTrue(occupancyService.start(60_000));
+
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, true);
+        assertTrue(parkingSpotDAO.updateParking(parkingSpot));
+        assertTrue(parkingSpotDAO.updateParking(parkingSpot));
+
+        assertEquals(4, occupancyService.getAvailable(ParkingType.CAR));
+        verify(preparedStatement, times(2)).setBoolean(3, true);
+    }
+
+    @Test
+    public void reconcileResetsDriftedCounts() {
+        assertTrue(occupancyService.start(60_000));
+        parkingTable.put(ParkingType.BIKE, 0);
+
+        assertEquals(2, occupancyService.getAvailable(ParkingType.BIKE));
+        assertTrue(occupancyService.reconcile());
+        assertEquals(0, occupancyService.getAvailable(ParkingType.BIKE));
+        assertEquals(3, occupancyService.getAvailable(ParkingType.CAR));
+    }
+
+    @Test
+    public void reconcileWaitsForTheGateJournalToBeProjected() {
+        JournalProjector journalProjector = mock(JournalProjector.class);
+        when(journalProjector.getProjectedSequence()).thenReturn(5L);
+        when(journalProjector.getLag()).thenReturn(1L);
+        assertTrue(occupancyService.start(60_000));
+        occupancyService.setJournalProjector(journalProjector);
+        // a journaled entry took a bike spot that the parking table does not show yet
+        parkingSpotDAO.updateJournaledSlot(new ParkingSpot(4, ParkingType.BIKE, false));
+
+        assertFalse(occupancyService.reconcile());
+        assertEquals(1, occupancyService.getAvailable(ParkingType.BIKE));
+
+        parkingTable.put(ParkingType.BIKE, 1);
+        doReturn(6L).when(journalProjector).getProjectedSequence();
+        doReturn(0L).when(journalProjector).getLag();
+        assertTrue(occupancyService.reconcile());
+        assertEquals(1, occupancyService.getAvailable(ParkingType.BIKE));
+    }
+
+    @Test
+    public void countersAreNotHookedWhenSeedingFails() {
+        ParkingSpotDAO failingDAO = new ParkingSpotDAO() {
+            @Override
+            public Map<ParkingType, Integer> getAvailableSpotCounts() {
+                return null;
+            }
+        };
+        OccupancyService failing = new OccupancyService(failingDAO, ticketDAO);
+
+        assertFalse(failing.start(60_000));
+        assertNull(failingDAO.occupancyCounters);
+        assertNull(ticketDAO.occupancyCounters);
+    }
+
+    @Test
+    public void concurrentUpdatesAreAllCounted() throws Exception {
+        OccupancyCounters occupancyCounters = new OccupancyCounters();
+        occupancyCounters.reconcile(ParkingType.CAR, 1000);
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        for (int gate = 0; gate < 8; gate++) {
+            gates.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    occupancyCounters.spotTaken(ParkingType.CAR);
+                    occupancyCounters.spotFreed(ParkingType.CAR);
+                }
+                occupancyCounters.spotTaken(ParkingType.CAR);
+            });
+        }
+        gates.shutdown();
+        assertTrue(gates.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(992, occupancyCounters.getAvailable(ParkingType.CAR));
+    }
+}
@@ -0,0 +1,59 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OpenTicketStore;
+import com.parkit.parkingsystem.util.PlateCodec;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpenTicketStoreTest {
+
+    @Test
+    public void platesArePackedCaseInsensitively() {
+        long packed = PlateCodec.encode("ab-123-cd");
+
+        assertEquals(PlateCodec.encode("AB-123-CD"), packed);
+        assertEquals("AB-123-CD", PlateCodec.decode(packed));
+        assertEquals("Z", PlateCodec.decode(PlateCodec.encode("z")));
+        assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode(""));
+        assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode("AB_123"));
+        assertEquals(PlateCodec.NOT_ENCODABLE, PlateCodec.encode("ABCDEFGHIJK"));
+    }
+
+    @Test
+    public void storedTicketsSurviveGrowthAndRemovals() {
+        OpenTicketStore store = new OpenTicketStore(4);
+        for (int i = 1; i <= 5000; i++) {
+            assertTrue(store.put("V" + i, i, i % 100, i % 2 == 0 ? ParkingType.CAR : ParkingType.BIKE, 1000L * i, 1));
+        }
+        for (int i = 1; i <= 5000; i += 2) {
+            assertTrue(store.remove("V" + i, i));
+        }
+
+        assertEquals(2500, store.size());
+        OpenTicketStore.OpenTicket openTicket = new OpenTicketStore.OpenTicket();
+        for (int i = 1; i <= 5000; i++) {
+            assertEquals(i % 2 == 0, store.get("V" + i, openTicket));
+        }
+        assertTrue(store.get("V4242", openTicket));
+        assertEquals(4242, openTicket.getTicketId());
+        assertEquals(42, openTicket.getParkingNumber());
+        assertEquals(ParkingType.CAR, openTicket.getParkingType());
+        assertEquals(4_242_000L, openTicket.getInTimeMillis());
+    }
+
+    @Test
+    public void pendingTicketGetsItsIdOnlyIfStillParked() {
+        OpenTicketStore store = new OpenTicketStore(16);
+        OpenTicketStore.OpenTicket openTicket = new OpenTicketStore.OpenTicket();
+        store.put("ABCDEF", 0, 1, ParkingType.CAR, 1000L, 1);
+
+        assertFalse(store.setTicketId("ABCDEF", 2000L, 7));
+        assertFalse(store.remove("ABCDEF", 7));
+        assertTrue(store.setTicketId("ABCDEF", 1000L, 7));
+        assertTrue(store.get("ABCDEF", openTicket));
+        assertEquals(7, openTicket.getTicketId());
+        assertFalse(store.put("AB_CDEF", 8, 2, ParkingType.CAR, 1000L, 1));
+    }
+}
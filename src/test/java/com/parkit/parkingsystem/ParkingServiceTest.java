@@ -1,8 +1,12 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.journal.GateEvent;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.GateSnapshot;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.ParkingService;
@@ -20,9 +24,16 @@ import org.mockito.Mock;
 
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
@@ -60,9 +71,11 @@ public class ParkingServiceTest {
             ticket.setParkingSpot(parkingSpot);
             ticket.setVehicleRegNumber("ABCDEF");
 
-            lenient().when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
-            lenient().when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
+            lenient().when(ticketDAO.getOpenTicket(anyString())).thenReturn(ticket);
+            lenient().when(ticketDAO.closeTicket(any(Ticket.class))).thenReturn(true);
             lenient().when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+            lenient().when(parkingSpotDAO.claimParkingSpot(any(ParkingSpot.class))).thenReturn(true);
+            lenient().when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
 
             parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
         } catch (Exception e) {
@@ -76,9 +89,20 @@ public class ParkingServiceTest {
 
         parkingService.processExitingVehicle();
 
-        verify(ticketDAO, times(1)).getNbTicket("ABCDEF");
-        verify(ticketDAO, times(1)).updateTicket(any(Ticket.class));
-        verify(parkingSpotDAO, times(1)).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO, times(1)).getOpenTicket("ABCDEF");
+        verify(ticketDAO, never()).getNbTicket(anyString());
+        verify(ticketDAO, times(1)).closeTicket(any(Ticket.class));
+        verify(parkingSpotDAO, times(1)).releaseSlot(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void processExitingVehicleWithoutOpenTicketTest(){
+        when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(null);
+
+        parkingService.processExitingVehicle();
+
+        verify(ticketDAO, never()).closeTicket(any(Ticket.class));
+        verify(parkingSpotDAO, never()).releaseSlot(any(ParkingSpot.class));
     }
 
     @Test
@@ -94,14 +118,50 @@ public class ParkingServiceTest {
         verify(ticketDAO, times(1)).saveTicket(any(Ticket.class));
     }
 
+    @Test
+    public void testProcessIncomingVehicleSpotTakenByAnotherGate() {
+
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(parkingSpotDAO.claimParkingSpot(any(ParkingSpot.class))).thenReturn(false);
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(2);
+
+        parkingService.processIncomingVehicle();
+
+        verify(ticketDAO, times(1)).saveTicket(argThat(ticket -> ticket.getParkingSpot().getId() == 2));
+    }
+
+    @Test
+    public void testProcessIncomingVehicleNoSpotLeftToClaim() {
+
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(parkingSpotDAO.claimParkingSpot(any(ParkingSpot.class))).thenReturn(false);
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(-1);
+
+        parkingService.processIncomingVehicle();
+
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void spotIsFreedWhenTheTicketCannotBeSaved() {
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(false);
+
+        assertNull(parkingService.processIncomingVehicle("ABCDEF", ParkingType.CAR, new Date()));
+
+        verify(parkingSpotDAO).updateParking(argThat(parkingSpot -> parkingSpot.getId() == 1 && parkingSpot.isAvailable()));
+    }
+
     @Test
     public void testProcessExitingVehicleTestUnableUpdate () {
-        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(false);
+        when(ticketDAO.closeTicket(any(Ticket.class))).thenReturn(false);
 
         parkingService.processExitingVehicle();
 
-        verify(ticketDAO, times(1)).updateTicket(any(Ticket.class));
-        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO, times(1)).closeTicket(any(Ticket.class));
+        verify(parkingSpotDAO, never()).releaseSlot(any(ParkingSpot.class));
     }
 
     @Test
@@ -155,17 +215,82 @@ public class ParkingServiceTest {
                     new Date(System.currentTimeMillis() - (60 * 60 * 1000)), new Date());
 
             when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(vehicleRegNumber);
-            when(ticketDAO.getTicket(vehicleRegNumber)).thenReturn(ticket);
-            when(ticketDAO.updateTicket(ticket)).thenReturn(true);
-            when(ticketDAO.getNbTicket(vehicleRegNumber)).thenReturn(4);
+            ticket.setVehicleTicketCount(4);
+            when(ticketDAO.getOpenTicket(vehicleRegNumber)).thenReturn(ticket);
+            when(ticketDAO.closeTicket(ticket)).thenReturn(true);
 
             parkingService.processExitingVehicle();
 
-            verify(parkingSpotDAO).updateParking(parkingSpot);
+            verify(parkingSpotDAO).releaseSlot(parkingSpot);
 
         } catch (Exception e) {
             e.printStackTrace();
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void journaledEntryAndExitSkipTheDataBaseAndAreSnapshotted() throws Exception {
+        Path directory = Files.createTempDirectory("gate-journal");
+        GateJournal gateJournal = new GateJournal(directory, 16, false);
+        parkingService.setGateJournal(gateJournal);
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0);
+        Date inTime = new Date(System.currentTimeMillis() - (60 * 60 * 1000));
+
+        Ticket entered = parkingService.processIncomingVehicle("ABCDEF", ParkingType.CAR, inTime);
+
+        assertEquals(1, entered.getVehicleTicketCount());
+        verify(ticketDAO).storeJournaledTicket(entered, true);
+        when(parkingSpotDAO.getIndexedParkingSpots()).thenReturn(Collections.singletonList(entered.getParkingSpot()));
+        when(ticketDAO.getStoredOpenTickets()).thenReturn(Collections.singletonList(entered));
+        GateSnapshot snapshot = parkingService.captureGateSnapshot(100);
+        assertEquals(1, snapshot.getSequence());
+        assertEquals(entered, snapshot.getOpenTickets().get(0));
+        when(ticketDAO.getJournaledOpenTicket("ABCDEF")).thenReturn(entered);
+        when(ticketDAO.removeJournaledTicket(entered)).thenReturn(true);
+
+        Ticket exited = parkingService.processExitingVehicle("ABCDEF", new Date());
+
+        assertEquals(Fare.CAR_RATE_PER_HOUR, exited.getPrice(), 0.01);
+        verify(parkingSpotDAO, times(2)).updateJournaledSlot(any(ParkingSpot.class));
+        verify(parkingSpotDAO, never()).claimParkingSpot(any(ParkingSpot.class));
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+        verify(ticketDAO, never()).closeTicket(any(Ticket.class));
+        List<GateEvent> events = gateJournal.read(1, 10);
+        assertEquals(3, events.size());
+        assertEquals(GateEvent.Type.PRICE, events.get(2).getType());
+        assertEquals(exited.getPrice(), events.get(2).getPrice());
+        gateJournal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void visitCountUnknownAtEntryIsCountedAtExit() throws Exception {
+        Path directory = Files.createTempDirectory("gate-journal");
+        GateJournal gateJournal = new GateJournal(directory, 16, false);
+        parkingService.setGateJournal(gateJournal);
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(-1);
+        Date inTime = new Date(System.currentTimeMillis() - (60 * 60 * 1000));
+
+        Ticket entered = parkingService.processIncomingVehicle("ABCDEF", ParkingType.CAR, inTime);
+
+        assertEquals(0, entered.getVehicleTicketCount());
+        assertEquals(0, gateJournal.read(1, 10).get(0).getVehicleTicketCount());
+        when(ticketDAO.getJournaledOpenTicket("ABCDEF")).thenReturn(entered);
+        when(ticketDAO.removeJournaledTicket(entered)).thenReturn(true);
+        when(ticketDAO.getNbTicketUpTo(entered)).thenReturn(3);
+
+        Ticket exited = parkingService.processExitingVehicle("ABCDEF", new Date());
+
+        assertEquals(3, exited.getVehicleTicketCount());
+        assertEquals(Fare.CAR_RATE_PER_HOUR * 0.95, exited.getPrice(), 0.01);
+        gateJournal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
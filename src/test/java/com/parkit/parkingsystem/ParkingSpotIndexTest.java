@@ -0,0 +1,102 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingSpotIndexTest {
+
+    private static List<ParkingSpot> spots(int cars, int bikes) {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int i = 1; i <= cars; i++) {
+            parkingSpots.add(new ParkingSpot(i, ParkingType.CAR, true));
+        }
+        for (int i = cars + 1; i <= cars + bikes; i++) {
+            parkingSpots.add(new ParkingSpot(i, ParkingType.BIKE, true));
+        }
+        return parkingSpots;
+    }
+
+    @Test
+    public void claimReturnsLowestFreeSpotOfType() {
+        List<ParkingSpot> parkingSpots = spots(3, 2);
+        parkingSpots.get(0).setAvailable(false);
+        ParkingSpotIndex parkingSpotIndex = new ParkingSpotIndex(parkingSpots);
+
+        assertEquals(2, parkingSpotIndex.claim(ParkingType.CAR));
+        assertEquals(4, parkingSpotIndex.claim(ParkingType.BIKE));
+        assertEquals(3, parkingSpotIndex.claim(ParkingType.CAR));
+        assertEquals(-1, parkingSpotIndex.claim(ParkingType.CAR));
+    }
+
+    @Test
+    public void indexedSpotsCanRebuildTheIndex() {
+        ParkingSpotIndex parkingSpotIndex = new ParkingSpotIndex(spots(3, 2));
+        parkingSpotIndex.claim(ParkingType.CAR);
+        parkingSpotIndex.claim(ParkingType.BIKE);
+
+        ParkingSpotIndex rebuilt = new ParkingSpotIndex(parkingSpotIndex.getParkingSpots());
+
+        assertEquals(5, parkingSpotIndex.getParkingSpots().size());
+        assertFalse(rebuilt.isAvailable(1));
+        assertFalse(rebuilt.isAvailable(4));
+        assertEquals(2, rebuilt.claim(ParkingType.CAR));
+        assertEquals(5, rebuilt.claim(ParkingType.BIKE));
+    }
+
+    @Test
+    public void releasedSpotIsHandedOutAgain() {
+        ParkingSpotIndex parkingSpotIndex = new ParkingSpotIndex(spots(200, 0));
+        for (int i = 0; i < 200; i++) {
+            parkingSpotIndex.claim(ParkingType.CAR);
+        }
+
+        assertTrue(parkingSpotIndex.release(70));
+        assertFalse(parkingSpotIndex.release(70));
+        assertEquals(1, parkingSpotIndex.getAvailableCount(ParkingType.CAR));
+        assertEquals(70, parkingSpotIndex.claim(ParkingType.CAR));
+        assertEquals(0, parkingSpotIndex.getAvailableCount(ParkingType.CAR));
+    }
+
+    @Test
+    public void concurrentClaimsNeverShareASpot() throws Exception {
+        int nbSpots = 10_000;
+        ParkingSpotIndex parkingSpotIndex = new ParkingSpotIndex(spots(nbSpots, 0));
+        Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> gates = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            gates.add(executor.submit(() -> {
+                start.await();
+                int parkingNumber;
+                while ((parkingNumber = parkingSpotIndex.claim(ParkingType.CAR)) > 0) {
+                    assertTrue(claimed.add(parkingNumber), "spot handed out twice: " + parkingNumber);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Object> gate : gates) {
+            gate.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(nbSpots, claimed.size());
+        assertEquals(0, parkingSpotIndex.getAvailableCount(ParkingType.CAR));
+    }
+}
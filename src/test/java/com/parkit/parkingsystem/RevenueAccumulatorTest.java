@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.RevenueAccumulator;
+import com.parkit.parkingsystem.model.RevenueBucket;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevenueAccumulatorTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    private static long millis(String localDateTime) {
+        return Timestamp.valueOf(LocalDateTime.parse(localDateTime)).getTime();
+    }
+
+    @Test
+    public void stayIsSplitOverTheHoursItOverlapsAndFareGoesToTheOutHour() {
+        RevenueAccumulator accumulator = new RevenueAccumulator();
+        accumulator.addTicket(ParkingType.CAR, millis("2024-01-01T08:30:00"), millis("2024-01-01T10:15:00"), 2.5);
+
+        List<RevenueBucket> buckets = accumulator.drain();
+
+        assertEquals(3, buckets.size());
+        assertEquals(millis("2024-01-01T08:00:00"), buckets.get(0).getHourStart().getTime());
+        assertEquals(30 * MINUTE, buckets.get(0).getOccupiedMillis());
+        assertEquals(0, buckets.get(0).getClosedTickets());
+        assertEquals(60 * MINUTE, buckets.get(1).getOccupiedMillis());
+        assertEquals(1.0, buckets.get(1).getAverageOccupiedSpots());
+        assertEquals(millis("2024-01-01T10:00:00"), buckets.get(2).getHourStart().getTime());
+        assertEquals(15 * MINUTE, buckets.get(2).getOccupiedMillis());
+        assertEquals(1, buckets.get(2).getClosedTickets());
+        assertEquals(2.5, buckets.get(2).getRevenue());
+        assertTrue(accumulator.isEmpty());
+    }
+
+    @Test
+    public void ticketsOfTheSameHourAndTypeShareABucket() {
+        RevenueAccumulator accumulator = new RevenueAccumulator();
+        accumulator.addTicket(ParkingType.CAR, millis("2024-01-01T08:00:00"), millis("2024-01-01T08:20:00"), 0);
+        accumulator.addTicket(ParkingType.CAR, millis("2024-01-01T08:10:00"), millis("2024-01-01T08:50:00"), 1.5);
+        accumulator.addTicket(ParkingType.BIKE, millis("2024-01-01T08:10:00"), millis("2024-01-01T08:40:00"), 1);
+
+        List<RevenueBucket> buckets = accumulator.drain();
+
+        assertEquals(2, buckets.size());
+        assertEquals(ParkingType.CAR, buckets.get(0).getParkingType());
+        assertEquals(2, buckets.get(0).getClosedTickets());
+        assertEquals(60 * MINUTE, buckets.get(0).getOccupiedMillis());
+        assertEquals(1.5, buckets.get(0).getRevenue());
+        assertEquals(ParkingType.BIKE, buckets.get(1).getParkingType());
+        assertEquals(30 * MINUTE, buckets.get(1).getOccupiedMillis());
+    }
+
+    @Test
+    public void onlyWhatFallsInTheRangeIsAdded() {
+        RevenueAccumulator accumulator = new RevenueAccumulator();
+        long from = millis("2024-01-01T09:00:00");
+        long to = millis("2024-01-01T10:00:00");
+        // parked across the whole range, paid after it
+        accumulator.addTicket(ParkingType.CAR, millis("2024-01-01T08:30:00"), millis("2024-01-01T10:15:00"), 2.5, from, to);
+
+        List<RevenueBucket> buckets = accumulator.drain();
+
+        assertEquals(1, buckets.size());
+        assertEquals(from, buckets.get(0).getHourStart().getTime());
+        assertEquals(60 * MINUTE, buckets.get(0).getOccupiedMillis());
+        assertEquals(0, buckets.get(0).getClosedTickets());
+        assertEquals(0, buckets.get(0).getRevenue());
+    }
+}
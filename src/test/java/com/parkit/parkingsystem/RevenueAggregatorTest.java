@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.RevenueAggregateDAO;
+import com.parkit.parkingsystem.dao.RevenueAggregator;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.RevenueBucket;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RevenueAggregatorTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Mock
+    private RevenueAggregateDAO revenueAggregateDAO;
+
+    private Ticket closedTicket(double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        // the start of an hour in any time zone with a whole-hour offset
+        long inTime = System.currentTimeMillis() / HOUR * HOUR - 2 * HOUR;
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(new Date(inTime + HOUR / 2));
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void closedTicketsOfAnHourAreFlushedAsOneBucket() {
+        when(revenueAggregateDAO.addBuckets(anyCollection())).thenReturn(true);
+        RevenueAggregator revenueAggregator = new RevenueAggregator(revenueAggregateDAO, 60_000);
+        revenueAggregator.record(closedTicket(1.5));
+        revenueAggregator.record(closedTicket(1));
+        revenueAggregator.flush();
+
+        ArgumentCaptor<Collection<RevenueBucket>> buckets = ArgumentCaptor.forClass(Collection.class);
+        verify(revenueAggregateDAO, times(1)).addBuckets(buckets.capture());
+        assertEquals(1, buckets.getValue().size());
+        RevenueBucket bucket = buckets.getValue().iterator().next();
+        assertEquals(2, bucket.getClosedTickets());
+        assertEquals(2.5, bucket.getRevenue());
+        assertEquals(HOUR, bucket.getOccupiedMillis());
+        assertFalse(revenueAggregator.hasPending());
+
+        revenueAggregator.close();
+        verify(revenueAggregateDAO, times(1)).addBuckets(anyCollection());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failedFlushIsRetriedWithTheTicketsClosedSince() {
+        when(revenueAggregateDAO.addBuckets(anyCollection())).thenReturn(false, true);
+        RevenueAggregator revenueAggregator = new RevenueAggregator(revenueAggregateDAO, 60_000);
+        revenueAggregator.record(closedTicket(1.5));
+        revenueAggregator.flush();
+        assertTrue(revenueAggregator.hasPending());
+
+        revenueAggregator.record(closedTicket(1));
+        revenueAggregator.close();
+
+        ArgumentCaptor<Collection<RevenueBucket>> buckets = ArgumentCaptor.forClass(Collection.class);
+        verify(revenueAggregateDAO, times(2)).addBuckets(buckets.capture());
+        List<Collection<RevenueBucket>> flushes = buckets.getAllValues();
+        RevenueBucket retried = flushes.get(1).iterator().next();
+        assertEquals(2, retried.getClosedTickets());
+        assertEquals(2.5, retried.getRevenue());
+        assertFalse(revenueAggregator.hasPending());
+    }
+}
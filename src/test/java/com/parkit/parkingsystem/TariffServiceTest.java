@@ -0,0 +1,173 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffSchedule;
+import com.parkit.parkingsystem.service.TariffService;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.BitSet;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TariffServiceTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    // Monday 2024-01-01 00:00 UTC
+    private static final long MONDAY = 1704067200000L;
+    private static final long SATURDAY = MONDAY + 5 * 24 * HOUR;
+    private static final int CAR = ParkingType.CAR.ordinal();
+    private static final int BIKE = ParkingType.BIKE.ordinal();
+
+    private final TariffService tariffService = new TariffService();
+
+    @Test
+    public void defaultTariffIsTheFlatFare() {
+        TariffSchedule schedule = tariffService.getSchedule();
+
+        assertTrue(schedule.isFlat());
+        assertEquals(Fare.CAR_RATE_CENTS_PER_HOUR, schedule.getRateCentsPerHour(CAR, 100));
+        assertEquals(Fare.BIKE_RATE_CENTS_PER_HOUR, schedule.getRateCentsPerHour(BIKE, 0));
+        assertEquals(Fare.FREE_DURATION_MILLIS, schedule.getFreeDurationMillis());
+        assertEquals(300, schedule.priceCents(MONDAY, MONDAY + 2 * HOUR, CAR, false));
+        assertEquals(0, schedule.priceCents(MONDAY, MONDAY + HOUR / 2, CAR, false));
+    }
+
+    @Test
+    public void weekendAndHourRulesOverrideBaseRate() {
+        tariffService.load(tariff("rate.CAR", "150", "rate.CAR.weekend", "100", "rate.CAR.weekday.08-19", "200"));
+        TariffSchedule schedule = tariffService.getSchedule();
+
+        assertFalse(schedule.isFlat());
+        assertEquals(150, schedule.getRateCentsPerHour(CAR, 7));
+        assertEquals(200, schedule.getRateCentsPerHour(CAR, 8));
+        assertEquals(150, schedule.getRateCentsPerHour(CAR, 19));
+        assertEquals(100, schedule.getRateCentsPerHour(CAR, 5 * 24 + 10));
+        assertEquals(Fare.BIKE_RATE_CENTS_PER_HOUR, schedule.getRateCentsPerHour(BIKE, 10));
+        assertEquals(200, schedule.priceCents(SATURDAY, SATURDAY + 2 * HOUR, CAR, false));
+    }
+
+    @Test
+    public void stayCrossingRateBoundaryIsSplitPerHour() {
+        tariffService.load(tariff("rate.CAR", "150", "rate.CAR.weekday.08-19", "200"));
+
+        // 07:00 to 09:00 on a Monday: one hour at 1.50, one hour at 2.00
+        assertEquals(350, tariffService.getSchedule().priceCents(MONDAY + 7 * HOUR, MONDAY + 9 * HOUR, CAR, false));
+        // Sunday 23:00 to Monday 01:00 wraps around the week
+        assertEquals(300, tariffService.getSchedule().priceCents(MONDAY - HOUR, MONDAY + HOUR, CAR, false));
+    }
+
+    @Test
+    public void namedDayRulesOverrideWeekdayAndWeekend() {
+        tariffService.load(tariff("rate.CAR.monday", "50", "rate.CAR.weekday", "200",
+                "rate.CAR.sunday.08-19", "70", "rate.CAR.weekend.00-24", "120"));
+        TariffSchedule schedule = tariffService.getSchedule();
+
+        assertEquals(50, schedule.getRateCentsPerHour(CAR, 10));
+        assertEquals(200, schedule.getRateCentsPerHour(CAR, 24 + 10));
+        assertEquals(120, schedule.getRateCentsPerHour(CAR, 5 * 24 + 10));
+        assertEquals(70, schedule.getRateCentsPerHour(CAR, 6 * 24 + 10));
+        assertEquals(120, schedule.getRateCentsPerHour(CAR, 6 * 24 + 20));
+    }
+
+    @Test
+    public void hourRangeWrapsPastMidnight() {
+        tariffService.load(tariff("rate.CAR.friday.22-02", "50"));
+        TariffSchedule schedule = tariffService.getSchedule();
+
+        assertEquals(50, schedule.getRateCentsPerHour(CAR, 4 * 24 + 23));
+        assertEquals(50, schedule.getRateCentsPerHour(CAR, 5 * 24 + 1));
+        assertEquals(Fare.CAR_RATE_CENTS_PER_HOUR, schedule.getRateCentsPerHour(CAR, 5 * 24 + 2));
+    }
+
+    @Test
+    public void lotOverridesDefaultTariff() {
+        tariffService.load(tariff("rate.BIKE", "120", "discount.percent", "10", "lot.2.rate.BIKE", "80"));
+
+        assertEquals(120, tariffService.getSchedule().getRateCentsPerHour(BIKE, 0));
+        assertEquals(80, tariffService.getSchedule("2").getRateCentsPerHour(BIKE, 0));
+        assertEquals(10, tariffService.getSchedule("2").getDiscountPercent());
+        assertSame(tariffService.getSchedule(), tariffService.getSchedule("3"));
+    }
+
+    @Test
+    public void invalidTariffKeepsCurrentSchedule() {
+        TariffSchedule current = tariffService.getSchedule();
+
+        assertThrows(IllegalArgumentException.class, () -> tariffService.load(tariff("rate.CAR.someday", "100")));
+        assertThrows(IllegalArgumentException.class, () -> tariffService.load(tariff("rate.CAR.weekday.8-25", "100")));
+        assertThrows(IllegalArgumentException.class, () -> tariffService.load(tariff("lot.north.rate.BIKE", "80")));
+        assertSame(current, tariffService.getSchedule());
+    }
+
+    @Test
+    public void reloadSwapsTariffFromFile() throws Exception {
+        Path tariffFile = Files.createTempFile("tariff", ".properties");
+        try {
+            Files.write(tariffFile, "rate.CAR=300\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(tariffService.reload(tariffFile));
+            assertEquals(300, tariffService.getSchedule().getRateCentsPerHour(CAR, 0));
+
+            Files.write(tariffFile, "rate.CAR=oops\n".getBytes(StandardCharsets.UTF_8));
+            assertFalse(tariffService.reload(tariffFile));
+            assertEquals(300, tariffService.getSchedule().getRateCentsPerHour(CAR, 0));
+        } finally {
+            Files.delete(tariffFile);
+        }
+    }
+
+    @Test
+    public void autoReloadPicksUpChangedFile() throws Exception {
+        Path tariffFile = Files.createTempFile("tariff", ".properties");
+        try {
+            Files.write(tariffFile, "rate.CAR=300\n".getBytes(StandardCharsets.UTF_8));
+            tariffService.startAutoReload(tariffFile, 10);
+            assertEquals(300, tariffService.getSchedule().getRateCentsPerHour(CAR, 0));
+
+            Files.write(tariffFile, "rate.CAR=400\n".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(tariffFile, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (tariffService.getSchedule().getRateCentsPerHour(CAR, 0) != 400 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(400, tariffService.getSchedule().getRateCentsPerHour(CAR, 0));
+        } finally {
+            tariffService.stopAutoReload();
+            Files.delete(tariffFile);
+        }
+    }
+
+    @Test
+    public void bulkFaresUseTimeOfDayTariff() {
+        tariffService.load(tariff("rate.CAR.weekday.08-19", "200"));
+        FareCalculatorService fareCalculatorService = new FareCalculatorService(tariffService);
+        long[] inTimes = {MONDAY + 7 * HOUR, SATURDAY, MONDAY + 9 * HOUR};
+        long[] outTimes = {MONDAY + 9 * HOUR, SATURDAY + 2 * HOUR, MONDAY + 9 * HOUR + HOUR / 4};
+        int[] types = {CAR, CAR, BIKE};
+        long[] fares = new long[3];
+
+        fareCalculatorService.calculateFaresCents(inTimes, outTimes, types, new BitSet(), fares);
+
+        for (int i = 0; i < fares.length; i++) {
+            assertEquals(fareCalculatorService.calculateFareCents(inTimes[i], outTimes[i], types[i], false), fares[i]);
+        }
+        assertEquals(350, fares[0]);
+        assertEquals(300, fares[1]);
+        assertEquals(0, fares[2]);
+    }
+
+    private static Properties tariff(String... keyValues) {
+        Properties tariff = new Properties();
+        tariff.setProperty("timezone", "UTC");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            tariff.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return tariff;
+    }
+}
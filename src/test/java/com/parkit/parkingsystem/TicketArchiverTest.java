@@ -0,0 +1,50 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketArchiverTest {
+
+    @Mock
+    private TicketArchiveDAO ticketArchiveDAO;
+
+    @Test
+    public void archivesBatchesUntilOneIsNotFull() {
+        when(ticketArchiveDAO.archiveBatch(any(Date.class), eq(100))).thenReturn(100, 100, 42);
+        TicketArchiver ticketArchiver = new TicketArchiver(ticketArchiveDAO, 30, 100, 0);
+
+        long before = System.currentTimeMillis();
+        assertEquals(242, ticketArchiver.archive());
+
+        ArgumentCaptor<Date> closedBefore = ArgumentCaptor.forClass(Date.class);
+        verify(ticketArchiveDAO, times(3)).archiveBatch(closedBefore.capture(), eq(100));
+        // one cutoff for the whole run
+        assertEquals(1, closedBefore.getAllValues().stream().distinct().count());
+        long retentionMs = before - closedBefore.getValue().getTime();
+        assertTrue(retentionMs <= TimeUnit.DAYS.toMillis(30) && retentionMs > TimeUnit.DAYS.toMillis(30) - 1000);
+    }
+
+    @Test
+    public void aFailedBatchEndsTheRun() {
+        when(ticketArchiveDAO.archiveBatch(any(Date.class), eq(100))).thenReturn(100, -1);
+        TicketArchiver ticketArchiver = new TicketArchiver(ticketArchiveDAO, 30, 100, 0);
+
+        assertEquals(-1, ticketArchiver.archive());
+
+        verify(ticketArchiveDAO, times(2)).archiveBatch(any(Date.class), eq(100));
+    }
+}
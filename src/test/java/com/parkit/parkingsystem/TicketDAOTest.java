@@ -0,0 +1,167 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OpenTicketStore;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketDAOTest {
+
+    @Mock
+    private DataBaseConfig dataBaseConfig;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement preparedStatement;
+    @Mock
+    private ResultSet resultSet;
+
+    private TicketDAO ticketDAO;
+    private Ticket ticket;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticket = new Ticket(1, new ParkingSpot(1, ParkingType.CAR, false), "ABCDEF", 1.5,
+                new Date(System.currentTimeMillis() - 60 * 60 * 1000), new Date());
+    }
+
+    @Test
+    public void saveAndUpdateCloseTheirStatementsSoTheyReturnToTheCache() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        doReturn(preparedStatement).when(connection).prepareStatement(anyString(), anyInt());
+        when(preparedStatement.getGeneratedKeys()).thenReturn(resultSet);
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+
+        assertTrue(ticketDAO.saveTicket(ticket));
+        assertTrue(ticketDAO.updateTicket(ticket));
+
+        verify(preparedStatement, times(2)).close();
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    public void queriesCloseResultSetStatementAndConnection() throws Exception {
+        when(connection.prepareStatement(DBConstants.GET_NB_TICKET)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getInt("COUNT")).thenReturn(3);
+
+        assertEquals(3, ticketDAO.getNbTicket("ABCDEF"));
+
+        verify(resultSet).close();
+        verify(preparedStatement).close();
+        verify(connection).close();
+    }
+
+    @Test
+    public void statementIsClosedWhenTheQueryFails() throws Exception {
+        when(connection.prepareStatement(DBConstants.GET_TICKET)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenThrow(new SQLException("DB down"));
+
+        assertNull(ticketDAO.getTicket("ABCDEF"));
+
+        verify(preparedStatement).close();
+        verify(connection).close();
+    }
+
+    @Test
+    public void exitLookupIsServedFromTheOpenTicketStoreUntilTheTicketIsClosed() throws Exception {
+        ticketDAO.openTicketStore = new OpenTicketStore(16);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        doReturn(preparedStatement).when(connection).prepareStatement(DBConstants.CLOSE_TICKET);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(42);
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+        Ticket entering = new Ticket(0, new ParkingSpot(3, ParkingType.BIKE, false), "AB-123-CD", 0, new Date(), null);
+        entering.setVehicleTicketCount(2);
+
+        ticketDAO.saveTicket(entering);
+        Ticket exiting = ticketDAO.getOpenTicket("ab-123-cd");
+
+        assertEquals(42, exiting.getId());
+        assertEquals(3, exiting.getParkingSpot().getId());
+        assertEquals(ParkingType.BIKE, exiting.getParkingSpot().getParkingType());
+        assertEquals(entering.getInTime(), exiting.getInTime());
+        assertEquals(2, exiting.getVehicleTicketCount());
+        verify(connection, never()).prepareStatement(DBConstants.GET_OPEN_TICKET);
+
+        exiting.setOutTime(new Date());
+        assertTrue(ticketDAO.closeTicket(exiting));
+        assertEquals(0, ticketDAO.openTicketStore.size());
+    }
+
+    @Test
+    public void exportStreamsArchivedThenCurrentTicketsAsCsv() throws Exception {
+        doReturn(preparedStatement).when(connection).prepareStatement(DBConstants.EXPORT_ARCHIVED_TICKETS,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        doReturn(preparedStatement).when(connection).prepareStatement(DBConstants.EXPORT_TICKETS,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        // one archived ticket, then one current ticket
+        when(resultSet.next()).thenReturn(true, false, true, false);
+        doReturn(7, 8).when(resultSet).getInt(1);
+        doReturn(4, 5).when(resultSet).getInt(2);
+        doReturn("BIKE").when(resultSet).getString(3);
+        doReturn("AB-123", "A,\"B").when(resultSet).getString(4);
+        doReturn(1.125, 0.0).when(resultSet).getDouble(5);
+        when(resultSet.wasNull()).thenReturn(false, true);
+        doReturn("2024-01-01 08:00:00", "2024-01-02 09:30:00").when(resultSet).getString(6);
+        doReturn("2024-01-01 10:00:00", (Object) null).when(resultSet).getString(7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, ticketDAO.exportTickets(new Date(0), null, ParkingType.BIKE, Channels.newChannel(out)));
+
+        InOrder queries = inOrder(connection);
+        queries.verify(connection).setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        queries.verify(connection).setAutoCommit(false);
+        queries.verify(connection).prepareStatement(DBConstants.EXPORT_ARCHIVED_TICKETS,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        queries.verify(connection).prepareStatement(DBConstants.EXPORT_TICKETS,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        queries.verify(connection).commit();
+        queries.verify(connection).setAutoCommit(true);
+        verify(preparedStatement, times(2)).setFetchSize(Integer.MIN_VALUE);
+        verify(preparedStatement, times(2)).setString(3, "BIKE");
+        verify(preparedStatement, times(2)).setString(4, "BIKE");
+        assertEquals("ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME\n"
+                        + "7,4,BIKE,AB-123,1.13,2024-01-01 08:00:00,2024-01-01 10:00:00\n"
+                        + "8,5,BIKE,\"A,\"\"B\",,2024-01-02 09:30:00,\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        verify(resultSet, times(2)).close();
+        verify(preparedStatement, times(2)).close();
+    }
+}
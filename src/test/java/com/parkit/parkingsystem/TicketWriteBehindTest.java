@@ -0,0 +1,129 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketWriteBehindTest {
+
+    @Mock
+    private TicketDAO ticketDAO;
+
+    private Path journalFile;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        journalFile = Files.createTempFile("tickets", ".journal");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(journalFile);
+    }
+
+    private Ticket ticket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        return ticket;
+    }
+
+    @Test
+    public void fullBatchIsFlushedAndIdsReturned() throws Exception {
+        when(ticketDAO.saveTickets(anyList())).thenReturn(new int[]{11, 12});
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(ticketDAO, journalFile, 2, 60_000);
+
+        Ticket first = ticket("AAA");
+        CompletableFuture<Integer> firstId = ticketWriteBehind.enqueue(first);
+        CompletableFuture<Integer> secondId = ticketWriteBehind.enqueue(ticket("BBB"));
+
+        assertEquals(Integer.valueOf(11), firstId.get(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(12), secondId.get(5, TimeUnit.SECONDS));
+        assertEquals(11, first.getId());
+        verify(ticketDAO, times(1)).saveTickets(anyList());
+        ticketWriteBehind.close();
+        assertEquals(0, Files.size(journalFile));
+    }
+
+    @Test
+    public void failedFlushKeepsTicketsJournaledForReplay() throws Exception {
+        when(ticketDAO.saveTickets(anyList())).thenReturn(null);
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(ticketDAO, journalFile, 100, 60_000);
+        ticketWriteBehind.enqueue(ticket("AAA"));
+        ticketWriteBehind.flush();
+
+        assertEquals(1, ticketWriteBehind.getPendingCount());
+        ticketWriteBehind.close();
+
+        TicketDAO recoveredDAO = mock(TicketDAO.class);
+        when(recoveredDAO.saveTickets(anyList())).thenReturn(new int[]{7});
+        TicketWriteBehind recovered = new TicketWriteBehind(recoveredDAO, journalFile, 100, 60_000);
+        assertEquals(1, recovered.getPendingCount());
+        recovered.flush();
+
+        verify(recoveredDAO).saveTickets(argThat((List<Ticket> tickets) ->
+                tickets.size() == 1 && tickets.get(0).getVehicleRegNumber().equals("AAA")));
+        assertEquals(0, recovered.getPendingCount());
+        recovered.close();
+    }
+
+    @Test
+    public void replayedTicketAlreadySavedIsNotInsertedAgain() throws Exception {
+        TicketWriteBehind crashed = new TicketWriteBehind(ticketDAO, journalFile, 100, 60_000);
+        crashed.enqueue(ticket("AAA"));
+        crashed.enqueue(ticket("BBB"));
+        // crashed after the commit, before the journal was rewritten
+
+        TicketDAO recoveredDAO = mock(TicketDAO.class);
+        when(recoveredDAO.getSavedTicketId(argThat(t -> t != null && t.getVehicleRegNumber().equals("AAA")))).thenReturn(5);
+        when(recoveredDAO.saveTickets(anyList())).thenReturn(new int[]{6});
+        TicketWriteBehind recovered = new TicketWriteBehind(recoveredDAO, journalFile, 100, 60_000);
+        List<Ticket> replayed = recovered.getPendingTickets();
+        recovered.flush();
+
+        verify(recoveredDAO).saveTickets(argThat((List<Ticket> tickets) ->
+                tickets.size() == 1 && tickets.get(0).getVehicleRegNumber().equals("BBB")));
+        assertEquals(5, replayed.get(0).getId());
+        assertEquals(6, replayed.get(1).getId());
+        recovered.close();
+    }
+
+    @Test
+    public void pendingTicketsAreCountedWithoutFlushing() throws Exception {
+        when(ticketDAO.saveTickets(anyList())).thenReturn(new int[]{1, 2});
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(ticketDAO, journalFile, 100, 60_000);
+        ticketWriteBehind.enqueue(ticket("AAA"));
+        ticketWriteBehind.enqueue(ticket("BBB"));
+        long flushCount = ticketWriteBehind.getFlushCount();
+
+        assertEquals(1, ticketWriteBehind.getPendingCount("AAA", flushCount));
+        assertEquals(0, ticketWriteBehind.getPendingCount("CCC", flushCount));
+        verify(ticketDAO, never()).saveTickets(anyList());
+
+        ticketWriteBehind.flush();
+        assertEquals(-1, ticketWriteBehind.getPendingCount("AAA", flushCount));
+        assertEquals(0, ticketWriteBehind.getPendingCount("AAA", ticketWriteBehind.getFlushCount()));
+        ticketWriteBehind.close();
+    }
+}
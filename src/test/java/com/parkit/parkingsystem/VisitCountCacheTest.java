@@ -0,0 +1,53 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VisitCountCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @Test
+    public void cachedCountIsIncrementedOnNewTicket() {
+        VisitCountCache visitCountCache = new VisitCountCache(10, 60_000, now::get);
+
+        assertEquals(-1, visitCountCache.get("ABCDEF"));
+        visitCountCache.put("ABCDEF", 1);
+        visitCountCache.increment("ABCDEF");
+        visitCountCache.increment("UNKNOWN");
+
+        assertEquals(2, visitCountCache.get("ABCDEF"));
+        assertEquals(-1, visitCountCache.get("UNKNOWN"));
+        assertEquals(1, visitCountCache.getHitCount());
+        assertEquals(2, visitCountCache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedVehicleIsEvicted() {
+        VisitCountCache visitCountCache = new VisitCountCache(2, 60_000, now::get);
+        visitCountCache.put("AAA", 1);
+        visitCountCache.put("BBB", 2);
+        visitCountCache.get("AAA");
+        visitCountCache.put("CCC", 3);
+
+        assertEquals(1, visitCountCache.get("AAA"));
+        assertEquals(-1, visitCountCache.get("BBB"));
+        assertEquals(2, visitCountCache.size());
+        assertEquals(1, visitCountCache.getEvictionCount());
+    }
+
+    @Test
+    public void expiredEntryIsReloaded() {
+        VisitCountCache visitCountCache = new VisitCountCache(10, 60_000, now::get);
+        visitCountCache.put("ABCDEF", 3);
+
+        now.addAndGet(60_001);
+
+        assertEquals(-1, visitCountCache.get("ABCDEF"));
+        assertEquals(0, visitCountCache.size());
+    }
+}
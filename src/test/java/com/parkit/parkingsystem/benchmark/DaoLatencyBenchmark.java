@@ -0,0 +1,110 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the DAO queries on the gate paths while the ticket table holds {@code nbTickets}
+ * closed tickets of {@code NB_VEHICLES} vehicles, plus one open ticket per probed vehicle.
+ * With the ticket indexes from Data.sql the lookups should stay flat across table sizes.
+ *
+ * Runs against the test database of {@link DataBaseTestConfig}, which it truncates:
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=DaoLatency
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DaoLatencyBenchmark {
+
+    private static final int NB_VEHICLES = 100_000;
+    private static final int NB_PROBES = 200;
+    private static final int INSERT_BATCH = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    int nbTickets;
+
+    private final DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private final TicketDAO ticketDAO = new TicketDAO();
+    private final ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataBaseTestConfig.enablePool(2, 10000, 30 * 60 * 1000);
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        new DataBasePrepareService().clearDataBaseEntries();
+        try (Connection con = dataBaseTestConfig.getConnection(); Statement st = con.createStatement()) {
+            StringBuilder sql = new StringBuilder("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values");
+            for (int vehicle = 0; vehicle < NB_PROBES; vehicle++) {
+                sql.append(vehicle == 0 ? "" : ",").append("(1,'V").append(vehicle).append("',0,now(),null)");
+            }
+            st.executeUpdate(sql.toString());
+            for (int inserted = 0; inserted < nbTickets; inserted += INSERT_BATCH) {
+                int batch = Math.min(INSERT_BATCH, nbTickets - inserted);
+                sql.setLength(0);
+                sql.append("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values");
+                for (int i = 0; i < batch; i++) {
+                    int vehicle = (inserted + i) % NB_VEHICLES;
+                    sql.append(i == 0 ? "" : ",")
+                            .append("(").append(1 + vehicle % 5).append(",'V").append(vehicle)
+                            .append("',1.5,now() - interval 2 day,now() - interval 1 day)");
+                }
+                st.executeUpdate(sql.toString());
+            }
+            st.execute("analyze table ticket");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new DataBasePrepareService().clearDataBaseEntries();
+        dataBaseTestConfig.shutdownPool();
+    }
+
+    private String nextProbe() {
+        probe = (probe + 1) % NB_PROBES;
+        return "V" + probe;
+    }
+
+    @Benchmark
+    public Ticket getOpenTicket() {
+        return ticketDAO.getOpenTicket(nextProbe());
+    }
+
+    @Benchmark
+    public Ticket getTicket() {
+        return ticketDAO.getTicket(nextProbe());
+    }
+
+    @Benchmark
+    public int getNbTicket() {
+        return ticketDAO.getNbTicket(nextProbe());
+    }
+
+    @Benchmark
+    public int getNextAvailableSlot() {
+        return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+    }
+
+    @Benchmark
+    public boolean claimThenFreeSpot() {
+        ParkingSpot parkingSpot = new ParkingSpot(2, ParkingType.CAR, true);
+        boolean claimed = parkingSpotDAO.claimParkingSpot(parkingSpot);
+        parkingSpotDAO.updateParking(parkingSpot);
+        return claimed;
+    }
+}
@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link ParkingService#processExitingVehicle(String, Date)} (open ticket lookup,
+ * pricing, close) through the real DAOs over {@link StubJdbc}, logging to a file with
+ * log4j2-benchmark.properties.
+ * <ul>
+ * <li>{@code resourceLogLevel=TRACE} logs the per-connection, per-statement and per-query
+ * lines, as INFO and DEBUG used to; {@code INFO} is the current default</li>
+ * <li>{@code exitSyncLogging} formats and writes on the calling thread, {@code exitAsyncLogging}
+ * hands events to the async loggers' ring buffer</li>
+ * </ul>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=ExitPathLogging
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExitPathLoggingBenchmark {
+
+    private static final String LOG_CONFIG = "-Dlog4j.configurationFile=log4j2-benchmark.properties";
+    private static final String SYNC_LOGGERS = "-DLog4jContextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector";
+
+    @Param({"INFO", "TRACE"})
+    String resourceLogLevel;
+
+    private ParkingService parkingService;
+    private final Date outTime = new Date();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        org.apache.logging.log4j.Level level = org.apache.logging.log4j.Level.valueOf(resourceLogLevel);
+        Configurator.setLevel("DataBaseConfig", level);
+        Configurator.setLevel("TicketDAO", level);
+        StubJdbc stubJdbc = new StubJdbc(outTime.getTime() - 90 * 60 * 1000, ParkingType.CAR);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = stubJdbc;
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = stubJdbc;
+        parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {LOG_CONFIG, SYNC_LOGGERS})
+    public Ticket exitSyncLogging() {
+        return parkingService.processExitingVehicle("AB-123-CD", outTime);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = LOG_CONFIG)
+    public Ticket exitAsyncLogging() {
+        return parkingService.processExitingVehicle("AB-123-CD", outTime);
+    }
+}
@@ -0,0 +1,141 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-prices a batch of historical tickets through the Ticket-based wrapper and through the
+ * primitive fixed-point kernel, to show what the nightly re-pricing saves by skipping
+ * Date and Ticket objects.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FareCalculatorBenchmark {
+
+    private static final int NB_TICKETS = 10_000;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+
+    private Ticket[] tickets;
+    private long[] inTimes;
+    private long[] outTimes;
+    private int[] typeOrdinals;
+    private boolean[] discounts;
+    private BitSet discountBits;
+    private long[] faresCents;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ParkingSpot car = new ParkingSpot(1, ParkingType.CAR, false);
+        ParkingSpot bike = new ParkingSpot(4, ParkingType.BIKE, false);
+        tickets = new Ticket[NB_TICKETS];
+        inTimes = new long[NB_TICKETS];
+        outTimes = new long[NB_TICKETS];
+        typeOrdinals = new int[NB_TICKETS];
+        discounts = new boolean[NB_TICKETS];
+        discountBits = new BitSet(NB_TICKETS);
+        faresCents = new long[NB_TICKETS];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < NB_TICKETS; i++) {
+            inTimes[i] = now - random.nextInt(30 * 24 * 60) * 60_000L;
+            outTimes[i] = inTimes[i] + random.nextInt(48 * 60) * 60_000L;
+            ParkingSpot parkingSpot = random.nextBoolean() ? car : bike;
+            typeOrdinals[i] = parkingSpot.getParkingType().ordinal();
+            discounts[i] = random.nextInt(4) == 0;
+            discountBits.set(i, discounts[i]);
+            tickets[i] = new Ticket(i, parkingSpot, "V" + i, 0, new Date(inTimes[i]), new Date(outTimes[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_TICKETS)
+    public void ticketWrapper(Blackhole blackhole) {
+        for (int i = 0; i < NB_TICKETS; i++) {
+            fareCalculatorService.calculateFare(tickets[i], discounts[i]);
+            blackhole.consume(tickets[i].getPrice());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_TICKETS)
+    public void primitiveKernel(Blackhole blackhole) {
+        for (int i = 0; i < NB_TICKETS; i++) {
+            blackhole.consume(fareCalculatorService.calculateFareCents(inTimes[i], outTimes[i], typeOrdinals[i], discounts[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_TICKETS)
+    public void rebuildTicketsThenPrice(Blackhole blackhole) {
+        // what re-pricing from DB rows costs when every row is turned into a Ticket first
+        for (int i = 0; i < NB_TICKETS; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.values()[typeOrdinals[i]], false));
+            ticket.setInTime(new Date(inTimes[i]));
+            ticket.setOutTime(new Date(outTimes[i]));
+            fareCalculatorService.calculateFare(ticket, discounts[i]);
+            blackhole.consume(ticket.getPrice());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_TICKETS)
+    public long[] bulkColumns() {
+        fareCalculatorService.calculateFaresCents(inTimes, outTimes, typeOrdinals, discountBits, faresCents);
+        return faresCents;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MonthOfHistory.NB_TICKETS)
+    public long[] monthOfHistorySequential(MonthOfHistory history) {
+        fareCalculatorService.calculateFaresCents(history.inTimes, history.outTimes, history.typeOrdinals,
+                history.discounts, history.faresCents);
+        return history.faresCents;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MonthOfHistory.NB_TICKETS)
+    public long[] monthOfHistoryForkJoin(MonthOfHistory history) {
+        fareCalculatorService.calculateFaresCents(history.inTimes, history.outTimes, history.typeOrdinals,
+                history.discounts, history.faresCents, ForkJoinPool.commonPool());
+        return history.faresCents;
+    }
+
+    @State(Scope.Benchmark)
+    public static class MonthOfHistory {
+        static final int NB_TICKETS = 2_000_000;
+
+        long[] inTimes = new long[NB_TICKETS];
+        long[] outTimes = new long[NB_TICKETS];
+        int[] typeOrdinals = new int[NB_TICKETS];
+        BitSet discounts = new BitSet(NB_TICKETS);
+        long[] faresCents = new long[NB_TICKETS];
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < NB_TICKETS; i++) {
+                inTimes[i] = now - random.nextInt(30 * 24 * 60) * 60_000L;
+                outTimes[i] = inTimes[i] + random.nextInt(48 * 60) * 60_000L;
+                typeOrdinals[i] = random.nextInt(ParkingType.values().length);
+                discounts.set(i, random.nextInt(4) == 0);
+            }
+        }
+    }
+}
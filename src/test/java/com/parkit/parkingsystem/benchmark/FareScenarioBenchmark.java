@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FareCalculatorService#calculateFare(Ticket, boolean)} for one exit, across stay
+ * durations, parking types, discount flags and a flat or time-of-day tariff. Each combination
+ * is reported separately so a regression on one path (free stays, multi-day stays, non-flat
+ * schedules) is not averaged away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class FareScenarioBenchmark {
+
+    @Param({"20", "45", "180", "4320"})
+    int durationMinutes;
+
+    @Param({"CAR", "BIKE"})
+    ParkingType parkingType;
+
+    @Param({"false", "true"})
+    boolean discount;
+
+    @Param({"flat", "timeOfDay"})
+    String tariff;
+
+    private FareCalculatorService fareCalculatorService;
+    private Ticket ticket;
+
+    @Setup
+    public void setUp() {
+        TariffService tariffService = new TariffService();
+        if ("timeOfDay".equals(tariff)) {
+            Properties rules = new Properties();
+            rules.setProperty("rate.CAR.weekday.08-19", "200");
+            rules.setProperty("rate.CAR.weekday.22-06", "100");
+            rules.setProperty("rate.CAR.weekend", "120");
+            rules.setProperty("rate.BIKE.weekend", "80");
+            tariffService.load(rules);
+        }
+        fareCalculatorService = new FareCalculatorService(tariffService);
+        long outTime = System.currentTimeMillis();
+        ticket = new Ticket(1, new ParkingSpot(1, parkingType, false), "ABCDEF", 0,
+                new Date(outTime - durationMinutes * 60_000L), new Date(outTime));
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        fareCalculatorService.calculateFare(ticket, discount);
+        return ticket.getPrice();
+    }
+}
@@ -0,0 +1,94 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.GateExecutor;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thousand simulated gates each doing an entry then an exit at the same time, every DB round
+ * trip taking {@code latencyMicros}, through a {@link GateExecutor} limited to
+ * {@code maxConcurrency} operations at once like a connection pool of that size.
+ * <ul>
+ * <li>virtual: one virtual thread per operation, needs Java 21+ (the setup fails otherwise)</li>
+ * <li>platform: a fixed pool of {@code maxConcurrency} platform threads</li>
+ * <li>platformPerGate: a fixed pool with one platform thread per gate</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GateExecutorBenchmark {
+
+    private static final int NB_GATES = 1000;
+
+    @Param({"virtual", "platform", "platformPerGate"})
+    String executor;
+
+    @Param({"10", "100"})
+    int maxConcurrency;
+
+    @Param({"500"})
+    long latencyMicros;
+
+    private GateExecutor gateExecutor;
+    private String[] plates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(NB_GATES, NB_GATES);
+        parkingSpotDAO.simulatedLatencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, new InMemoryTicketDAO(parkingSpotDAO));
+        ExecutorService executorService;
+        switch (executor) {
+            case "virtual": {
+                executorService = GateExecutor.newVirtualThreadPerTaskExecutor();
+                if (executorService == null) {
+                    throw new IllegalStateException("Virtual threads need Java 21+, running " + System.getProperty("java.version"));
+                }
+                break;
+            }
+            case "platform": {
+                executorService = Executors.newFixedThreadPool(maxConcurrency);
+                break;
+            }
+            case "platformPerGate": {
+                executorService = Executors.newFixedThreadPool(NB_GATES);
+                break;
+            }
+            default: throw new IllegalArgumentException("Unknown executor " + executor);
+        }
+        gateExecutor = new GateExecutor(parkingService, maxConcurrency, executorService);
+        plates = new String[NB_GATES];
+        for (int gate = 0; gate < NB_GATES; gate++) {
+            plates[gate] = "GATE-" + gate;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gateExecutor.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_GATES)
+    public void thousandGatesEnterThenExit() {
+        CompletableFuture<?>[] roundTrips = new CompletableFuture<?>[NB_GATES];
+        for (int gate = 0; gate < NB_GATES; gate++) {
+            String plate = plates[gate];
+            ParkingType parkingType = gate % 2 == 0 ? ParkingType.CAR : ParkingType.BIKE;
+            roundTrips[gate] = gateExecutor.enter(plate, parkingType, new Date())
+                    .thenCompose(ticket -> gateExecutor.exit(plate, new Date()));
+        }
+        CompletableFuture.allOf(roundTrips).join();
+    }
+}
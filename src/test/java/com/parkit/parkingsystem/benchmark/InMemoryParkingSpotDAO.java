@@ -0,0 +1,81 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for the parking table, so benchmarks measure the service layer without a DB.
+ * The AVAILABLE column is an atomic array with the same guarded-update semantics as
+ * CLAIM_PARKING_SPOT, and free spots are found through the regular {@link ParkingSpotIndex}.
+ */
+public class InMemoryParkingSpotDAO extends ParkingSpotDAO {
+
+    /**
+     * Blocks every call that would be a DB round trip for this long, to simulate JDBC latency.
+     */
+    public volatile long simulatedLatencyNanos;
+
+    // 1 when the spot is occupied, indexed by parking number
+    private final AtomicIntegerArray occupied;
+    private final int nbCarSpots;
+
+    public InMemoryParkingSpotDAO(int nbCarSpots, int nbBikeSpots) {
+        this.nbCarSpots = nbCarSpots;
+        occupied = new AtomicIntegerArray(nbCarSpots + nbBikeSpots + 1);
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int number = 1; number <= nbCarSpots + nbBikeSpots; number++) {
+            parkingSpots.add(new ParkingSpot(number, typeOf(number), true));
+        }
+        parkingSpotIndex = new ParkingSpotIndex(parkingSpots);
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        simulateRoundTrip();
+        occupied.set(parkingSpot.getId(), parkingSpot.isAvailable() ? 0 : 1);
+        if (parkingSpot.isAvailable()) {
+            parkingSpotIndex.release(parkingSpot.getId());
+        } else {
+            parkingSpotIndex.claim(parkingSpot.getId());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean claimParkingSpot(ParkingSpot parkingSpot) {
+        simulateRoundTrip();
+        boolean claimed = occupied.compareAndSet(parkingSpot.getId(), 0, 1);
+        parkingSpotIndex.claim(parkingSpot.getId());
+        return claimed;
+    }
+
+    @Override
+    public ParkingSpot getParkingSpot(int parkingSpotId) {
+        simulateRoundTrip();
+        return new ParkingSpot(parkingSpotId, typeOf(parkingSpotId), occupied.get(parkingSpotId) == 0);
+    }
+
+    void simulateRoundTrip() {
+        if (simulatedLatencyNanos > 0) {
+            LockSupport.parkNanos(simulatedLatencyNanos);
+        }
+    }
+
+    private ParkingType typeOf(int parkingNumber) {
+        return parkingNumber <= nbCarSpots ? ParkingType.CAR : ParkingType.BIKE;
+    }
+
+    /**
+     * Frees the spot in the table, as CLOSE_TICKET does in the same statement as the ticket update.
+     */
+    void free(int parkingNumber) {
+        occupied.set(parkingNumber, 0);
+    }
+}
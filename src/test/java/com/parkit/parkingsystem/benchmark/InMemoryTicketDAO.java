@@ -0,0 +1,99 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the ticket table, keeping only what the entry and exit flows read back: the
+ * open ticket and the ticket count of each vehicle. Closing a ticket frees its spot in the
+ * {@link InMemoryParkingSpotDAO}, like CLOSE_TICKET does. Round trips are slowed down by the
+ * parking DAO's simulated latency.
+ */
+public class InMemoryTicketDAO extends TicketDAO {
+
+    private final InMemoryParkingSpotDAO parkingSpotDAO;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ConcurrentHashMap<String, Ticket> openTickets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> ticketCounts = new ConcurrentHashMap<>();
+
+    public InMemoryTicketDAO(InMemoryParkingSpotDAO parkingSpotDAO) {
+        this.parkingSpotDAO = parkingSpotDAO;
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        parkingSpotDAO.simulateRoundTrip();
+        ticket.setId(nextId.incrementAndGet());
+        openTickets.put(ticket.getVehicleRegNumber(), copy(ticket));
+        ticketCounts.computeIfAbsent(ticket.getVehicleRegNumber(), vehicle -> new AtomicInteger()).incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public int[] saveTickets(List<Ticket> tickets) {
+        int[] ids = new int[tickets.size()];
+        for (int i = 0; i < ids.length; i++) {
+            saveTicket(tickets.get(i));
+            ids[i] = tickets.get(i).getId();
+        }
+        return ids;
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        return getOpenTicket(vehicleRegNumber);
+    }
+
+    @Override
+    public Ticket getOpenTicket(String vehicleRegNumber) {
+        parkingSpotDAO.simulateRoundTrip();
+        Ticket ticket = openTickets.get(vehicleRegNumber);
+        if (ticket == null) {
+            return null;
+        }
+        Ticket copy = copy(ticket);
+        // counted in the same round trip, like the GET_OPEN_TICKET subquery
+        copy.setVehicleTicketCount(ticketCounts.get(vehicleRegNumber).get());
+        return copy;
+    }
+
+    @Override
+    public int countOpenTickets(String vehicleRegNumber) {
+        parkingSpotDAO.simulateRoundTrip();
+        return openTickets.containsKey(vehicleRegNumber) ? 1 : 0;
+    }
+
+    @Override
+    public boolean closeTicket(Ticket ticket) {
+        parkingSpotDAO.simulateRoundTrip();
+        Ticket open = openTickets.get(ticket.getVehicleRegNumber());
+        if (open == null || open.getId() != ticket.getId() || !openTickets.remove(ticket.getVehicleRegNumber(), open)) {
+            return false;
+        }
+        parkingSpotDAO.free(ticket.getParkingSpot().getId());
+        return true;
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        return ticket.getOutTime() == null || closeTicket(ticket);
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        parkingSpotDAO.simulateRoundTrip();
+        AtomicInteger count = ticketCounts.get(vehicleRegNumber);
+        return count == null ? 0 : count.get();
+    }
+
+    private static Ticket copy(Ticket ticket) {
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        return new Ticket(ticket.getId(), new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), false),
+                ticket.getVehicleRegNumber(), ticket.getPrice(), ticket.getInTime(), ticket.getOutTime());
+    }
+}
@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Full gate round trip, {@link ParkingService#processIncomingVehicle()} then
+ * {@link ParkingService#processExitingVehicle()}, against the in-memory DAO stand-ins.
+ * It measures what the service layer itself costs per vehicle (spot claim, visit count,
+ * ticket building, pricing) with the DB taken out, so it shows regressions that a DB round
+ * trip would otherwise hide. The console output of the flow is discarded. The metrics parameter
+ * compares the flow with latency recording off and on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParkingServiceFlowBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Lot {
+        @Param({"1000"})
+        int nbSpots;
+
+        @Param({"false", "true"})
+        boolean metrics;
+
+        InMemoryParkingSpotDAO parkingSpotDAO;
+        InMemoryTicketDAO ticketDAO;
+        final AtomicInteger nextGate = new AtomicInteger();
+        private PrintStream console;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            parkingSpotDAO = new InMemoryParkingSpotDAO(nbSpots / 2, nbSpots / 2);
+            ticketDAO = new InMemoryTicketDAO(parkingSpotDAO);
+            Metrics.setEnabled(metrics);
+            console = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.setOut(console);
+            Metrics.setEnabled(false);
+            Metrics.reset();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Gate {
+        // vehicles come back often enough to get the recurring user discount
+        private static final int NB_VEHICLES_PER_GATE = 50;
+
+        ParkingService parkingService;
+        GateInput gateInput;
+
+        @Setup(Level.Trial)
+        public void setUp(Lot lot) {
+            gateInput = new GateInput("G" + lot.nextGate.incrementAndGet() + "-");
+            parkingService = new ParkingService(gateInput, lot.parkingSpotDAO, lot.ticketDAO);
+        }
+
+        void nextVehicle() {
+            gateInput.vehicle = (gateInput.vehicle + 1) % NB_VEHICLES_PER_GATE;
+        }
+    }
+
+    @Benchmark
+    public void enterThenExit(Gate gate) {
+        gate.nextVehicle();
+        gate.parkingService.processIncomingVehicle();
+        gate.parkingService.processExitingVehicle();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void enterThenExitFourGates(Gate gate) {
+        gate.nextVehicle();
+        gate.parkingService.processIncomingVehicle();
+        gate.parkingService.processExitingVehicle();
+    }
+
+    /**
+     * Answers the gate prompts: a car or a bike depending on the vehicle, and its plate.
+     */
+    static class GateInput extends InputReaderUtil {
+        private final String platePrefix;
+        int vehicle;
+
+        GateInput(String platePrefix) {
+            this.platePrefix = platePrefix;
+        }
+
+        @Override
+        public int readSelection() {
+            return vehicle % 2 == 0 ? 1 : 2;
+        }
+
+        @Override
+        public String readVehicleRegistrationNumber() {
+            return platePrefix + vehicle;
+        }
+    }
+}
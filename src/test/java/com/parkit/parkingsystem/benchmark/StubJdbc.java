@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+
+/**
+ * {@link DataBaseConfig} whose connections answer every query with one open ticket row, shaped
+ * like GET_OPEN_TICKET, and every update with one row, without any database. Lets the real
+ * DAOs, with their resource handling and logging, run in a benchmark.
+ */
+public class StubJdbc extends DataBaseConfig {
+
+    private final Timestamp inTime;
+    private final ParkingType parkingType;
+
+    public StubJdbc(long inTimeMillis, ParkingType parkingType) {
+        this.inTime = new Timestamp(inTimeMillis);
+        this.parkingType = parkingType;
+    }
+
+    @Override
+    public Connection getConnection() {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            if (method.getName().equals("prepareStatement")) {
+                return preparedStatement();
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    private PreparedStatement preparedStatement() {
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "executeQuery": return openTicketRow();
+                case "executeUpdate": return 1;
+                default: return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private ResultSet openTicketRow() {
+        int[] rowsLeft = {1};
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next": return rowsLeft[0]-- > 0;
+                case "getInt": return (int) args[0] == 7 ? 2 : 1;
+                case "getString": return parkingType.toString();
+                case "getTimestamp": return (int) args[0] == 4 ? inTime : null;
+                default: return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateProjectionDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.journal.GateEvent;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.JournalProjector;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Gate events journaled while the DB was away are replayed in bulk, once each.
+ */
+public class GateProjectionIT {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static GateProjectionDAO gateProjectionDAO;
+    private static TicketDAO ticketDAO;
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    private Path directory;
+    private GateJournal gateJournal;
+
+    @BeforeAll
+    public static void setUp() {
+        gateProjectionDAO = new GateProjectionDAO();
+        gateProjectionDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        dataBasePrepareService.clearDataBaseEntries();
+        directory = Files.createTempDirectory("gate-journal");
+        gateJournal = new GateJournal(directory, 16, false);
+    }
+
+    @AfterEach
+    public void tearDownPerTest() throws Exception {
+        gateJournal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @Test
+    public void backlogIsProjectedOnceAcrossRestarts() throws Exception {
+        // DATETIME columns keep whole seconds
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        gateJournal.append(GateEvent.enter("AAA", 1, ParkingType.CAR, now - 2 * HOUR, 1));
+        gateJournal.append(GateEvent.enter("BBB", 2, ParkingType.CAR, now - HOUR, 1));
+        gateJournal.append(GateEvent.exit("AAA", 1, ParkingType.CAR, now - 2 * HOUR, now),
+                GateEvent.price("AAA", 1, ParkingType.CAR, now - 2 * HOUR, now, 3));
+
+        assertTrue(new JournalProjector(gateJournal, gateProjectionDAO).catchUp());
+        // a projector started again finds the batch already projected
+        JournalProjector restarted = new JournalProjector(gateJournal, gateProjectionDAO);
+        assertTrue(restarted.catchUp());
+        assertEquals(4, restarted.getProjectedSequence());
+
+        assertEquals(1, ticketDAO.getNbTicket("AAA"));
+        Ticket closed = ticketDAO.getTicket("AAA");
+        assertEquals(3, closed.getPrice());
+        assertNotNull(closed.getOutTime());
+        assertNotNull(ticketDAO.getOpenTicket("BBB"));
+        assertTrue(parkingSpotDAO.getParkingSpot(1).isAvailable());
+        assertFalse(parkingSpotDAO.getParkingSpot(2).isAvailable());
+
+        // left in a later batch
+        gateJournal.append(GateEvent.exit("BBB", 2, ParkingType.CAR, now - HOUR, now),
+                GateEvent.price("BBB", 2, ParkingType.CAR, now - HOUR, now, 1.5));
+        assertTrue(restarted.catchUp());
+        assertNull(ticketDAO.getOpenTicket("BBB"));
+        assertTrue(parkingSpotDAO.getParkingSpot(2).isAvailable());
+        assertEquals(6, gateProjectionDAO.getProjectedSequence());
+    }
+}
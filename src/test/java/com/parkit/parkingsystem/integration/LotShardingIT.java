@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two lots sharing the test database, lot 1 with spots 1 to 5 and lot 2 with spots 1 and 2,
+ * each served by its own DAOs and service, must never see each other's spots and tickets.
+ */
+public class LotShardingIT {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    public static void setUp() {
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private static ParkingService lot(int lotId, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        parkingSpotDAO.lotId = lotId;
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO.lotId = lotId;
+        return new ParkingService(null, parkingSpotDAO, ticketDAO);
+    }
+
+    @Test
+    public void lotsKeepTheirOwnSpotsAndTickets() {
+        ParkingSpotDAO northSpots = new ParkingSpotDAO();
+        TicketDAO northTickets = new TicketDAO();
+        ParkingService north = lot(1, northSpots, northTickets);
+        ParkingSpotDAO southSpots = new ParkingSpotDAO();
+        TicketDAO southTickets = new TicketDAO();
+        ParkingService south = lot(2, southSpots, southTickets);
+        long now = System.currentTimeMillis() / 1000 * 1000;
+
+        Ticket southTicket = south.processIncomingVehicle("ABCDEF", ParkingType.CAR, new Date(now - 2 * HOUR));
+        assertNotNull(southTicket);
+        assertEquals(1, southTicket.getParkingSpot().getId());
+        assertEquals(0, southSpots.getAvailableSpotCount(ParkingType.CAR));
+        // spot 1 of lot 1 is another spot
+        assertEquals(3, northSpots.getAvailableSpotCount(ParkingType.CAR));
+        assertTrue(northSpots.getParkingSpot(1).isAvailable());
+        assertNull(south.processIncomingVehicle("GHIJKL", ParkingType.CAR, new Date(now - HOUR)));
+
+        assertNull(north.processExitingVehicle("ABCDEF", new Date(now)));
+        assertNull(northTickets.getTicket("ABCDEF"));
+        Ticket northTicket = north.processIncomingVehicle("ABCDEF", ParkingType.CAR, new Date(now - HOUR));
+        assertNotNull(northTicket);
+        assertEquals(1, northTicket.getParkingSpot().getId());
+
+        assertNotNull(south.processExitingVehicle("ABCDEF", new Date(now)));
+        assertTrue(southSpots.getParkingSpot(1).isAvailable());
+        assertFalse(northSpots.getParkingSpot(1).isAvailable());
+        // visits are counted per lot
+        assertEquals(1, southTickets.getNbTicket("ABCDEF"));
+        assertEquals(1, northTickets.getNbTicket("ABCDEF"));
+    }
+}
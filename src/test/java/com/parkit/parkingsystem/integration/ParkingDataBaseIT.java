@@ -100,7 +100,6 @@ public class ParkingDataBaseIT {
         // First parking session
         Ticket firstTicket = new Ticket();
         firstTicket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000))); // 1 hour ago
-        firstTicket.setOutTime(new Date());
         firstTicket.setVehicleRegNumber("ABCDEF");
         firstTicket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
         ticketDAO.saveTicket(firstTicket);
@@ -110,7 +109,6 @@ public class ParkingDataBaseIT {
         // Second parking session (Recurring user)
         Ticket secondTicket = new Ticket();
         secondTicket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000))); // 1 hour ago
-        secondTicket.setOutTime(new Date());
         secondTicket.setVehicleRegNumber("ABCDEF");
         secondTicket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
         ticketDAO.saveTicket(secondTicket);
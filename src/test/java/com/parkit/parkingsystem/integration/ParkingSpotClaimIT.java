@@ -0,0 +1,129 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Several entry gates running against the same lot at once must never hand out the same spot.
+ */
+public class ParkingSpotClaimIT {
+
+    private static final int NB_GATES = 16;
+    private static final int NB_CAR_SPOTS = 3;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    public static void setUp() {
+        dataBaseTestConfig.enablePool(NB_GATES, 5000, 60000);
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dataBasePrepareService.clearDataBaseEntries();
+        dataBaseTestConfig.shutdownPool();
+    }
+
+    @RepeatedTest(10)
+    public void concurrentGatesNeverDoubleAllocateASpot() throws Exception {
+        runGates(false);
+        assertNoCollision();
+    }
+
+    @RepeatedTest(10)
+    public void concurrentGatesNeverDoubleAllocateASpotWithIndex() throws Exception {
+        runGates(true);
+        assertNoCollision();
+    }
+
+    private void runGates(boolean useIndex) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(NB_GATES);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> gates = new ArrayList<>();
+        // every gate is its own terminal with its own DAOs, as in separate processes
+        for (int gate = 0; gate < NB_GATES; gate++) {
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+            if (useIndex) {
+                parkingSpotDAO.loadParkingSpotIndex();
+            }
+            TicketDAO ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseTestConfig;
+            ParkingService parkingService = new ParkingService(new GateInput("GATE" + gate), parkingSpotDAO, ticketDAO);
+            gates.add(executor.submit(() -> {
+                start.await();
+                parkingService.processIncomingVehicle();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Object> gate : gates) {
+            gate.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    private void assertNoCollision() throws Exception {
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            ResultSet rs = con.prepareStatement(
+                    "select PARKING_NUMBER, count(*) from ticket group by PARKING_NUMBER having count(*) > 1").executeQuery();
+            assertFalse(rs.next(), "a parking spot was allocated to more than one vehicle");
+
+            rs = con.prepareStatement("select count(*) from ticket").executeQuery();
+            rs.next();
+            assertEquals(NB_CAR_SPOTS, rs.getInt(1), "every car spot should be taken exactly once");
+
+            rs = con.prepareStatement("select count(*) from parking where LOT_ID = 1 and TYPE = 'CAR' and AVAILABLE = true").executeQuery();
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+
+    private static class GateInput extends InputReaderUtil {
+        private final String vehicleRegNumber;
+
+        GateInput(String vehicleRegNumber) {
+            this.vehicleRegNumber = vehicleRegNumber;
+        }
+
+        @Override
+        public int readSelection() {
+            return 1;
+        }
+
+        @Override
+        public String readVehicleRegistrationNumber() {
+            return vehicleRegNumber;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.RevenueAggregateDAO;
+import com.parkit.parkingsystem.dao.RevenueAggregator;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.RevenueBucket;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The buckets kept up to date as tickets close must match those rebuilt from the ticket history.
+ */
+public class RevenueAggregationIT {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static TicketDAO ticketDAO;
+    private static RevenueAggregateDAO revenueAggregateDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    public static void setUp() {
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        revenueAggregateDAO = new RevenueAggregateDAO();
+        revenueAggregateDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private void parkAndLeave(String vehicleRegNumber, int parkingNumber, ParkingType parkingType,
+                              long inTime, long outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        ticketDAO.saveTicket(ticket);
+        assertTrue(ticket.getId() > 0);
+        ticket.setOutTime(new Date(outTime));
+        ticket.setPrice(price);
+        assertTrue(ticketDAO.closeTicket(ticket));
+    }
+
+    @Test
+    public void incrementalBucketsMatchTheRebuiltOnes() {
+        // DATETIME columns keep whole seconds
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        Date from = new Date(now - 6 * HOUR);
+        Date to = new Date(now + HOUR);
+        RevenueAggregator revenueAggregator = new RevenueAggregator(revenueAggregateDAO, 60_000);
+        ticketDAO.revenueAggregator = revenueAggregator;
+        try {
+            parkAndLeave("AAA", 1, ParkingType.CAR, now - 3 * HOUR, now - HOUR / 2, 3.75);
+            parkAndLeave("BBB", 2, ParkingType.CAR, now - 2 * HOUR, now - HOUR, 1.5);
+            parkAndLeave("CCC", 4, ParkingType.BIKE, now - HOUR, now - HOUR / 4, 0.75);
+        } finally {
+            ticketDAO.revenueAggregator = null;
+            revenueAggregator.close();
+        }
+        List<RevenueBucket> incremental = revenueAggregateDAO.getBuckets(from, to, null);
+
+        assertTrue(revenueAggregateDAO.rebuild(from, to) > 0);
+        List<RevenueBucket> rebuilt = revenueAggregateDAO.getBuckets(from, to, null);
+
+        assertEquals(rebuilt.size(), incremental.size());
+        double revenue = 0;
+        int closedTickets = 0;
+        for (int i = 0; i < rebuilt.size(); i++) {
+            assertEquals(rebuilt.get(i).toString(), incremental.get(i).toString());
+            assertEquals(rebuilt.get(i).getOccupiedMillis(), incremental.get(i).getOccupiedMillis());
+            revenue += rebuilt.get(i).getRevenue();
+            closedTickets += rebuilt.get(i).getClosedTickets();
+        }
+        assertEquals(6, revenue, 0.001);
+        assertEquals(3, closedTickets);
+    }
+}
@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Archived tickets leave the ticket table but still count as visits and still show in the history.
+ */
+public class TicketArchiveIT {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static TicketDAO ticketDAO;
+    private static TicketArchiveDAO ticketArchiveDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    public static void setUp() {
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketArchiveDAO = new TicketArchiveDAO();
+        ticketArchiveDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private Ticket park(String vehicleRegNumber, long inTime) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        assertTrue(ticketDAO.saveTicket(ticket));
+        return ticket;
+    }
+
+    private void parkAndLeave(String vehicleRegNumber, long inTime) {
+        Ticket ticket = park(vehicleRegNumber, inTime);
+        ticket.setOutTime(new Date(inTime + DAY / 24));
+        ticket.setPrice(1.5);
+        assertTrue(ticketDAO.closeTicket(ticket));
+    }
+
+    @Test
+    public void oldClosedTicketsAreArchivedAndStillCounted() {
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        parkAndLeave("ABCDEF", now - 40 * DAY);
+        parkAndLeave("ABCDEF", now - 35 * DAY);
+        parkAndLeave("GHIJKL", now - 32 * DAY);
+        parkAndLeave("ABCDEF", now - 2 * DAY);
+        park("ABCDEF", now - 50 * DAY);
+        Date closedBefore = new Date(now - 30 * DAY);
+
+        // batches of two: the first is full, the second holds the last old ticket
+        assertEquals(2, ticketArchiveDAO.archiveBatch(closedBefore, 2));
+        assertEquals(1, ticketArchiveDAO.archiveBatch(closedBefore, 2));
+        assertEquals(0, ticketArchiveDAO.archiveBatch(closedBefore, 2));
+
+        assertEquals(4, ticketDAO.getNbTicket("ABCDEF"));
+        assertEquals(1, ticketDAO.getNbTicket("GHIJKL"));
+        Ticket open = ticketDAO.getOpenTicket("ABCDEF");
+        assertNotNull(open);
+        assertEquals(4, open.getVehicleTicketCount());
+
+        // a second run adds to the archived counts
+        assertEquals(1, ticketArchiveDAO.archiveBatch(new Date(now), 10));
+        assertEquals(4, ticketDAO.getNbTicket("ABCDEF"));
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        assertEquals(5, ticketDAO.exportTickets(null, null, null, Channels.newChannel(csv)));
+    }
+}
@@ -11,15 +11,19 @@ public class DataBaseTestConfig extends DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseTestConfig");
 
-    public Connection getConnection() throws ClassNotFoundException, SQLException {
-
-        logger.info("Create DB connection");
-
-        Class.forName("com.mysql.cj.jdbc.Driver");
+    @Override
+    protected String getUrl() {
+        return PersonalConstantTest.URL + "/" + PersonalConstantTest.BD_NAME + "?" + PersonalConstantTest.SERVER_TIMEZONE;
+    }
 
-        String url = PersonalConstantTest.URL + "/" + PersonalConstantTest.BD_NAME + "?" + PersonalConstantTest.SERVER_TIMEZONE;
+    @Override
+    protected String getUsername() {
+        return PersonalConstantTest.USERNAME;
+    }
 
-        return DriverManager.getConnection(url, PersonalConstantTest.USERNAME, PersonalConstantTest.PASSWORD);
+    @Override
+    protected String getPassword() {
+        return PersonalConstantTest.PASSWORD;
     }
 
     public void closeConnection(Connection con){
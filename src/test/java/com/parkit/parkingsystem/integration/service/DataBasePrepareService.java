@@ -18,6 +18,14 @@ public class DataBasePrepareService {
 
             //clear ticket entries;
             connection.prepareStatement("truncate table ticket").execute();
+            connection.prepareStatement("truncate table ticket_archive").execute();
+            connection.prepareStatement("truncate table vehicle_visit_summary").execute();
+
+            //clear revenue buckets;
+            connection.prepareStatement("truncate table revenue_hourly").execute();
+
+            //clear gate journal projection checkpoint;
+            connection.prepareStatement("truncate table gate_projection").execute();
 
         }catch(Exception e){
             e.printStackTrace();